@@ -0,0 +1,451 @@
+
+package okbem.br31.matcher.matcher.cluster;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import okbem.br31.matcher.matcher.core.Matcher;
+import okbem.br31.matcher.matcher.core.Matcher.Submission;
+import okbem.br31.matcher.matcher.core.SubmitResult;
+import okbem.br31.matcher.util.consistenthash.ConsistentHashRing;
+
+
+/**
+ * 여러 개의 노드로 이루어진 클러스터에서 동작하는 {@link Matcher}의 묶음.
+ * 사용자들은 파티션(예를 들어, 게임 모드와 지역의 조합) 단위로 나뉘어 서로
+ * 다른 {@link Matcher}에서 매치되며, 각 파티션은 consistent hashing으로 정해진
+ * 하나의 노드만 소유한다.
+ *
+ * 어느 노드로 요청을 보내든 그 요청은 파티션을 소유한 노드로 전달된다. 노드가
+ * 클러스터에 참여하거나 떠나서 파티션의 소유자가 바뀌면, 이전 소유자는 해당
+ * 파티션의 {@link Matcher}를 멈추고 대기 중이던 사용자들을 새로운 소유자에게
+ * 넘겨준다.
+ *
+ * 소유권이 넘어가는 도중에 들어온 취소 요청은 새로운 소유자에게 전달되므로,
+ * 아직 넘어가지 않은 사용자는 취소되지 않을 수 있다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ */
+public class ClusterMatcherNode<U, R extends Enum<R>>
+    implements ClusterTransport.Receiver<U, R> {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    /**
+     * 요청을 다른 노드로 전달할 수 있는 최대 횟수.
+     * 노드들이 서로 다른 노드 목록을 가지고 있는 동안 요청이 노드들 사이를
+     * 계속 오가는 것을 막는다. 이 횟수만큼 전달된 요청은 받은 노드에서 바로
+     * 처리한다.
+     */
+    public static final int MAX_HOPS = 2;
+
+
+    /**
+     * 이 노드의 ID.
+     */
+    @lombok.Getter
+    private final String nodeId;
+
+
+    private final ClusterMembership membership;
+
+
+    private final ClusterTransport<U, R> transport;
+
+
+    /**
+     * 파티션별 {@link Matcher}를 생성하는 함수.
+     * 이 노드가 새로운 파티션을 소유하게 되면 호출된다.
+     */
+    private final Function<String, Matcher<U, R>> matcherFactory;
+
+
+    /**
+     * 노드 하나가 consistent hashing ring에 배치되는 가상 노드의 수.
+     */
+    private final int virtualNodeCount;
+
+
+    /**
+     * 이 노드가 소유한 파티션별 {@link Matcher}.
+     */
+    // <partition: String, matcher: Matcher<U, R>>
+    private final ConcurrentHashMap<String, Matcher<U, R>> matcherMap;
+
+
+    /**
+     * 요청을 처리하는 동안 파티션의 소유권이 바뀌지 않도록 보호한다.
+     * 요청을 처리할 때에는 read lock을, 소유권을 다시 계산할 때에는 write
+     * lock을 잡는다. 다른 노드를 호출하는 동안에는 lock을 잡지 않는다.
+     */
+    private final ReadWriteLock lock;
+
+
+    private final Consumer<Set<String>> membershipListener;
+
+
+    /**
+     * 넘겨받았지만 등록되지 못한 사용자의 수.
+     */
+    private final LongAdder rejectedHandoffCount;
+
+
+    private volatile ConsistentHashRing ring;
+
+
+    /**
+     * {@code ClusterMatcherNode} 인스턴스를 생성한다.
+     * 생성된 노드는 {@link #start()}를 호출해야 클러스터에 참여한다.
+     *
+     * @param nodeId 이 노드의 ID
+     * @param membership 클러스터의 노드 목록
+     * @param transport 노드들 사이의 요청 전달 방법
+     * @param matcherFactory 파티션별 {@link Matcher}를 생성하는 함수
+     * @param virtualNodeCount 노드 하나가 ring에 배치되는 가상 노드의 수
+     */
+    public ClusterMatcherNode(
+        String nodeId,
+        ClusterMembership membership,
+        ClusterTransport<U, R> transport,
+        Function<String, Matcher<U, R>> matcherFactory,
+        int virtualNodeCount
+    ) {
+        this.nodeId = nodeId;
+        this.membership = membership;
+        this.transport = transport;
+        this.matcherFactory = matcherFactory;
+        this.virtualNodeCount = virtualNodeCount;
+        this.matcherMap = new ConcurrentHashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.membershipListener = this::rebalance;
+        this.rejectedHandoffCount = new LongAdder();
+    }
+
+
+    /**
+     * 클러스터에 참여한다.
+     * 다른 노드들이 넘겨주는 사용자들을 받을 수 있도록, 클러스터에 참여하기
+     * 전에 먼저 자신을 포함한 노드 목록으로 소유권을 계산해 둔다.
+     */
+    public void start() {
+        Set<String> members = new TreeSet<>(this.membership.getMembers());
+        members.add(this.nodeId);
+
+        this.ring = new ConsistentHashRing(members, this.virtualNodeCount);
+
+        this.transport.register(this.nodeId, this);
+        this.membership.addListener(this.membershipListener);
+        this.membership.join(this.nodeId);
+
+        logger.info("{} joined: members={}", this.nodeId, members);
+    }
+
+
+    /**
+     * 클러스터를 떠난다.
+     * 이 노드가 소유하고 있던 파티션들은 대기 중인 사용자들과 함께 남아 있는
+     * 노드들에게 넘겨진다.
+     */
+    public void stop() {
+        this.membership.leave(this.nodeId);
+        this.membership.removeListener(this.membershipListener);
+        this.transport.unregister(this.nodeId);
+
+        logger.info("{} left", this.nodeId);
+    }
+
+
+    /**
+     * 이 노드가 소유하고 있는 파티션 목록을 리턴한다.
+     *
+     * @return 파티션 목록
+     */
+    public Set<String> getPartitions() {
+        return Collections.unmodifiableSet(
+            new TreeSet<>(this.matcherMap.keySet())
+        );
+    }
+
+
+    /**
+     * 이 노드가 소유하고 있는 파티션의 {@link Matcher}를 리턴한다.
+     *
+     * @param partition 파티션
+     * @return 파티션의 {@link Matcher}, 소유하고 있지 않으면 {@code null}
+     */
+    public Matcher<U, R> getMatcher(String partition) {
+        return this.matcherMap.get(partition);
+    }
+
+
+    /**
+     * 다른 노드가 넘겨주었지만 이 노드에 등록되지 못한 사용자의 수를 리턴한다.
+     *
+     * @return 등록되지 못한 사용자의 수
+     */
+    public long getRejectedHandoffCount() {
+        return this.rejectedHandoffCount.sum();
+    }
+
+
+    /**
+     * 파티션을 소유한 노드를 리턴한다.
+     *
+     * @param partition 파티션
+     * @return 파티션을 소유한 노드 ID
+     */
+    public String getOwner(String partition) {
+        ConsistentHashRing ring = this.ring;
+
+        if (ring == null)
+            throw new IllegalStateException(this.nodeId + " is not started");
+
+        String owner = ring.getOwner(partition);
+
+        if (owner == null)
+            throw new IllegalStateException("No matcher node is available");
+
+        return owner;
+    }
+
+
+    /**
+     * 파티션에 사용자를 등록한다.
+     * 파티션을 소유한 노드가 따로 있으면 그 노드로 요청을 전달한다.
+     *
+     * @param partition 파티션
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @return 등록에 성공하면 {@code true},
+     *         동일한 사용자가 이미 등록되어 있으면 {@code false}
+     *
+     * @see Matcher#submit(Object, Set)
+     */
+    public boolean submit(String partition, U user, Set<Integer> matchSizeSet) {
+        return this.submit(partition, user, matchSizeSet, null);
+    }
+
+
+    /**
+     * 파티션에 사용자를 등록한다.
+     * 파티션을 소유한 노드가 따로 있으면 그 노드로 요청을 전달한다.
+     *
+     * @param partition 파티션
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙
+     * @return 등록에 성공하면 {@code true},
+     *         동일한 사용자가 이미 등록되어 있으면 {@code false}
+     *
+     * @see Matcher#submit(Object, Set, EnumMap)
+     */
+    public boolean submit(
+        String partition,
+        U user,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        return this.receiveSubmit(
+            partition,
+            new Submission<>(user, matchSizeSet, ruleSetMap),
+            0
+        );
+    }
+
+
+    /**
+     * 파티션에 등록했던 사용자를 취소한다.
+     * 파티션을 소유한 노드가 따로 있으면 그 노드로 요청을 전달한다.
+     *
+     * @param partition 파티션
+     * @param user 취소할 사용자
+     * @return 취소에 성공하면 {@code true},
+     *         사용자가 등록되어 있지 않으면 {@code false}
+     *
+     * @see Matcher#cancel(Object)
+     */
+    public boolean cancel(String partition, U user) {
+        return this.receiveCancel(partition, user, 0);
+    }
+
+
+    @Override
+    public boolean receiveSubmit(
+        String partition,
+        Submission<U, R> submission,
+        int hops
+    ) {
+        String owner;
+
+        this.lock.readLock().lock();
+        try {
+            owner = this.getOwner(partition);
+
+            if (owner.equals(this.nodeId) || hops >= MAX_HOPS)
+                return this.matcherMap
+                    .computeIfAbsent(partition, this.matcherFactory)
+                    .submit(
+                        submission.getUser(),
+                        submission.getMatchSizeSet(),
+                        submission.getRuleSetMap()
+                    );
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return this.transport.submit(owner, partition, submission, hops + 1);
+    }
+
+
+    @Override
+    public boolean receiveCancel(String partition, U user, int hops) {
+        String owner;
+
+        this.lock.readLock().lock();
+        try {
+            owner = this.getOwner(partition);
+
+            if (owner.equals(this.nodeId) || hops >= MAX_HOPS) {
+                Matcher<U, R> matcher = this.matcherMap.get(partition);
+
+                return (matcher != null && matcher.cancel(user));
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return this.transport.cancel(owner, partition, user, hops + 1);
+    }
+
+
+    /**
+     * 다른 노드가 넘겨준 사용자들을 받는다.
+     * 넘겨받은 사용자들은 소유권과 관계없이 이 노드에 등록되며, 만약 이 노드가
+     * 파티션의 소유자가 아니라면 다음 번에 소유권을 다시 계산할 때 소유자에게
+     * 넘겨진다. 넘겨받은 사용자들은 {@link Matcher#handoff(Submission)}로
+     * 등록되므로 등록을 받아들일지 다시 결정하지 않으며, 이전 노드에서 기다린
+     * 시간도 이어서 센다. 그래도 등록되지 못한 사용자는
+     * {@link #getRejectedHandoffCount()}로 센다.
+     */
+    @Override
+    public void receiveHandoff(
+        String partition,
+        List<Submission<U, R>> submissionList
+    ) {
+        logger.debug("receiveHandoff(): nodeId={}, partition={}, size={}",
+            this.nodeId,
+            partition,
+            submissionList.size()
+        );
+
+        this.lock.readLock().lock();
+        try {
+            Matcher<U, R> matcher = this.matcherMap
+                .computeIfAbsent(partition, this.matcherFactory);
+
+            for (Submission<U, R> submission : submissionList) {
+                SubmitResult result = matcher.handoff(submission);
+                if (result == SubmitResult.ACCEPTED)
+                    continue;
+
+                this.rejectedHandoffCount.increment();
+
+                logger.warn("receiveHandoff(): user={}, result={}",
+                    submission.getUser(),
+                    result
+                );
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * 변경된 노드 목록으로 파티션의 소유권을 다시 계산한다.
+     * 더 이상 소유하지 않는 파티션은 {@link Matcher}를 멈추고 대기 중이던
+     * 사용자들을 새로운 소유자에게 넘겨준다.
+     *
+     * @param members 변경된 노드 목록
+     */
+    private void rebalance(Set<String> members) {
+        // <partition: String, owner: String>
+        Map<String, String> ownerMap = new HashMap<>();
+
+        // <partition: String, submissionList: List<Submission<U, R>>>
+        Map<String, List<Submission<U, R>>> handoffMap = new HashMap<>();
+
+        this.lock.writeLock().lock();
+        try {
+            this.ring = new ConsistentHashRing(members, this.virtualNodeCount);
+
+            Iterator<Map.Entry<String, Matcher<U, R>>> iter
+                = this.matcherMap.entrySet().iterator();
+
+            while (iter.hasNext()) {
+                Map.Entry<String, Matcher<U, R>> entry = iter.next();
+                String partition = entry.getKey();
+                Matcher<U, R> matcher = entry.getValue();
+
+                String owner = this.ring.getOwner(partition);
+                if (this.nodeId.equals(owner))
+                    continue;
+
+                iter.remove();
+
+                matcher.shutdown();
+                List<Submission<U, R>> submissionList = matcher.drain();
+
+                if (owner == null) {
+                    logger.warn("{} dropped {} users of {}: no node is left",
+                        this.nodeId,
+                        submissionList.size(),
+                        partition
+                    );
+                    continue;
+                }
+
+                ownerMap.put(partition, owner);
+                handoffMap.put(partition, submissionList);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        logger.debug("rebalance(): nodeId={}, members={}, handoff={}",
+            this.nodeId,
+            members,
+            ownerMap
+        );
+
+        // 다른 노드를 호출하는 동안에는 lock을 잡지 않는다.
+        handoffMap.forEach((partition, submissionList) -> {
+            String owner = ownerMap.get(partition);
+
+            logger.info("{} hands {} over to {}: size={}",
+                this.nodeId,
+                partition,
+                owner,
+                submissionList.size()
+            );
+
+            this.transport.handoff(owner, partition, submissionList);
+        });
+    }
+
+}
@@ -0,0 +1,56 @@
+
+package okbem.br31.matcher.matcher.cluster;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+
+/**
+ * 클러스터에 참여한 노드들의 목록을 관리하는 인터페이스.
+ * 노드가 참여하거나 떠날 때마다 등록된 listener들에게 변경된 노드 목록을
+ * 알려 준다. 같은 클러스터에 속한 모든 노드는 동일한 노드 목록을 받아야 한다.
+ *
+ * @see LocalClusterMembership
+ */
+public interface ClusterMembership {
+
+    /**
+     * 현재 클러스터에 참여한 노드들의 목록을 리턴한다.
+     *
+     * @return 노드 ID 목록
+     */
+    Set<String> getMembers();
+
+
+    /**
+     * 노드를 클러스터에 참여시킨다.
+     *
+     * @param nodeId 참여할 노드 ID
+     */
+    void join(String nodeId);
+
+
+    /**
+     * 노드를 클러스터에서 떠나게 한다.
+     *
+     * @param nodeId 떠날 노드 ID
+     */
+    void leave(String nodeId);
+
+
+    /**
+     * 노드 목록이 변경될 때마다 호출될 listener를 등록한다.
+     *
+     * @param listener 변경된 노드 목록을 받을 listener
+     */
+    void addListener(Consumer<Set<String>> listener);
+
+
+    /**
+     * 등록했던 listener를 제거한다.
+     *
+     * @param listener 제거할 listener
+     */
+    void removeListener(Consumer<Set<String>> listener);
+
+}
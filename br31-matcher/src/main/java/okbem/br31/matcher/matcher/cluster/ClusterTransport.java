@@ -0,0 +1,127 @@
+
+package okbem.br31.matcher.matcher.cluster;
+
+import java.util.List;
+
+import okbem.br31.matcher.matcher.core.Matcher.Submission;
+
+
+/**
+ * 클러스터의 노드들 사이에서 요청을 주고받기 위한 인터페이스.
+ * 파티션을 소유하지 않은 노드가 받은 요청을 소유한 노드에게 전달하거나,
+ * 파티션의 소유권이 바뀔 때 대기 중인 사용자들을 새로운 소유자에게 넘겨줄 때
+ * 사용한다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ *
+ * @see LocalClusterTransport
+ */
+public interface ClusterTransport<U, R extends Enum<R>> {
+
+    /**
+     * 다른 노드로부터 요청을 받는 인터페이스.
+     *
+     * @param <U> 사용자 타입
+     * @param <R> 규칙 타입
+     */
+    interface Receiver<U, R extends Enum<R>> {
+
+        /**
+         * 다른 노드가 전달한 등록 요청을 처리한다.
+         *
+         * @param partition 파티션
+         * @param submission 등록할 사용자와 선호 규칙
+         * @param hops 지금까지 요청이 전달된 횟수
+         * @return 등록에 성공하면 {@code true}
+         */
+        boolean receiveSubmit(
+            String partition,
+            Submission<U, R> submission,
+            int hops
+        );
+
+        /**
+         * 다른 노드가 전달한 취소 요청을 처리한다.
+         *
+         * @param partition 파티션
+         * @param user 취소할 사용자
+         * @param hops 지금까지 요청이 전달된 횟수
+         * @return 취소에 성공하면 {@code true}
+         */
+        boolean receiveCancel(String partition, U user, int hops);
+
+        /**
+         * 다른 노드가 넘겨준 파티션의 대기 중인 사용자들을 받는다.
+         *
+         * @param partition 파티션
+         * @param submissionList 대기 중이던 사용자들과 선호 규칙의 목록
+         */
+        void receiveHandoff(
+            String partition,
+            List<Submission<U, R>> submissionList
+        );
+
+    }
+
+
+    /**
+     * 요청을 받을 노드를 등록한다.
+     *
+     * @param nodeId 노드 ID
+     * @param receiver 요청을 처리할 객체
+     */
+    void register(String nodeId, Receiver<U, R> receiver);
+
+
+    /**
+     * 등록했던 노드를 제거한다.
+     *
+     * @param nodeId 노드 ID
+     */
+    void unregister(String nodeId);
+
+
+    /**
+     * 등록 요청을 다른 노드에게 전달한다.
+     *
+     * @param nodeId 요청을 받을 노드 ID
+     * @param partition 파티션
+     * @param submission 등록할 사용자와 선호 규칙
+     * @param hops 지금까지 요청이 전달된 횟수
+     * @return 등록에 성공하면 {@code true}
+     */
+    boolean submit(
+        String nodeId,
+        String partition,
+        Submission<U, R> submission,
+        int hops
+    );
+
+
+    /**
+     * 취소 요청을 다른 노드에게 전달한다.
+     *
+     * @param nodeId 요청을 받을 노드 ID
+     * @param partition 파티션
+     * @param user 취소할 사용자
+     * @param hops 지금까지 요청이 전달된 횟수
+     * @return 취소에 성공하면 {@code true}
+     */
+    boolean cancel(String nodeId, String partition, U user, int hops);
+
+
+    /**
+     * 파티션의 대기 중인 사용자들을 다른 노드에게 넘겨준다.
+     *
+     * @param nodeId 넘겨받을 노드 ID
+     * @param partition 파티션
+     * @param submissionList 대기 중인 사용자들과 선호 규칙의 목록
+     */
+    void handoff(
+        String nodeId,
+        String partition,
+        List<Submission<U, R>> submissionList
+    );
+
+}
@@ -0,0 +1,72 @@
+
+package okbem.br31.matcher.matcher.cluster;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+
+/**
+ * 하나의 JVM 안에서만 공유되는 {@link ClusterMembership}.
+ * 여러 개의 노드를 하나의 프로세스에서 띄워서 테스트할 때 사용한다.
+ *
+ * 노드 목록의 변경과 listener 호출은 하나의 lock 안에서 순서대로 이루어지므로,
+ * 모든 listener는 항상 같은 순서로 같은 노드 목록을 받는다.
+ */
+public class LocalClusterMembership implements ClusterMembership {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    private final Set<String> memberSet = new TreeSet<>();
+
+
+    private final List<Consumer<Set<String>>> listenerList
+        = new CopyOnWriteArrayList<>();
+
+
+    @Override
+    public synchronized Set<String> getMembers() {
+        return Collections.unmodifiableSet(new TreeSet<>(this.memberSet));
+    }
+
+
+    @Override
+    public synchronized void join(String nodeId) {
+        if (this.memberSet.add(nodeId))
+            this.notifyListeners();
+    }
+
+
+    @Override
+    public synchronized void leave(String nodeId) {
+        if (this.memberSet.remove(nodeId))
+            this.notifyListeners();
+    }
+
+
+    @Override
+    public void addListener(Consumer<Set<String>> listener) {
+        this.listenerList.add(listener);
+    }
+
+
+    @Override
+    public void removeListener(Consumer<Set<String>> listener) {
+        this.listenerList.remove(listener);
+    }
+
+
+    private void notifyListeners() {
+        Set<String> members = this.getMembers();
+
+        logger.debug("notifyListeners(): members={}", members);
+
+        for (Consumer<Set<String>> listener : this.listenerList)
+            listener.accept(members);
+    }
+
+}
@@ -0,0 +1,76 @@
+
+package okbem.br31.matcher.matcher.cluster;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okbem.br31.matcher.matcher.core.Matcher.Submission;
+
+
+/**
+ * 하나의 JVM 안에서 노드들의 메서드를 직접 호출하는 {@link ClusterTransport}.
+ * 여러 개의 노드를 하나의 프로세스에서 띄워서 테스트할 때 사용한다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ */
+public class LocalClusterTransport<U, R extends Enum<R>>
+    implements ClusterTransport<U, R> {
+
+    // <nodeId: String, receiver: Receiver<U, R>>
+    private final ConcurrentHashMap<String, Receiver<U, R>> receiverMap
+        = new ConcurrentHashMap<>();
+
+
+    private Receiver<U, R> getReceiver(String nodeId) {
+        Receiver<U, R> receiver = this.receiverMap.get(nodeId);
+
+        if (receiver == null)
+            throw new IllegalStateException("Unknown node: " + nodeId);
+
+        return receiver;
+    }
+
+
+    @Override
+    public void register(String nodeId, Receiver<U, R> receiver) {
+        this.receiverMap.put(nodeId, receiver);
+    }
+
+
+    @Override
+    public void unregister(String nodeId) {
+        this.receiverMap.remove(nodeId);
+    }
+
+
+    @Override
+    public boolean submit(
+        String nodeId,
+        String partition,
+        Submission<U, R> submission,
+        int hops
+    ) {
+        return this.getReceiver(nodeId)
+            .receiveSubmit(partition, submission, hops);
+    }
+
+
+    @Override
+    public boolean cancel(String nodeId, String partition, U user, int hops) {
+        return this.getReceiver(nodeId)
+            .receiveCancel(partition, user, hops);
+    }
+
+
+    @Override
+    public void handoff(
+        String nodeId,
+        String partition,
+        List<Submission<U, R>> submissionList
+    ) {
+        this.getReceiver(nodeId)
+            .receiveHandoff(partition, submissionList);
+    }
+
+}
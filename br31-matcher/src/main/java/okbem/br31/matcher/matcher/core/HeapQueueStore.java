@@ -0,0 +1,252 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * 사용자들을 heap에 저장하는 {@link QueueStore}.
+ * 사용자별 정보는 handle을 index로 하는 배열들에 나누어 저장하고, 등록된
+ * 순서는 {@link #prevs}와 {@link #nexts}로 이루어진 양방향 연결 리스트로
+ * 관리한다. 비어 있는 자리는 {@link #nexts}를 통해 free list로 연결된다.
+ *
+ * 같은 선호 규칙을 등록한 사용자들의 순서도 {@link #profilePrevs}와
+ * {@link #profileNexts}로 이루어진 별도의 연결 리스트로 관리하며, 선호 규칙의
+ * 번호별로 처음과 마지막 사용자를 {@link #profileHeads}와
+ * {@link #profileTails}에 저장한다.
+ *
+ * @param <U> 사용자 타입
+ */
+final class HeapQueueStore<U> extends QueueStore<U> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+
+    // <user: U, handle: Integer>
+    private final HashMap<U, Integer> handleMap;
+
+
+    private Object[] users;
+
+
+    private int[] profileIds;
+
+
+    private long[] submitTimes;
+
+
+    private int[] prevs;
+
+
+    private int[] nexts;
+
+
+    private int[] profilePrevs;
+
+
+    private int[] profileNexts;
+
+
+    private int[] profileHeads;
+
+
+    private int[] profileTails;
+
+
+    private int head;
+
+
+    private int tail;
+
+
+    private int free;
+
+
+    private int used;
+
+
+    HeapQueueStore() {
+        this.handleMap = new HashMap<>();
+        this.users = new Object[INITIAL_CAPACITY];
+        this.profileIds = new int[INITIAL_CAPACITY];
+        this.submitTimes = new long[INITIAL_CAPACITY];
+        this.prevs = new int[INITIAL_CAPACITY];
+        this.nexts = new int[INITIAL_CAPACITY];
+        this.profilePrevs = new int[INITIAL_CAPACITY];
+        this.profileNexts = new int[INITIAL_CAPACITY];
+        this.profileHeads = new int[0];
+        this.profileTails = new int[0];
+        this.head = NONE;
+        this.tail = NONE;
+        this.free = NONE;
+        this.used = 0;
+    }
+
+
+    @Override
+    int find(U user) {
+        Integer handle = this.handleMap.get(user);
+
+        return (handle == null) ? NONE : handle;
+    }
+
+
+    @Override
+    int add(U user, int profileId, long submitTime) {
+        int handle = this.free;
+        if (handle != NONE) {
+            this.free = this.nexts[handle];
+        } else {
+            if (this.used == this.users.length)
+                this.grow();
+
+            handle = this.used++;
+        }
+
+        this.users[handle] = user;
+        this.profileIds[handle] = profileId;
+        this.submitTimes[handle] = submitTime;
+        this.prevs[handle] = this.tail;
+        this.nexts[handle] = NONE;
+
+        if (this.tail == NONE)
+            this.head = handle;
+        else
+            this.nexts[this.tail] = handle;
+        this.tail = handle;
+
+        if (profileId >= this.profileHeads.length)
+            this.growProfiles(profileId + 1);
+
+        this.profilePrevs[handle] = this.profileTails[profileId];
+        this.profileNexts[handle] = NONE;
+
+        if (this.profileTails[profileId] == NONE)
+            this.profileHeads[profileId] = handle;
+        else
+            this.profileNexts[this.profileTails[profileId]] = handle;
+        this.profileTails[profileId] = handle;
+
+        this.handleMap.put(user, handle);
+        return handle;
+    }
+
+
+    @Override
+    void remove(int handle) {
+        int prev = this.prevs[handle];
+        int next = this.nexts[handle];
+
+        if (prev == NONE)
+            this.head = next;
+        else
+            this.nexts[prev] = next;
+
+        if (next == NONE)
+            this.tail = prev;
+        else
+            this.prevs[next] = prev;
+
+        int profileId = this.profileIds[handle];
+        int profilePrev = this.profilePrevs[handle];
+        int profileNext = this.profileNexts[handle];
+
+        if (profilePrev == NONE)
+            this.profileHeads[profileId] = profileNext;
+        else
+            this.profileNexts[profilePrev] = profileNext;
+
+        if (profileNext == NONE)
+            this.profileTails[profileId] = profilePrev;
+        else
+            this.profilePrevs[profileNext] = profilePrev;
+
+        this.handleMap.remove(this.users[handle]);
+        this.users[handle] = null;
+        this.nexts[handle] = this.free;
+        this.free = handle;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    U user(int handle) {
+        return (U)this.users[handle];
+    }
+
+
+    @Override
+    int profileId(int handle) {
+        return this.profileIds[handle];
+    }
+
+
+    @Override
+    long submitTime(int handle) {
+        return this.submitTimes[handle];
+    }
+
+
+    @Override
+    int size() {
+        return this.handleMap.size();
+    }
+
+
+    @Override
+    boolean isFull() {
+        return false;
+    }
+
+
+    @Override
+    int first() {
+        return this.head;
+    }
+
+
+    @Override
+    int next(int handle) {
+        return this.nexts[handle];
+    }
+
+
+    @Override
+    int firstOfProfile(int profileId) {
+        if (profileId >= this.profileHeads.length)
+            return NONE;
+
+        return this.profileHeads[profileId];
+    }
+
+
+    @Override
+    int nextOfProfile(int handle) {
+        return this.profileNexts[handle];
+    }
+
+
+    private void grow() {
+        int capacity = this.users.length * 2;
+
+        this.users = Arrays.copyOf(this.users, capacity);
+        this.profileIds = Arrays.copyOf(this.profileIds, capacity);
+        this.submitTimes = Arrays.copyOf(this.submitTimes, capacity);
+        this.prevs = Arrays.copyOf(this.prevs, capacity);
+        this.nexts = Arrays.copyOf(this.nexts, capacity);
+        this.profilePrevs = Arrays.copyOf(this.profilePrevs, capacity);
+        this.profileNexts = Arrays.copyOf(this.profileNexts, capacity);
+    }
+
+
+    private void growProfiles(int minCapacity) {
+        int oldCapacity = this.profileHeads.length;
+        int capacity = Math.max(minCapacity, oldCapacity * 2);
+
+        this.profileHeads = Arrays.copyOf(this.profileHeads, capacity);
+        this.profileTails = Arrays.copyOf(this.profileTails, capacity);
+        Arrays.fill(this.profileHeads, oldCapacity, capacity, NONE);
+        Arrays.fill(this.profileTails, oldCapacity, capacity, NONE);
+    }
+
+}
@@ -3,18 +3,25 @@ package okbem.br31.matcher.matcher.core;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 
 
 /**
@@ -30,6 +37,14 @@ public abstract class Matcher<U, R extends Enum<R>> {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
 
+    /**
+     * 규칙 값을 가리지 않는 사용자들끼리만 매치시킬 때 사용하는 규칙 값 번호.
+     *
+     * @see #expand(int, int, int, int, int)
+     */
+    private static final int ANY_CODE = -1;
+
+
     /**
      * 매치 규칙을 담고 있는 클래스.
      * 매치 규칙은 어떠한 기준으로 매치가 이루어졌는지를 나타낸다.
@@ -70,6 +85,9 @@ public abstract class Matcher<U, R extends Enum<R>> {
      * 항목별로 원하는 옵션을 여러 개 지정하는 것이 가능하다. 선호 규칙의 모든
      * 항목이 적어도 하나 이상 겹치는 사용자들끼리만 서로 매치될 수 있다.
      *
+     * 같은 선호 규칙을 등록한 사용자들은 {@link #profileTable}에 저장된 하나의
+     * 인스턴스를 공유하므로, 저장된 이후로는 변경되어서는 안 된다.
+     *
      * @param <R> 규칙 타입
      */
     @lombok.Data
@@ -86,6 +104,106 @@ public abstract class Matcher<U, R extends Enum<R>> {
         // <ruleKey: R, ruleValueSet: Set<?>>
         private final EnumMap<R, Set<?>> ruleSetMap;
 
+        /**
+         * 함께 등록한 사용자의 수.
+         * 혼자 등록한 사용자는 1이며, 파티로 등록한 사용자들은 하나의 매치에서
+         * 이 수만큼 자리를 차지한다.
+         */
+        private final int partySize;
+
+        /**
+         * 규칙 키 번호별로 규칙 값들을 번호로 바꾼 것.
+         * 선호 규칙이 {@link #profileTable}에 처음 저장될 때 계산된다. 규칙
+         * 값을 가리지 않는 규칙 키는 {@code null}이다.
+         *
+         * @see Matcher#findMatchRule()
+         */
+        @lombok.EqualsAndHashCode.Exclude
+        @lombok.ToString.Exclude
+        private int[][] valueCodes;
+
+    }
+
+
+    /**
+     * 등록된 사용자 한 명의 선호 규칙을 담고 있는 클래스.
+     * 등록된 사용자들을 다른 {@code Matcher}로 옮기거나, 파티를 등록할 때
+     * 파티원 한 명의 선호 규칙을 나타낼 때 사용한다.
+     *
+     * @param <U> 사용자 타입
+     * @param <R> 규칙 타입
+     *
+     * @see #drain()
+     * @see #handoff(Submission)
+     * @see #trySubmitParty(List)
+     */
+    @lombok.Value
+    @lombok.AllArgsConstructor
+    public static final class Submission<U, R extends Enum<R>> {
+
+        /**
+         * 등록된 사용자.
+         * 파티로 등록된 경우에는 파티장이다.
+         */
+        private final U user;
+
+        /**
+         * 선호하는 사용자의 수.
+         */
+        private final Set<Integer> matchSizeSet;
+
+        /**
+         * 선호하는 규칙.
+         */
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        private final EnumMap<R, Set<?>> ruleSetMap;
+
+        /**
+         * 함께 등록된 파티원들.
+         * 파티장을 포함하며, 혼자 등록된 사용자이면 {@code null}이다.
+         */
+        private final List<U> party;
+
+        /**
+         * 꺼내기 전까지 기다린 시간(나노초).
+         * 노드마다 시계가 다를 수 있으므로 등록된 시각 대신 기다린 시간을
+         * 담으며, {@link Matcher#handoff(Submission)}로 다시 등록될 때 대기
+         * 시간을 이어서 세는 데 사용한다.
+         */
+        private final long waitNanos;
+
+        public Submission(
+            U user,
+            Set<Integer> matchSizeSet,
+            // <ruleKey: R, ruleValueSet: Set<?>>
+            EnumMap<R, Set<?>> ruleSetMap
+        ) {
+            this(user, matchSizeSet, ruleSetMap, null, 0L);
+        }
+
+    }
+
+
+    /**
+     * {@link #findMatchRule()}의 탐색 결과.
+     */
+    private static enum SearchResult {
+
+        /**
+         * 매치 규칙을 찾았다.
+         */
+        FOUND,
+
+        /**
+         * 모든 매치 규칙을 탐색했다.
+         */
+        EXHAUSTED,
+
+        /**
+         * 조각 하나의 예산을 다 써서 탐색을 멈췄다.
+         */
+        SUSPENDED
+
     }
 
 
@@ -111,382 +229,2519 @@ public abstract class Matcher<U, R extends Enum<R>> {
 
 
     /**
-     * 사용자들이 등록한 선호 규칙을 관리하기 위한 자료 구조.
-     * 여러 스레드 간에 공유되므로 사용할 때에는 반드시 동기화 처리를 해야 한다.
+     * 사용자가 매치를 기다릴 수 있는 최대 시간을 나노초 단위로 나타낸 값.
+     * 시간 제한이 없으면 {@link Long#MAX_VALUE}가 된다.
      */
-    // <user: U, options: MatchRuleOptions<R>>
-    private final HashMap<U, MatchRuleOptions<R>> userMap;
+    private final long maxWaitNanos;
 
 
     /**
-     * {@code Matcher} 인스턴스를 생성한다.
-     *
-     * @param ruleKeyType 규칙 타입의 클래스 객체
-     * @param delay 매 주기마다 추가되는 지연 시간
+     * 동시에 등록될 수 있는 사용자의 최대 수.
      */
-    public Matcher(Class<R> ruleKeyType, Duration delay) {
-        this.ruleKeyType = ruleKeyType;
-        this.ruleKeySet = EnumSet.allOf(this.ruleKeyType);
-        this.ruleKeyList = new ArrayList<>(this.ruleKeySet);
-        this.userMap = new HashMap<>();
+    private final int maxQueueSize;
 
-        Executors.newSingleThreadScheduledExecutor()
-            .scheduleWithFixedDelay(
-                this::run,
-                delay.toNanos(),
-                delay.toNanos(),
-                TimeUnit.NANOSECONDS
-            );
 
-        logger.info("{} started: ruleKeyType={}, ruleKeySet={}, delay={}",
-            this.getClass(),
-            this.ruleKeyType.getSimpleName(),
-            this.ruleKeySet,
-            delay
-        );
-    }
+    /**
+     * 선호하는 사용자의 수별로 동시에 등록될 수 있는 사용자의 최대 수.
+     */
+    private final int maxBucketSize;
 
 
     /**
-     * 매치 결과를 처리한다.
-     * 이 메서드는 서로 취향이 맞는 사용자들끼리 매치된 이후에 곧바로 호출된다.
-     * 매치 결과를 가지고 어떤 작업을 수행하려면 이 메서드를 구현하면 된다.
-     *
-     * 만약 매치 결과가 여러 개일 경우에는 한 주기에 두 번 이상 호출될 수 있다.
-     *
-     * @param matchRule 매치 규칙
-     * @param match 서로 매치된 사용자들
+     * 새로운 사용자를 받아들일 수 있는 매치 주기의 최대 실행 시간을 나노초
+     * 단위로 나타낸 값. 제한이 없으면 {@link Long#MAX_VALUE}가 된다.
      */
-    protected abstract void playMatch(MatchRule<R> matchRule, Set<U> match);
+    private final long maxCycleNanos;
 
 
     /**
-     * 서로 취향이 맞는 사용자들 중에서 매치를 찾는다.
-     * 동일한 취향을 가진 사용자들을 어떻게 매치시킬지 결정한다. 이 과정에서
-     * 매치되지 않는 사용자가 있을 수 있다.
-     *
-     * 기본적으로는 주어진 사용자들의 순서를 무작위로 섞고 맨 앞쪽부터 차례대로
-     * {@link MatchRule#matchSize}만큼씩 뽑아서 매치시키는 방식으로 작동한다.
-     * 만약 이 메서드를 다시 구현하고자 한다면, 하나의 매치에 포함되는 사용자의
-     * 수는 반드시 {@link MatchRule#matchSize}와 동일해야 한다.
-     *
-     * 이 메서드에서 리턴하는 사용자들은 {@link #playMatch(MatchRule, Set)}를
-     * 호출할 때 두 번째 파라미터로 사용된다.
-     *
-     * @param matchRule 매치 규칙
-     * @param userSet 서로 취향이 맞는 사용자들
-     * @return 서로 매치된 사용자들의 그룹 목록
+     * 예상 대기 시간을 계산할 때 사용하는 통계가 감쇠하는 시간을 나노초 단위로
+     * 나타낸 값.
      */
-    protected List<Set<U>> findMatches(MatchRule<R> matchRule, Set<U> userSet) {
-        // 주어진 사용자들의 순서를 무작위로 섞는다.
-        List<U> userList = new ArrayList<>(userSet);
-        Collections.shuffle(userList, ThreadLocalRandom.current());
-
-        // 주어진 사용자들로부터 얼마나 많은 매치를 찾을 수 있는지 계산하고,
-        // 서로 매치된 사용자들의 그룹을 저장할 리스트를 생성한다.
-        int matchSize = matchRule.matchSize;
-        int matchListSize = (userList.size() / matchSize);
-        List<Set<U>> matchList = new ArrayList<>(matchListSize);
+    private final long rateDecayNanos;
 
-        // 무작위로 섞인 순서에서 맨 앞쪽부터 차례대로 매치시킨다.
-        for (int i = 0; i < (matchListSize * matchSize); i += matchSize)
-            matchList.add(new HashSet<>(userList.subList(i, i + matchSize)));
 
-        return matchList;
-    }
+    /**
+     * 사용자별로 등록하거나 취소할 수 있는 횟수를 제한하는 rate limiter.
+     * 횟수에 제한이 없으면 {@code null}이 된다.
+     */
+    private final RateLimiter<U> rateLimiter;
 
 
     /**
-     * 사용자를 등록한다.
-     * 등록된 사용자는 매치 대기 상태가 되어 서로 취향이 맞는 사용자가 나타날
-     * 때까지 기다리게 된다. 그러고 나서 알맞은 상대나 그룹이 발견되면 매치가
-     * 이루어지고, 매치된 사용자가 이전에 등록했던 내용은 자동으로 삭제된다.
-     *
-     * @param user 등록할 사용자
-     * @param matchSizeSet 선호하는 사용자의 수
-     * @return 등록에 성공하면 {@code true},
-     *         동일한 사용자가 이미 등록되어 있으면 {@code false}
-     *
-     * @see #submit(Object, Set, EnumMap)
+     * 등록된 사용자의 수.
+     * 등록을 받아들일지 결정할 때 lock을 잡지 않고 확인하기 위해서
+     * {@link #store}와 별도로 관리한다. 등록을 받아들이기 전에 미리 하나를
+     * 증가시켜 자리를 확보하므로, {@link #store}의 크기보다 잠시 동안 클 수
+     * 있다.
      */
-    public final boolean submit(U user, Set<Integer> matchSizeSet) {
-        return this.submit(user, matchSizeSet, null);
-    }
+    private final AtomicInteger queueSize;
 
 
     /**
-     * 사용자를 등록한다.
-     * 등록된 사용자는 매치 대기 상태가 되어 서로 취향이 맞는 사용자가 나타날
-     * 때까지 기다리게 된다. 그러고 나서 알맞은 상대나 그룹이 발견되면 매치가
-     * 이루어지고, 매치된 사용자가 이전에 등록했던 내용은 자동으로 삭제된다.
-     *
-     * @param user 등록할 사용자
-     * @param matchSizeSet 선호하는 사용자의 수
-     * @param ruleSetMap 선호하는 규칙
-     * @return 등록에 성공하면 {@code true},
-     *         동일한 사용자가 이미 등록되어 있으면 {@code false}
-     *
-     * @see #submit(Object, Set)
+     * 선호하는 사용자의 수별로 등록된 사용자의 수와 그 통계.
+     * {@link #queueSize}와 마찬가지로 lock을 잡지 않고 확인하기 위해서
+     * 사용한다.
      */
-    public final boolean submit(
-        U user,
-        Set<Integer> matchSizeSet,
-        // <ruleKey: R, ruleValueSet: Set<?>>
-        EnumMap<R, Set<?>> ruleSetMap
-    ) {
-        logger.debug("submit(): user={}, matchSizeSet={}, ruleSetMap={}",
-            user,
-            matchSizeSet,
-            ruleSetMap
-        );
+    // <matchSize: Integer, bucket: QueueBucket>
+    private final ConcurrentHashMap<Integer, QueueBucket> sizeBucketMap;
 
-        if (user == null)
-            throw new IllegalArgumentException("user cannot be null");
 
-        if (matchSizeSet == null || matchSizeSet.isEmpty())
-            throw new IllegalArgumentException(
-                "matchSizeSet cannot be null or empty"
-            );
+    /**
+     * 규칙 값별로 그 값을 선호하는 사용자의 수와 그 통계.
+     * 사용자가 {@link #store}에 저장되거나 삭제될 때 함께 갱신되며,
+     * {@link #getQueueStats()}에서 lock을 잡지 않고 읽을 수 있도록 별도로
+     * 관리한다.
+     */
+    // <ruleKey: R, <ruleValue: Object, bucket: QueueBucket>>
+    private final EnumMap<R, ConcurrentHashMap<Object, QueueBucket>>
+        valueBucketMap;
 
-        if (matchSizeSet.stream().anyMatch(matchSize -> matchSize < 2))
-            throw new IllegalArgumentException(
-                "matchSize cannot be less than two"
-            );
 
-        if (ruleSetMap == null)
-            ruleSetMap = new EnumMap<>(this.ruleKeyType);
+    /**
+     * 규칙 키별로 규칙 값을 가리지 않는 사용자의 수와 그 통계.
+     * 이런 사용자를 규칙 값마다 세면 등록과 취소의 비용이 규칙 값의 종류에
+     * 비례하게 되므로 규칙 키마다 한 번만 세어 두고, 통계를 읽을 때 규칙
+     * 값마다 더한다.
+     */
+    // <ruleKey: R, bucket: QueueBucket>
+    private final ConcurrentHashMap<R, QueueBucket> wildcardBucketMap;
 
-        if (!Objects.equals(ruleSetMap.keySet(), this.ruleKeySet))
-            throw new IllegalArgumentException(
-                "ruleSetMap must contain the following keys: " + this.ruleKeySet
-            );
 
-        if (ruleSetMap.values().stream().anyMatch(ruleValueSet -> {
-            return (ruleValueSet == null || ruleValueSet.isEmpty());
-        }))
-            throw new IllegalArgumentException(
-                "ruleValueSet cannot be null or empty"
-            );
+    /**
+     * 규칙 키별로 규칙 값을 가리지 않는 사용자가 선호하는 것으로 보는 규칙
+     * 값들. 그런 사용자가 처음 등록될 때 규칙 값의 enum 타입의 모든 값으로
+     * 정해진다.
+     */
+    // <ruleKey: R, ruleValues: Object[]>
+    private final ConcurrentHashMap<R, Object[]> wildcardDomainMap;
 
-        synchronized (this) {
-            if (this.userMap.containsKey(user))
-                return false;
 
-            this.userMap.put(
-                user,
-                new MatchRuleOptions<>(matchSizeSet, ruleSetMap)
-            );
-            return true;
-        }
-    }
+    /**
+     * 매치 주기를 나누어 실행할 때 조각 하나의 최대 실행 시간을 나노초 단위로
+     * 나타낸 값. 제한이 없으면 {@link Long#MAX_VALUE}가 된다.
+     */
+    private final long maxSliceNanos;
 
 
     /**
-     * 사용자가 이전에 등록했던 내용을 취소한다.
-     * 취소된 사용자는 다시 등록되기 전까지 매치 대상에 포함되지 않는다.
-     *
-     * 사용자가 매치되면 이전에 등록했던 내용은 자동으로 삭제된다.
-     *
-     * @param user 취소할 사용자
-     * @return 취소에 성공하면 {@code true},
-     *         사용자가 등록되어 있지 않으면 {@code false}
+     * 매치 주기를 나누어 실행할 때 조각 하나에서 탐색할 수 있는 노드의 최대 수.
      */
-    public final boolean cancel(U user) {
-        logger.debug("cancel(): user={}", user);
+    private final int maxSliceNodes;
 
-        if (user == null)
-            throw new IllegalArgumentException("user cannot be null");
-
-        synchronized (this) {
-            if (!this.userMap.containsKey(user))
-                return false;
 
-            this.userMap.remove(user);
-            return true;
-        }
-    }
+    /**
+     * 직전 매치 주기의 실행 시간.
+     * 매치 주기가 여러 조각으로 나누어 실행되었다면 첫 번째 조각이 시작된
+     * 시각부터 마지막 조각이 끝난 시각까지의 시간이다.
+     */
+    private volatile long lastCycleNanos;
 
 
     /**
-     * 등록된 사용자들 중에서 서로 취향이 맞는 사용자들을 찾아내어 매치시킨다.
-     * 이 메서드는 직접적으로 호출되지 않고 별도의 스레드에서
-     * {@link java.util.concurrent.ScheduledExecutorService}에 의해 주기적으로
-     * 실행된다.
+     * 직전 매치 주기를 나누어 실행한 조각의 수.
      */
-    private synchronized void run() {
-        try {
-            Set<U> allUserSet = this.userMap.keySet();
+    private volatile int lastCycleSlices;
 
-            // 등록된 사용자가 하나도 없으면 더 이상 진행하지 않는다.
-            if (allUserSet.isEmpty())
-                return;
 
-            logger.debug("run(): allUserSet={}", allUserSet);
-
-            // 이것은 이미 찾은 매치 규칙을 탐색에서 제외시키는 용도로 사용된다.
-            Set<MatchRule<R>> oldMatchRuleSet = new HashSet<>();
+    /**
+     * 직전 매치 주기에서 탐색한 노드의 수.
+     */
+    private volatile long lastCycleNodes;
 
-            // 서로 취향이 맞는 사용자들을 더 이상 찾을 수 없을 때까지 반복한다.
-            for (;;) {
-                MatchRule<R> matchRule
-                    = new MatchRule<>(new EnumMap<>(this.ruleKeyType));
 
-                // 서로 취향이 맞는 사용자들을 찾는다.
-                Set<U> finalUserSet = this.findMatchRule(
-                    -1,
-                    allUserSet,
-                    oldMatchRuleSet,
-                    matchRule
-                );
+    /**
+     * 마지막으로 {@link #rateLimiter}를 정리한 시각.
+     */
+    private long lastPurgeTime;
 
-                if (finalUserSet == null)
-                    break;
 
-                logger.debug("run(): {}", matchRule);
-                logger.debug("run(): finalUserSet={}", finalUserSet);
+    /**
+     * 등록된 사용자들을 저장하기 위한 자료 구조.
+     * 사용자마다 선호 규칙의 번호와 등록된 시각을 함께 저장한다. 여러 스레드
+     * 간에 공유되므로 사용할 때에는 반드시 동기화 처리를 해야 한다.
+     *
+     * 사용자들은 등록된 순서대로 저장되므로, 가장 오래 기다린 사용자부터
+     * 차례대로 살펴보면 대기 시간이 초과된 사용자들을 전부 살펴보지 않고도
+     * 찾아낼 수 있다.
+     */
+    private final QueueStore<U> store;
 
-                // 이번에 찾은 매치 규칙은 다음 번 탐색에서 제외시킨다.
-                oldMatchRuleSet.add(matchRule);
 
-                // 서로 취향이 맞는 사용자들 중에서 매치를 찾는다.
-                List<Set<U>> matchList = this.findMatches(
-                    new MatchRule<>(matchRule),
-                    new HashSet<>(finalUserSet)
-                );
+    /**
+     * 사용자들이 등록한 선호 규칙을 번호로 관리하기 위한 자료 구조.
+     * {@link #store}와 마찬가지로 사용할 때에는 반드시 동기화 처리를 해야 한다.
+     */
+    private final ProfileTable<MatchRuleOptions<R>> profileTable;
 
-                // 서로 매치된 사용자들의 그룹별로 매치 결과를 처리한다.
-                for (Set<U> match : matchList) {
-                    logger.debug("run(): match={}", match);
 
-                    if (!finalUserSet.containsAll(match))
-                        throw new IllegalStateException(
-                            "match must be a subset of userSet"
-                        );
-                    if (match.size() != matchRule.matchSize)
-                        throw new IllegalStateException(
-                            "match must have exactly the same size as matchSize"
-                        );
+    /**
+     * 파티로 등록된 사용자들.
+     * 파티는 {@link #store}에 파티장 한 명으로 저장되며, 나머지 파티원들은
+     * 여기에서만 관리한다. {@link #store}와 마찬가지로 사용할 때에는 반드시
+     * 동기화 처리를 해야 한다.
+     */
+    // <leader: U, party: List<U>>
+    private final HashMap<U, List<U>> partyMap;
 
-                    // 매치된 사용자들이 이전에 등록했던 선호 규칙을 삭제하여
-                    // 매치 대상에서 제외시킨다.
-                    finalUserSet.removeAll(match);
-                    allUserSet.removeAll(match);
 
-                    this.playMatch(new MatchRule<>(matchRule), match);
-                }
+    /**
+     * 파티원별로 그 파티의 파티장.
+     * 파티장 자신도 포함한다.
+     */
+    // <member: U, leader: U>
+    private final HashMap<U, U> leaderMap;
 
-                logger.debug("run(): unmatched={}", finalUserSet);
-            }
-        } catch (Throwable e) {
-            String name = this.getClass().toString();
-            logger.error("An exception occurred while running " + name, e);
 
-            throw e;
-        }
-    }
+    /**
+     * 매치 규칙을 이루는 규칙 키의 수.
+     * {@link MatchRule#matchSize}도 하나의 규칙 키로 취급하므로
+     * {@link #ruleKeyList}의 크기보다 하나 크다.
+     */
+    private final int levelCount;
 
 
     /**
-     * 서로 취향이 맞는 사용자들을 찾는다.
-     * 무작위로 매치 규칙을 정하고 그 매치 규칙을 선호하는 사용자들을 찾는다.
-     *
-     * 모든 경우에 대한 매치 규칙을 무작위 순서로 탐색하되, 그 매치 규칙을
-     * 선호하는 사용자들로부터 적어도 하나 이상의 매치를 찾을 수 있는 경우에
-     * 대해서만 탐색을 수행한다. 적절한 매치 규칙을 찾으면 탐색을 종료하고 그
-     * 매치 규칙을 선호하는 사용자들을 리턴한다. 모든 경우를 탐색했음에도
-     * 불구하고 적절한 매치 규칙을 찾지 못했다면 {@code null}을 리턴한다.
-     *
-     * 모든 경우에 대한 매치 규칙을 탐색하기 위해서 규칙 키를 하나씩 조합하여
-     * 매치 규칙을 생성하는 방법을 사용한다. 규칙 키는 {@link #ruleKeyList}에
-     * 나열된 순서대로 조합하며, 규칙 키가 모두 조합되어 하나의 매치 규칙이
-     * 완성되면 그 매치 규칙이 적절한지 확인하고 탐색 종료 여부를 판단한다.
-     *
-     * 어떤 규칙 키를 조합할 차례인지는 {@code depth} 값으로 주어진다. 규칙 키의
-     * 순서를 구분하기 위해 번호로 표현하며, -1은 {@link MatchRule#matchSize}를
-     * 의미하는 특수한 용도로 사용된다. 이 메서드를 맨 처음 호출하는 경우에는
-     * 반드시 {@code depth} 값이 -1이 되어야 한다.
-     *
-     * @param depth 매치 규칙에 추가할 규칙 키 번호
-     * @param userSet 탐색의 대상이 되는 사용자들
-     * @param oldMatchRuleSet 탐색에서 제외시킬 매치 규칙의 목록
-     * @param matchRule 찾은 매치 규칙을 저장할 변수
-     * @return 서로 취향이 맞는 사용자들
+     * 규칙 키 번호별로 규칙 값을 번호로 바꾸어 주는 사전.
      */
-    private Set<U> findMatchRule(
-        int depth,
-        Set<U> userSet,
-        Set<MatchRule<R>> oldMatchRuleSet,
-        MatchRule<R> matchRule
-    ) {
-        assert (depth >= -1 && depth < this.ruleKeyList.size());
-
-        // 매치 규칙에 추가해야 하는 규칙 키가 무엇인지 파악한다.
-        // 만약 {@code depth} 값이 -1인 경우에는 {@code null}이 된다.
-        R ruleKey = null;
-        if (depth >= 0)
-            ruleKey = this.ruleKeyList.get(depth);
-
-        // 탐색의 대상이 되는 사용자들을 규칙 키의 규칙 값별로 분류한다.
-        // <ruleValue: Object, newUserSet: Set<U>>
-        Map<Object, Set<U>> invertedUserMap = new HashMap<>();
-        for (U user : userSet) {
-            MatchRuleOptions<R> options = this.userMap.get(user);
-
-            Set<?> ruleValueSet = options.matchSizeSet;
-            if (ruleKey != null)
-                ruleValueSet = options.ruleSetMap.get(ruleKey);
-
-            for (Object ruleValue : ruleValueSet) {
-                Set<U> newUserSet = invertedUserMap.get(ruleValue);
-
-                if (newUserSet == null) {
-                    newUserSet = new HashSet<>();
-                    invertedUserMap.put(ruleValue, newUserSet);
-                }
+    private final ValueDictionary[] dictionaries;
 
-                newUserSet.add(user);
-            }
-        }
 
-        // 매치 규칙에 추가할 규칙 값의 순서를 무작위로 섞는다.
-        List<Object> ruleValueList = new ArrayList<>(invertedUserMap.keySet());
-        Collections.shuffle(ruleValueList, ThreadLocalRandom.current());
+    /**
+     * 매치 규칙을 탐색할 때 사용하는 배열들.
+     * 아래의 배열들은 모두 {@link #findMatchRule()}에서 규칙 키
+     * 번호별로 하나씩 사용되며, 매 주기마다 새로 할당하지 않고 다시 사용한다.
+     * 필요한 크기보다 작을 때에만 더 큰 배열로 바꾼다.
+     */
+    private final int[][] levelBuffers;
 
-        for (Object ruleValue : ruleValueList) {
-            Set<U> newUserSet = invertedUserMap.get(ruleValue);
+    private final int[][] levelCounts;
 
-            // 규칙 키와 규칙 값을 매치 규칙에 추가한다.
-            if (ruleKey == null)
-                matchRule.matchSize = (Integer)ruleValue;
-            else
-                matchRule.ruleMap.put(ruleKey, ruleValue);
-
-            // 현재의 매치 규칙을 선호하는 사용자들로부터 적어도 하나 이상의
-            // 매치를 찾을 수 있는지 확인한다.
-            if (newUserSet.size() < matchRule.matchSize)
-                continue;
+    private final int[][] levelUserCounts;
 
-            if (depth + 1 < this.ruleKeyList.size()) {
-                // 아직 매치 규칙이 완성되지 않았다면 다음 규칙 키를 조합한다.
-                Set<U> finalUserSet = this.findMatchRule(
-                    depth + 1,
-                    newUserSet,
-                    oldMatchRuleSet,
-                    matchRule
-                );
+    private final int[][] levelCodes;
 
-                // 적절한 매치 규칙을 찾았다면 탐색을 종료한다.
-                if (finalUserSet != null)
-                    return finalUserSet;
-            } else {
-                // 매치 규칙이 완성되었다면 매치 규칙이 제외 대상인지 확인한다.
-                if (!oldMatchRuleSet.contains(matchRule))
-                    return newUserSet;
-            }
-        }
+    private final int[][] levelOffsets;
 
-        return null;
-    }
 
-}
+    /**
+     * 규칙 키 번호별로 {@link #levelCodes}에 담긴 규칙 값의 수와, 그 중에서
+     * 다음으로 조합할 규칙 값의 위치.
+     * 탐색을 멈췄다가 이어서 할 때 멈춘 위치를 알 수 있도록 재귀 호출 대신 이
+     * 배열들을 stack으로 사용한다.
+     */
+    private final int[] levelCodeCounts;
+
+    private final int[] levelCursors;
+
+
+    /**
+     * 규칙 키 번호별로 {@link #levelBuffers}의 다음 배열에 담긴, 규칙 값을
+     * 가리지 않는 선호 규칙들의 위치.
+     */
+    private final int[] levelWildFroms;
+
+    private final int[] levelWildTos;
+
+
+    /**
+     * 탐색 중인 규칙 키 번호.
+     * -1이면 매치 주기가 새로 시작되어 처음부터 탐색해야 한다는 뜻이다.
+     */
+    private int searchLevel;
+
+
+    /**
+     * 탐색 중인 매치 규칙을 규칙 키 번호별 규칙 값 번호로 나타낸 것.
+     */
+    private final int[] ruleCodes;
+
+
+    /**
+     * 탐색 중인 매치 규칙의 {@link MatchRule#matchSize}.
+     */
+    private int matchSize;
+
+
+    /**
+     * 마지막으로 찾은 매치 규칙을 만족하는 선호 규칙들의 위치.
+     * 마지막 규칙 키의 규칙 값을 가리지 않는 선호 규칙들은 따로 저장된다.
+     */
+    private int finalFrom;
+
+    private int finalTo;
+
+    private int finalWildFrom;
+
+    private int finalWildTo;
+
+
+    /**
+     * 선호 규칙의 번호별로 매치될 수 있는지를 표시하는 배열.
+     * {@link #markStamp}와 같은 값이 저장된 선호 규칙을 등록한 사용자만 매치될
+     * 수 있다.
+     */
+    private int[] marks;
+
+    private int markStamp;
+
+
+    /**
+     * {@link #canPack(int[], int, int)}에서 부분합을 계산할 때 사용하는 배열.
+     */
+    private boolean[] packSums;
+
+
+    /**
+     * 실행 중인 매치 주기가 있는지 나타낸다.
+     * 매치 주기가 여러 조각으로 나누어 실행되는 동안 {@code true}가 된다.
+     */
+    private volatile boolean cycleRunning;
+
+
+    /**
+     * 실행 중인 매치 주기가 시작된 시각.
+     */
+    private long cycleStartTime;
+
+
+    /**
+     * 실행 중인 매치 주기에서 지금까지 실행한 조각의 수와 탐색한 노드의 수.
+     */
+    private int cycleSlices;
+
+    private long cycleNodes;
+
+
+    /**
+     * 실행 중인 조각이 시작된 시각과, 그 조각에서 지금까지 탐색한 노드의 수.
+     */
+    private long sliceStartTime;
+
+    private int sliceNodes;
+
+
+    /**
+     * 시각을 나노초 단위로 알려 주는 시계.
+     * 대기 시간, 매치 주기와 조각의 실행 시간, 통계를 계산할 때 사용한다.
+     *
+     * @see MatcherConfig#getClock()
+     */
+    private final LongSupplier clock;
+
+
+    /**
+     * 매치 주기를 실행하는 스레드.
+     * {@link #shutdown()}을 호출하면 더 이상 매치 주기가 실행되지 않는다.
+     * 매치 주기를 자동으로 실행하지 않으면 {@code null}이 된다.
+     *
+     * @see MatcherConfig#isScheduled()
+     */
+    private final ScheduledExecutorService executor;
+
+
+    /**
+     * {@code Matcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     */
+    public Matcher(Class<R> ruleKeyType, Duration delay) {
+        this(ruleKeyType, delay, MatcherConfig.builder().build());
+    }
+
+
+    /**
+     * {@code Matcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     */
+    public Matcher(Class<R> ruleKeyType, Duration delay, MatcherConfig config) {
+        this(ruleKeyType, delay, config, QueueStore.onHeap());
+    }
+
+
+    /**
+     * {@code Matcher} 인스턴스를 생성한다.
+     * 등록된 사용자들은 {@code store}에 저장된다. 대기열이 매우 커질 수 있다면
+     * {@link QueueStore#offHeap(UserCodec, int)}를 사용하여 사용자들을 heap
+     * 바깥에 저장할 수 있다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     * @param store 등록된 사용자들을 저장할 자료 구조
+     */
+    public Matcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        MatcherConfig config,
+        QueueStore<U> store
+    ) {
+        if (store == null)
+            throw new IllegalArgumentException("store cannot be null");
+
+        if (config.getMaxWait() != null && config.getMaxWait().isNegative())
+            throw new IllegalArgumentException("maxWait cannot be negative");
+
+        if (config.getMaxQueueSize() < 1)
+            throw new IllegalArgumentException(
+                "maxQueueSize cannot be less than one"
+            );
+
+        if (config.getMaxBucketSize() < 1)
+            throw new IllegalArgumentException(
+                "maxBucketSize cannot be less than one"
+            );
+
+        if (config.getMaxSubmitRate() < 0.0)
+            throw new IllegalArgumentException(
+                "maxSubmitRate cannot be negative"
+            );
+
+        if (config.getMaxSubmitBurst() < 1)
+            throw new IllegalArgumentException(
+                "maxSubmitBurst cannot be less than one"
+            );
+
+        if (config.getMaxCycleTime() != null
+            && config.getMaxCycleTime().isNegative())
+            throw new IllegalArgumentException(
+                "maxCycleTime cannot be negative"
+            );
+
+        if (config.getMaxSliceTime() != null
+            && config.getMaxSliceTime().isNegative())
+            throw new IllegalArgumentException(
+                "maxSliceTime cannot be negative"
+            );
+
+        if (config.getMaxSliceNodes() < 1)
+            throw new IllegalArgumentException(
+                "maxSliceNodes cannot be less than one"
+            );
+
+        if (config.getRateDecayTime() == null
+            || config.getRateDecayTime().isNegative()
+            || config.getRateDecayTime().isZero())
+            throw new IllegalArgumentException(
+                "rateDecayTime must be positive"
+            );
+
+        if (config.getClock() == null)
+            throw new IllegalArgumentException("clock cannot be null");
+
+        this.clock = config.getClock();
+        this.ruleKeyType = ruleKeyType;
+        this.ruleKeySet = EnumSet.allOf(this.ruleKeyType);
+        this.ruleKeyList = new ArrayList<>(this.ruleKeySet);
+        this.maxWaitNanos = (config.getMaxWait() == null)
+            ? Long.MAX_VALUE
+            : config.getMaxWait().toNanos();
+        this.maxQueueSize = config.getMaxQueueSize();
+        this.maxBucketSize = config.getMaxBucketSize();
+        this.maxCycleNanos = (config.getMaxCycleTime() == null)
+            ? Long.MAX_VALUE
+            : config.getMaxCycleTime().toNanos();
+        this.maxSliceNanos = (config.getMaxSliceTime() == null)
+            ? Long.MAX_VALUE
+            : config.getMaxSliceTime().toNanos();
+        this.maxSliceNodes = config.getMaxSliceNodes();
+        this.rateDecayNanos = config.getRateDecayTime().toNanos();
+        this.rateLimiter = (config.getMaxSubmitRate() == 0.0)
+            ? null
+            : new RateLimiter<>(
+                config.getMaxSubmitRate(),
+                config.getMaxSubmitBurst()
+            );
+        this.queueSize = new AtomicInteger();
+        this.sizeBucketMap = new ConcurrentHashMap<>();
+        this.valueBucketMap = new EnumMap<>(this.ruleKeyType);
+        for (R ruleKey : this.ruleKeyList)
+            this.valueBucketMap.put(ruleKey, new ConcurrentHashMap<>());
+        this.wildcardBucketMap = new ConcurrentHashMap<>();
+        this.wildcardDomainMap = new ConcurrentHashMap<>();
+        this.store = store;
+        this.store.attach();
+        this.profileTable = new ProfileTable<>();
+        this.partyMap = new HashMap<>();
+        this.leaderMap = new HashMap<>();
+        this.levelCount = this.ruleKeyList.size() + 1;
+        this.dictionaries = new ValueDictionary[this.levelCount];
+        for (int level = 0; level < this.levelCount; ++level)
+            this.dictionaries[level] = new ValueDictionary();
+        this.levelBuffers = new int[this.levelCount + 1][0];
+        this.levelCounts = new int[this.levelCount][0];
+        this.levelUserCounts = new int[this.levelCount][0];
+        this.levelCodes = new int[this.levelCount][0];
+        this.levelOffsets = new int[this.levelCount][0];
+        this.levelCodeCounts = new int[this.levelCount];
+        this.levelCursors = new int[this.levelCount];
+        this.levelWildFroms = new int[this.levelCount];
+        this.levelWildTos = new int[this.levelCount];
+        this.searchLevel = -1;
+        this.ruleCodes = new int[this.levelCount];
+        this.marks = new int[0];
+        this.markStamp = 0;
+        this.packSums = new boolean[0];
+        this.lastPurgeTime = this.clock.getAsLong();
+
+        if (config.isScheduled()) {
+            this.executor = Executors.newSingleThreadScheduledExecutor();
+            this.executor.scheduleWithFixedDelay(
+                this::runScheduled,
+                delay.toNanos(),
+                delay.toNanos(),
+                TimeUnit.NANOSECONDS
+            );
+        } else {
+            this.executor = null;
+        }
+
+        logger.info("{} started: ruleKeyType={}, ruleKeySet={}, delay={}, config={}, store={}",
+            this.getClass(),
+            this.ruleKeyType.getSimpleName(),
+            this.ruleKeySet,
+            delay,
+            config,
+            this.store.getClass().getSimpleName()
+        );
+    }
+
+
+    /**
+     * 매치 결과를 처리한다.
+     * 이 메서드는 서로 취향이 맞는 사용자들끼리 매치된 이후에 곧바로 호출된다.
+     * 매치 결과를 가지고 어떤 작업을 수행하려면 이 메서드를 구현하면 된다.
+     *
+     * 만약 매치 결과가 여러 개일 경우에는 한 주기에 두 번 이상 호출될 수 있다.
+     *
+     * @param matchRule 매치 규칙
+     * @param match 서로 매치된 사용자들
+     */
+    protected abstract void playMatch(MatchRule<R> matchRule, Set<U> match);
+
+
+    /**
+     * 대기 시간이 초과된 사용자를 처리한다.
+     * 이 메서드는 {@link MatcherConfig#getMaxWait()}보다 오래 기다린 사용자가
+     * 자동으로 삭제된 이후에 곧바로 호출된다. 사용자에게 매치가 이루어지지
+     * 않았음을 알려 주려면 이 메서드를 구현하면 된다.
+     *
+     * 기본적으로는 아무런 작업도 하지 않는다.
+     *
+     * @param user 대기 시간이 초과된 사용자
+     */
+    protected void playExpiry(U user) {
+    }
+
+
+    /**
+     * 등록이 취소된 사용자를 처리한다.
+     * 이 메서드는 {@link #cancel(Object)}로 사용자의 등록이 취소된 이후에
+     * 곧바로 호출된다. 매치 주기와는 관계없이 {@link #cancel(Object)}를 호출한
+     * 스레드에서 실행된다.
+     *
+     * 기본적으로는 아무런 작업도 하지 않는다.
+     *
+     * @param user 등록이 취소된 사용자
+     */
+    protected void playCancel(U user) {
+    }
+
+
+    /**
+     * 매치 결과를 더 처리할 수 있는지 확인한다.
+     * 매치 주기는 매치 결과나 대기 시간이 초과된 사용자를 처리하기 전마다 이
+     * 메서드를 호출하며, {@code false}가 리턴되면 그 주기를 곧바로 끝낸다.
+     * 처리되지 못한 사용자들은 삭제되지 않고 그대로 남아 있다가 다음 주기에서
+     * 다시 매치 대상이 된다. 매치 결과를 받는 쪽이 처리 속도를 따라가지 못할
+     * 때 매치를 잠시 멈추려면 이 메서드를 구현하면 된다.
+     *
+     * 기본적으로는 항상 {@code true}를 리턴한다.
+     *
+     * @return 처리할 수 있으면 {@code true}, 멈춰야 하면 {@code false}
+     */
+    protected boolean hasDemand() {
+        return true;
+    }
+
+
+    /**
+     * 서로 취향이 맞는 사용자들 중에서 매치를 찾는다.
+     * 동일한 취향을 가진 사용자들을 어떻게 매치시킬지 결정한다. 이 과정에서
+     * 매치되지 않는 사용자가 있을 수 있다.
+     *
+     * 기본적으로는 주어진 사용자들의 순서를 무작위로 섞고 맨 앞쪽부터 차례대로
+     * {@link MatchRule#matchSize}만큼씩 뽑아서 매치시키는 방식으로 작동한다.
+     * 파티가 있으면 파티원이 많은 파티부터 자리가 남는 첫 번째 매치에 배정하고
+     * (first-fit decreasing), 남은 자리를 혼자 등록한 사용자들로 채운다.
+     * 만약 이 메서드를 다시 구현하고자 한다면, 하나의 매치에 포함되는 사용자의
+     * 수는 반드시 {@link MatchRule#matchSize}와 동일해야 하며, 파티원들은
+     * 반드시 같은 매치에 포함되어야 한다. 파티원들은 {@link #partyOf(Object)}로
+     * 알 수 있다.
+     *
+     * 이 메서드에서 리턴하는 사용자들은 {@link #playMatch(MatchRule, Set)}를
+     * 호출할 때 두 번째 파라미터로 사용된다.
+     *
+     * @param matchRule 매치 규칙
+     * @param userSet 서로 취향이 맞는 사용자들
+     * @return 서로 매치된 사용자들의 그룹 목록
+     */
+    protected List<Set<U>> findMatches(MatchRule<R> matchRule, Set<U> userSet) {
+        // 같은 파티에 속한 사용자들을 하나로 묶고, 그 순서를 무작위로 섞는다.
+        List<List<U>> partyList = new ArrayList<>();
+        Set<U> visitedSet = new HashSet<>();
+        for (U user : userSet)
+            if (!visitedSet.contains(user)) {
+                List<U> party = this.partyOf(user);
+
+                visitedSet.addAll(party);
+                partyList.add(party);
+            }
+        Collections.shuffle(partyList, ThreadLocalRandom.current());
+
+        // 파티원이 많은 파티부터 배정한다. 정렬은 안정적이므로 같은 크기의
+        // 파티들끼리는 무작위로 섞인 순서가 유지된다.
+        partyList.sort((a, b) -> Integer.compare(b.size(), a.size()));
+
+        // 파티마다 자리가 남는 첫 번째 매치에 배정한다. 앞쪽의 매치들부터
+        // 가득 차므로, 가득 차지 않은 첫 번째 매치의 위치를 기억해 둔다.
+        int matchSize = matchRule.matchSize;
+        List<Set<U>> groupList = new ArrayList<>();
+        int firstOpen = 0;
+
+        for (List<U> party : partyList) {
+            while (firstOpen < groupList.size()
+                && groupList.get(firstOpen).size() == matchSize)
+                ++firstOpen;
+
+            Set<U> group = null;
+            for (int i = firstOpen; i < groupList.size(); ++i)
+                if (groupList.get(i).size() + party.size() <= matchSize) {
+                    group = groupList.get(i);
+                    break;
+                }
+
+            if (group == null) {
+                group = new HashSet<>();
+                groupList.add(group);
+            }
+
+            group.addAll(party);
+        }
+
+        // 자리가 모두 채워진 매치들만 리턴한다.
+        List<Set<U>> matchList = new ArrayList<>(groupList.size());
+        for (Set<U> group : groupList)
+            if (group.size() == matchSize)
+                matchList.add(group);
+
+        return matchList;
+    }
+
+
+    /**
+     * 사용자를 등록한다.
+     * 등록된 사용자는 매치 대기 상태가 되어 서로 취향이 맞는 사용자가 나타날
+     * 때까지 기다리게 된다. 그러고 나서 알맞은 상대나 그룹이 발견되면 매치가
+     * 이루어지고, 매치된 사용자가 이전에 등록했던 내용은 자동으로 삭제된다.
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @return 등록에 성공하면 {@code true},
+     *         등록이 거부되었으면 {@code false}
+     *
+     * @see #submit(Object, Set, EnumMap)
+     * @see #trySubmit(Object, Set)
+     */
+    public final boolean submit(U user, Set<Integer> matchSizeSet) {
+        return this.submit(user, matchSizeSet, null);
+    }
+
+
+    /**
+     * 사용자를 등록한다.
+     * 등록된 사용자는 매치 대기 상태가 되어 서로 취향이 맞는 사용자가 나타날
+     * 때까지 기다리게 된다. 그러고 나서 알맞은 상대나 그룹이 발견되면 매치가
+     * 이루어지고, 매치된 사용자가 이전에 등록했던 내용은 자동으로 삭제된다.
+     *
+     * 어떤 규칙 키에 대해 규칙 값을 가리지 않는다면
+     * {@link EnumSet#allOf(Class)}처럼 enum 타입의 모든 값을 지정하면 된다.
+     * 이러한 선호 규칙은 규칙 값마다 따로 저장되지 않으므로, enum 타입의 값이
+     * 많아지더라도 매치 규칙을 탐색하는 비용이 늘어나지 않는다.
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙
+     * @return 등록에 성공하면 {@code true},
+     *         등록이 거부되었으면 {@code false}
+     *
+     * @see #submit(Object, Set)
+     * @see #trySubmit(Object, Set, EnumMap)
+     */
+    public final boolean submit(
+        U user,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        return (this.trySubmit(user, matchSizeSet, ruleSetMap)
+            == SubmitResult.ACCEPTED);
+    }
+
+
+    /**
+     * 사용자를 등록하고, 등록이 거부되었다면 그 이유를 리턴한다.
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @return 등록한 결과
+     *
+     * @see #trySubmit(Object, Set, EnumMap)
+     */
+    public final SubmitResult trySubmit(U user, Set<Integer> matchSizeSet) {
+        return this.trySubmit(user, matchSizeSet, null);
+    }
+
+
+    /**
+     * 사용자를 등록하고, 등록이 거부되었다면 그 이유를 리턴한다.
+     * 등록을 받아들일지는 매치 주기가 실행되는 동안 잡고 있는 lock을 잡지 않고
+     * 결정하므로, 매치 주기가 오래 걸리더라도 거부되는 요청은 기다리지 않고
+     * 곧바로 리턴된다. 다음과 같은 순서로 확인한다:
+     * <ol>
+     * <li>직전 매치 주기의 실행 시간이 {@link MatcherConfig#getMaxCycleTime()}을
+     *     초과했으면 {@link SubmitResult#OVERLOADED}</li>
+     * <li>사용자가 너무 자주 등록하거나 취소했으면
+     *     {@link SubmitResult#RATE_LIMITED}</li>
+     * <li>등록된 사용자의 수가 {@link MatcherConfig#getMaxQueueSize()}에
+     *     도달했으면 {@link SubmitResult#QUEUE_FULL}</li>
+     * <li>선호하는 사용자의 수 중 하나라도 등록된 사용자의 수가
+     *     {@link MatcherConfig#getMaxBucketSize()}를 넘게 되면
+     *     {@link SubmitResult#BUCKET_FULL}</li>
+     * <li>동일한 사용자가 이미 등록되어 있으면
+     *     {@link SubmitResult#DUPLICATE}</li>
+     * </ol>
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙
+     * @return 등록한 결과
+     *
+     * @see #trySubmit(Object, Set)
+     */
+    public final SubmitResult trySubmit(
+        U user,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        logger.debug("submit(): user={}, matchSizeSet={}, ruleSetMap={}",
+            user,
+            matchSizeSet,
+            ruleSetMap
+        );
+
+        ruleSetMap = this.validate(user, matchSizeSet, ruleSetMap);
+
+        return this.submitParty(
+            Collections.singletonList(user),
+            matchSizeSet,
+            ruleSetMap
+        );
+    }
+
+
+    /**
+     * 파티를 등록한다.
+     *
+     * @param members 파티원들의 선호 규칙
+     * @return 등록에 성공하면 {@code true},
+     *         등록이 거부되었으면 {@code false}
+     *
+     * @see #trySubmitParty(List)
+     */
+    public final boolean submitParty(List<Submission<U, R>> members) {
+        return (this.trySubmitParty(members) == SubmitResult.ACCEPTED);
+    }
+
+
+    /**
+     * 파티를 등록하고, 등록이 거부되었다면 그 이유를 리턴한다.
+     * 함께 매치되기를 원하는 사용자들은 파티로 등록하면 서로 다른 매치로
+     * 나뉘지 않는다. 파티는 하나의 매치에서 파티원의 수만큼 자리를 차지하며,
+     * 파티원들이 선호하는 사용자의 수와 규칙 값 중에서 모두가 선호하는 것들로만
+     * 매치된다.
+     *
+     * 파티는 첫 번째 파티원을 파티장으로 하여 하나의 항목으로 저장되므로,
+     * 파티원들을 따로 등록하는 것보다 탐색에 드는 비용이 적다. 파티원 중 누구의
+     * 등록을 취소하더라도 파티 전체가 함께 취소되며, 대기 시간도 파티장이
+     * 등록된 시각을 기준으로 함께 초과된다. 등록을 받아들이는 조건은
+     * {@link #trySubmit(Object, Set, EnumMap)}과 같으며, 사용자의 수는
+     * 파티원의 수만큼 센다. 파티원 중 한 명이라도 이미 등록되어 있으면
+     * {@link SubmitResult#DUPLICATE}가 리턴된다.
+     *
+     * @param members 파티원들의 선호 규칙, 첫 번째 파티원이 파티장이 된다
+     * @return 등록한 결과
+     * @throws IllegalArgumentException 파티원들이 모두 선호하는 사용자의 수나
+     *         규칙 값이 없는 경우
+     */
+    public final SubmitResult trySubmitParty(List<Submission<U, R>> members) {
+        logger.debug("submitParty(): members={}", members);
+
+        if (members == null || members.isEmpty())
+            throw new IllegalArgumentException(
+                "members cannot be null or empty"
+            );
+
+        List<U> party = new ArrayList<>(members.size());
+        Set<Integer> matchSizeSet = null;
+        EnumMap<R, Set<?>> ruleSetMap = null;
+
+        // 파티원들이 모두 선호하는 것들만 남긴다.
+        for (Submission<U, R> member : members) {
+            if (member == null)
+                throw new IllegalArgumentException("member cannot be null");
+
+            EnumMap<R, Set<?>> memberRuleSetMap = this.validate(
+                member.getUser(),
+                member.getMatchSizeSet(),
+                member.getRuleSetMap()
+            );
+
+            party.add(member.getUser());
+
+            if (matchSizeSet == null) {
+                matchSizeSet = new HashSet<>(member.getMatchSizeSet());
+                ruleSetMap = new EnumMap<>(memberRuleSetMap);
+                continue;
+            }
+
+            matchSizeSet.retainAll(member.getMatchSizeSet());
+            for (Map.Entry<R, Set<?>> entry : memberRuleSetMap.entrySet())
+                ruleSetMap.put(
+                    entry.getKey(),
+                    intersect(ruleSetMap.get(entry.getKey()), entry.getValue())
+                );
+        }
+
+        if (new HashSet<>(party).size() != party.size())
+            throw new IllegalArgumentException(
+                "members cannot contain the same user twice"
+            );
+
+        // 파티원의 수보다 작은 매치에는 파티가 들어갈 수 없다.
+        int partySize = party.size();
+        matchSizeSet.removeIf(matchSize -> matchSize < partySize);
+
+        if (matchSizeSet.isEmpty())
+            throw new IllegalArgumentException(
+                "members have no matchSize in common"
+            );
+
+        if (ruleSetMap.values().stream().anyMatch(Set::isEmpty))
+            throw new IllegalArgumentException(
+                "members have no ruleValue in common"
+            );
+
+        return this.submitParty(party, matchSizeSet, ruleSetMap);
+    }
+
+
+    /**
+     * 등록할 사용자와 선호 규칙이 올바른지 확인한다.
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙
+     * @return 선호하는 규칙, {@code ruleSetMap}이 {@code null}이면 비어 있는
+     *         {@link EnumMap}
+     */
+    private EnumMap<R, Set<?>> validate(
+        U user,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        if (user == null)
+            throw new IllegalArgumentException("user cannot be null");
+
+        if (matchSizeSet == null || matchSizeSet.isEmpty())
+            throw new IllegalArgumentException(
+                "matchSizeSet cannot be null or empty"
+            );
+
+        if (matchSizeSet.stream().anyMatch(matchSize -> matchSize < 2))
+            throw new IllegalArgumentException(
+                "matchSize cannot be less than two"
+            );
+
+        if (ruleSetMap == null)
+            ruleSetMap = new EnumMap<>(this.ruleKeyType);
+
+        if (!Objects.equals(ruleSetMap.keySet(), this.ruleKeySet))
+            throw new IllegalArgumentException(
+                "ruleSetMap must contain the following keys: " + this.ruleKeySet
+            );
+
+        if (ruleSetMap.values().stream().anyMatch(ruleValueSet -> {
+            return (ruleValueSet == null || ruleValueSet.isEmpty());
+        }))
+            throw new IllegalArgumentException(
+                "ruleValueSet cannot be null or empty"
+            );
+
+        return ruleSetMap;
+    }
+
+
+    /**
+     * 두 규칙 값 집합의 교집합을 새로 만든다.
+     * {@link EnumSet}은 {@link EnumSet}으로 만든다.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Set<?> intersect(Set<?> a, Set<?> b) {
+        Set<?> c = (a instanceof EnumSet)
+            ? EnumSet.copyOf((EnumSet)a)
+            : new HashSet<>(a);
+
+        c.retainAll(b);
+        return c;
+    }
+
+
+    /**
+     * 파티를 하나의 항목으로 등록한다. 혼자 등록하는 사용자는 파티원이 한
+     * 명인 파티로 취급한다.
+     *
+     * @param party 파티원들, 첫 번째 파티원이 파티장이 된다
+     * @param matchSizeSet 파티원들이 모두 선호하는 사용자의 수
+     * @param ruleSetMap 파티원들이 모두 선호하는 규칙
+     * @return 등록한 결과
+     */
+    private SubmitResult submitParty(
+        List<U> party,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        U leader = party.get(0);
+        int partySize = party.size();
+
+        SubmitResult result = this.admit(leader, matchSizeSet, partySize);
+        if (result != SubmitResult.ACCEPTED) {
+            logger.debug("submit(): user={}, result={}", leader, result);
+            return result;
+        }
+
+        return this.enqueue(party, matchSizeSet, ruleSetMap, 0L);
+    }
+
+
+    /**
+     * 다른 {@code Matcher}에서 {@link #drain()}으로 꺼낸 사용자를 등록한다.
+     * 꺼낸 사용자는 이미 한 번 등록을 받아들였던 사용자이므로,
+     * {@link #trySubmit(Object, Set, EnumMap)}과 달리 등록을 받아들일지 다시
+     * 결정하지 않는다. 따라서 등록된 사용자의 수가
+     * {@link MatcherConfig#getMaxQueueSize()}나
+     * {@link MatcherConfig#getMaxBucketSize()}를 넘을 수 있다. 대기 시간은
+     * {@link Submission#getWaitNanos()}만큼 이미 기다린 것으로 이어서 센다.
+     *
+     * 사용자들은 넘겨받은 순서대로 저장되고 대기 시간도 그 순서대로 확인하므로,
+     * 이미 등록되어 있던 사용자들보다 오래 기다린 사용자는 조금 늦게 삭제될 수
+     * 있다.
+     *
+     * 동일한 사용자가 이미 등록되어 있거나 {@link QueueStore}에 더 이상 저장할
+     * 수 없어서 등록되지 못하면, 이 {@code Matcher}에 등록되어 있지 않은
+     * 파티원들마다 {@link #playExpiry(Object)}를 호출한다.
+     *
+     * @param submission {@link #drain()}으로 꺼낸 사용자와 그 선호 규칙
+     * @return 등록한 결과
+     */
+    public final SubmitResult handoff(Submission<U, R> submission) {
+        logger.debug("handoff(): submission={}", submission);
+
+        EnumMap<R, Set<?>> ruleSetMap = this.validate(
+            submission.getUser(),
+            submission.getMatchSizeSet(),
+            submission.getRuleSetMap()
+        );
+
+        List<U> party = (submission.getParty() == null)
+            ? Collections.singletonList(submission.getUser())
+            : submission.getParty();
+        Set<Integer> matchSizeSet = submission.getMatchSizeSet();
+
+        this.reserve(matchSizeSet, party.size());
+
+        SubmitResult result = this.enqueue(
+            party,
+            matchSizeSet,
+            ruleSetMap,
+            submission.getWaitNanos()
+        );
+        if (result == SubmitResult.ACCEPTED)
+            return result;
+
+        List<U> lostList = new ArrayList<>(party.size());
+        synchronized (this) {
+            for (U user : party)
+                if (this.store.find(user) == QueueStore.NONE
+                    && !this.leaderMap.containsKey(user))
+                    lostList.add(user);
+        }
+
+        logger.debug("handoff(): lost={}, result={}", lostList, result);
+
+        for (U user : lostList)
+            this.playExpiry(user);
+        return result;
+    }
+
+
+    /**
+     * 자리를 확보해 둔 파티를 {@link #store}에 저장한다.
+     * 저장하지 못하면 확보했던 자리를 반환한다.
+     *
+     * @param party 파티원들, 첫 번째 파티원이 파티장이 된다
+     * @param matchSizeSet 파티원들이 모두 선호하는 사용자의 수
+     * @param ruleSetMap 파티원들이 모두 선호하는 규칙
+     * @param waitNanos 이미 기다린 시간(나노초)
+     * @return 등록한 결과
+     */
+    private SubmitResult enqueue(
+        List<U> party,
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap,
+        long waitNanos
+    ) {
+        U leader = party.get(0);
+        int partySize = party.size();
+
+        synchronized (this) {
+            for (U user : party)
+                if (this.store.find(user) != QueueStore.NONE
+                    || this.leaderMap.containsKey(user)) {
+                    this.release(matchSizeSet, partySize);
+                    return SubmitResult.DUPLICATE;
+                }
+
+            if (this.store.isFull()) {
+                this.release(matchSizeSet, partySize);
+                return SubmitResult.QUEUE_FULL;
+            }
+
+            int profileId = this.profileTable.acquire(
+                copyOf(matchSizeSet, ruleSetMap, partySize)
+            );
+
+            MatchRuleOptions<R> options = this.profileTable.get(profileId);
+            if (options.valueCodes == null)
+                options.valueCodes = this.encodeValues(options);
+
+            long now = this.clock.getAsLong();
+            this.store.add(leader, profileId, now - waitNanos);
+
+            if (partySize > 1) {
+                List<U> members
+                    = Collections.unmodifiableList(new ArrayList<>(party));
+
+                this.partyMap.put(leader, members);
+                for (U user : members)
+                    this.leaderMap.put(user, leader);
+            }
+
+            this.countValues(options, partySize);
+            this.countArrivals(options, partySize, now);
+            return SubmitResult.ACCEPTED;
+        }
+    }
+
+
+    /**
+     * 선호 규칙을 복사한다.
+     * 등록된 선호 규칙은 여러 사용자가 공유하므로, 호출한 쪽에서 나중에
+     * 변경하더라도 영향을 받지 않도록 복사해서 저장한다.
+     *
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙
+     * @param partySize 함께 등록하는 사용자의 수
+     * @return 복사된 선호 규칙
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <R extends Enum<R>> MatchRuleOptions<R> copyOf(
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap,
+        int partySize
+    ) {
+        EnumMap<R, Set<?>> newRuleSetMap = new EnumMap<>(ruleSetMap);
+        newRuleSetMap.replaceAll((ruleKey, ruleValueSet) -> {
+            if (ruleValueSet instanceof EnumSet)
+                return Collections.unmodifiableSet(
+                    EnumSet.copyOf((EnumSet)ruleValueSet)
+                );
+
+            return Collections.unmodifiableSet(new HashSet<>(ruleValueSet));
+        });
+
+        return new MatchRuleOptions<>(
+            Collections.unmodifiableSet(new HashSet<>(matchSizeSet)),
+            newRuleSetMap,
+            partySize
+        );
+    }
+
+
+    /**
+     * 등록된 사용자를 삭제하고, 사용자가 확보했던 자리와 선호 규칙의 참조를
+     * 반환한다.
+     *
+     * @param handle 삭제할 사용자의 handle
+     * @return 삭제된 사용자의 선호 규칙
+     */
+    private MatchRuleOptions<R> removeUser(int handle) {
+        int profileId = this.store.profileId(handle);
+        MatchRuleOptions<R> options = this.profileTable.get(profileId);
+
+        if (options.partySize > 1) {
+            List<U> party = this.partyMap.remove(this.store.user(handle));
+            for (U user : party)
+                this.leaderMap.remove(user);
+        }
+
+        this.store.remove(handle);
+        this.profileTable.release(profileId);
+        this.release(options.matchSizeSet, options.partySize);
+        this.countValues(options, -options.partySize);
+
+        return options;
+    }
+
+
+    /**
+     * 사용자가 속한 파티의 파티장을 리턴한다.
+     *
+     * @param user 사용자
+     * @return 파티장, 파티에 속하지 않은 사용자이면 그 사용자
+     */
+    private U leaderOf(U user) {
+        U leader = this.leaderMap.get(user);
+
+        return (leader == null) ? user : leader;
+    }
+
+
+    /**
+     * 사용자가 속한 파티의 파티원들을 리턴한다.
+     * {@link #findMatches(MatchRule, Set)}를 다시 구현할 때, 파티원들이 서로
+     * 다른 매치로 나뉘지 않도록 하는 데 사용한다. 매치 주기 중에만 호출해야
+     * 한다.
+     *
+     * @param user 사용자
+     * @return 파티장을 포함한 파티원들,
+     *         파티에 속하지 않은 사용자이면 그 사용자만 포함된 목록
+     */
+    protected final List<U> partyOf(U user) {
+        List<U> party = this.partyMap.get(this.leaderOf(user));
+
+        return (party == null) ? Collections.singletonList(user) : party;
+    }
+
+
+    /**
+     * 사용자의 등록을 받아들일지 결정한다.
+     * lock을 잡지 않고 확인할 수 있는 조건들만 확인하며, 등록을 받아들이기로
+     * 결정했다면 {@link #queueSize}와 {@link #sizeBucketMap}에 미리 자리를
+     * 확보해 둔다. 확보한 자리는 사용자가 삭제될 때
+     * {@link #release(Set, int)}로 반환해야 한다.
+     *
+     * @param user 등록할 사용자
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param userCount 함께 등록하는 사용자의 수
+     * @return 등록을 받아들이면 {@link SubmitResult#ACCEPTED},
+     *         거부하면 그 이유
+     */
+    private SubmitResult admit(
+        U user,
+        Set<Integer> matchSizeSet,
+        int userCount
+    ) {
+        if (this.lastCycleNanos > this.maxCycleNanos)
+            return SubmitResult.OVERLOADED;
+
+        if (this.rateLimiter != null
+            && !this.rateLimiter.tryAcquire(user, this.clock.getAsLong()))
+            return SubmitResult.RATE_LIMITED;
+
+        if (this.queueSize.addAndGet(userCount) > this.maxQueueSize) {
+            this.queueSize.addAndGet(-userCount);
+            return SubmitResult.QUEUE_FULL;
+        }
+
+        // 한 버킷이라도 자리가 없으면 앞서 확보한 버킷의 자리를 되돌린다.
+        List<QueueBucket> reservedList = new ArrayList<>(matchSizeSet.size());
+        for (Integer matchSize : matchSizeSet) {
+            QueueBucket bucket = this.getSizeBucket(matchSize);
+
+            if (!bucket.tryAddSize(userCount, this.maxBucketSize)) {
+                for (QueueBucket reserved : reservedList)
+                    reserved.addSize(-userCount);
+
+                this.queueSize.addAndGet(-userCount);
+                return SubmitResult.BUCKET_FULL;
+            }
+
+            reservedList.add(bucket);
+        }
+
+        return SubmitResult.ACCEPTED;
+    }
+
+
+    /**
+     * 등록을 받아들일지 결정하지 않고 {@link #queueSize}와
+     * {@link #sizeBucketMap}에 자리를 확보한다.
+     *
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param userCount 함께 등록하는 사용자의 수
+     */
+    private void reserve(Set<Integer> matchSizeSet, int userCount) {
+        this.queueSize.addAndGet(userCount);
+
+        for (Integer matchSize : matchSizeSet)
+            this.getSizeBucket(matchSize).addSize(userCount);
+    }
+
+
+    /**
+     * {@link #admit(Object, Set, int)}에서 확보했던 자리를 반환한다.
+     *
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param userCount 함께 등록했던 사용자의 수
+     */
+    private void release(Set<Integer> matchSizeSet, int userCount) {
+        this.queueSize.addAndGet(-userCount);
+
+        for (Integer matchSize : matchSizeSet)
+            this.getSizeBucket(matchSize).addSize(-userCount);
+    }
+
+
+    private QueueBucket getSizeBucket(Integer matchSize) {
+        return this.sizeBucketMap.computeIfAbsent(matchSize, k -> {
+            long now = this.clock.getAsLong();
+
+            return new QueueBucket(this.rateDecayNanos, now);
+        });
+    }
+
+
+    private QueueBucket getValueBucket(R ruleKey, Object ruleValue) {
+        ConcurrentHashMap<Object, QueueBucket> bucketMap
+            = this.valueBucketMap.get(ruleKey);
+
+        return bucketMap.computeIfAbsent(ruleValue, k -> {
+            long now = this.clock.getAsLong();
+
+            return new QueueBucket(this.rateDecayNanos, now);
+        });
+    }
+
+
+    private QueueBucket getWildcardBucket(R ruleKey) {
+        return this.wildcardBucketMap.computeIfAbsent(ruleKey, k -> {
+            long now = this.clock.getAsLong();
+
+            return new QueueBucket(this.rateDecayNanos, now);
+        });
+    }
+
+
+    /**
+     * 규칙 값을 가리지 않는 사용자들 중에서 주어진 규칙 값을 선호하는 것으로
+     * 보는 사용자들의 통계를 리턴한다.
+     *
+     * @param ruleKey 규칙 키
+     * @param ruleValue 규칙 값
+     * @return 사용자들의 통계, 해당하는 사용자가 없으면 {@code null}
+     */
+    private QueueBucket findWildcardBucket(R ruleKey, Object ruleValue) {
+        Object[] domain = this.wildcardDomainMap.get(ruleKey);
+        if (domain == null || !(ruleValue instanceof Enum))
+            return null;
+
+        if (((Enum<?>)ruleValue).getDeclaringClass()
+            != ((Enum<?>)domain[0]).getDeclaringClass())
+            return null;
+
+        return this.wildcardBucketMap.get(ruleKey);
+    }
+
+
+    /**
+     * 선호 규칙이 주어진 규칙 키의 규칙 값을 가리지 않는지 확인한다.
+     * 선호 규칙이 {@link #profileTable}에 처음 저장될 때 계산해 둔 값을
+     * 사용하므로 규칙 값의 종류와 관계없이 곧바로 확인할 수 있다.
+     *
+     * @param options 선호 규칙
+     * @param ruleKey 규칙 키
+     * @return 규칙 값을 가리지 않으면 {@code true}, 아니면 {@code false}
+     */
+    private static <R extends Enum<R>> boolean isWildcard(
+        MatchRuleOptions<R> options,
+        R ruleKey
+    ) {
+        return (options.valueCodes[ruleKey.ordinal() + 1] == null);
+    }
+
+
+    /**
+     * 선호 규칙에 포함된 규칙 값별로 사용자의 수를 갱신한다.
+     * 규칙 값을 가리지 않는 규칙 키는 규칙 값마다 세지 않고 한 번만 센다.
+     *
+     * @param options 선호 규칙
+     * @param delta 사용자의 수에 더할 값
+     */
+    private void countValues(MatchRuleOptions<R> options, int delta) {
+        for (Map.Entry<R, Set<?>> entry : options.ruleSetMap.entrySet()) {
+            R ruleKey = entry.getKey();
+
+            if (isWildcard(options, ruleKey)) {
+                this.getWildcardBucket(ruleKey).addSize(delta);
+                continue;
+            }
+
+            for (Object ruleValue : entry.getValue())
+                this.getValueBucket(ruleKey, ruleValue).addSize(delta);
+        }
+    }
+
+
+    /**
+     * 선호 규칙에 포함된 선호하는 사용자의 수와 규칙 값별로 사용자가 등록된
+     * 사건을 센다.
+     *
+     * @param options 선호 규칙
+     * @param userCount 등록된 사용자의 수
+     * @param now 현재 시각
+     */
+    private void countArrivals(
+        MatchRuleOptions<R> options,
+        int userCount,
+        long now
+    ) {
+        for (Integer matchSize : options.matchSizeSet)
+            this.getSizeBucket(matchSize).countArrivals(userCount, now);
+
+        for (Map.Entry<R, Set<?>> entry : options.ruleSetMap.entrySet()) {
+            R ruleKey = entry.getKey();
+
+            if (isWildcard(options, ruleKey)) {
+                this.getWildcardBucket(ruleKey).countArrivals(userCount, now);
+                continue;
+            }
+
+            for (Object ruleValue : entry.getValue())
+                this.getValueBucket(ruleKey, ruleValue)
+                    .countArrivals(userCount, now);
+        }
+    }
+
+
+    /**
+     * 매치 규칙에 포함된 선호하는 사용자의 수와 규칙 값별로 사용자들이 매치된
+     * 사건을 센다.
+     *
+     * @param matchRule 매치 규칙
+     * @param userCount 매치된 사용자의 수
+     * @param now 현재 시각
+     */
+    private void countMatches(MatchRule<R> matchRule, int userCount, long now) {
+        this.getSizeBucket(matchRule.matchSize).countMatches(userCount, now);
+
+        for (Map.Entry<R, Object> entry : matchRule.ruleMap.entrySet())
+            this.getValueBucket(entry.getKey(), entry.getValue())
+                .countMatches(userCount, now);
+    }
+
+
+    /**
+     * 등록된 사용자의 수를 리턴한다.
+     * lock을 잡지 않고 미리 세어 둔 값을 읽으므로 사용자의 수와 관계없이
+     * 곧바로 리턴된다. 등록 중인 사용자가 잠시 포함될 수 있다.
+     *
+     * @return 등록된 사용자의 수
+     */
+    public final int getQueueSize() {
+        return this.queueSize.get();
+    }
+
+
+    /**
+     * 주어진 수의 사용자와 매치되기를 선호하는 사용자의 수를 리턴한다.
+     *
+     * @param matchSize 선호하는 사용자의 수
+     * @return 그 수를 선호하는 사용자의 수
+     *
+     * @see #getQueueSize()
+     */
+    public final int getQueueSize(int matchSize) {
+        QueueBucket bucket = this.sizeBucketMap.get(matchSize);
+
+        return (bucket == null) ? 0 : bucket.size();
+    }
+
+
+    /**
+     * 주어진 규칙 값을 선호하는 사용자의 수를 리턴한다.
+     *
+     * @param ruleKey 규칙 키
+     * @param ruleValue 규칙 값
+     * @return 그 규칙 값을 선호하는 사용자의 수
+     *
+     * @see #getQueueSize()
+     */
+    public final int getQueueSize(R ruleKey, Object ruleValue) {
+        if (ruleKey == null)
+            throw new IllegalArgumentException("ruleKey cannot be null");
+
+        QueueBucket bucket = this.valueBucketMap.get(ruleKey).get(ruleValue);
+        QueueBucket wildcardBucket
+            = this.findWildcardBucket(ruleKey, ruleValue);
+
+        return ((bucket == null) ? 0 : bucket.size())
+            + ((wildcardBucket == null) ? 0 : wildcardBucket.size());
+    }
+
+
+    /**
+     * 등록된 사용자의 수를 선호하는 사용자의 수별, 규칙 값별로 모아서
+     * 리턴한다. lock을 잡지 않으며, 비용은 사용자의 수가 아니라 선호하는
+     * 사용자의 수와 규칙 값의 종류에 비례한다. 규칙 값을 가리지 않는
+     * 사용자들은 이때 규칙 값마다 더해진다.
+     *
+     * @return 등록된 사용자의 수에 대한 통계
+     */
+    public final QueueStats<R> getQueueStats() {
+        Map<Integer, Integer> matchSizeMap = new HashMap<>();
+        this.sizeBucketMap.forEach((matchSize, bucket) -> {
+            int size = bucket.size();
+            if (size > 0)
+                matchSizeMap.put(matchSize, size);
+        });
+
+        EnumMap<R, Map<Object, Integer>> ruleValueMap
+            = new EnumMap<>(this.ruleKeyType);
+        this.valueBucketMap.forEach((ruleKey, bucketMap) -> {
+            Map<Object, Integer> valueMap = new HashMap<>();
+            bucketMap.forEach((ruleValue, bucket) -> {
+                int size = bucket.size();
+                if (size > 0)
+                    valueMap.put(ruleValue, size);
+            });
+
+            QueueBucket wildcardBucket = this.wildcardBucketMap.get(ruleKey);
+            int wildcardSize
+                = (wildcardBucket == null) ? 0 : wildcardBucket.size();
+            if (wildcardSize > 0)
+                for (Object ruleValue : this.wildcardDomainMap.get(ruleKey))
+                    valueMap.merge(ruleValue, wildcardSize, Integer::sum);
+
+            ruleValueMap.put(ruleKey, Collections.unmodifiableMap(valueMap));
+        });
+
+        return new QueueStats<>(
+            this.queueSize.get(),
+            Collections.unmodifiableMap(matchSizeMap),
+            Collections.unmodifiableMap(ruleValueMap)
+        );
+    }
+
+
+    /**
+     * 주어진 선호 규칙으로 등록했을 때 매치될 때까지 기다려야 하는 시간을
+     * 예측한다. 사용자를 등록하기 전에 예상 대기 시간을 보여 주거나, 더 빨리
+     * 매치될 수 있는 선호 규칙을 추천할 때 사용한다.
+     *
+     * 선호하는 사용자의 수와 규칙 값별로 현재 등록된 사용자의 수와 최근에
+     * 매치된 속도로부터 Little's law에 따라 대기 시간을 계산한다. 사용자는 선호
+     * 규칙의 항목별로 가장 빨리 매치되는 값으로 매치될 것이라고 가정하고, 모든
+     * 항목이 만족되어야 하므로 항목들 중 가장 오래 걸리는 시간을 예상 대기
+     * 시간으로 한다.
+     *
+     * lock을 잡지 않으며, 비용은 선호 규칙에 포함된 값의 수에 비례한다.
+     *
+     * @param matchSizeSet 선호하는 사용자의 수
+     * @param ruleSetMap 선호하는 규칙, {@code null}이면 선호하는 사용자의
+     *        수만으로 예측한다
+     * @return 예상 대기 시간, 통계가 부족하여 예측할 수 없으면 {@code null}
+     */
+    public final Duration estimateWait(
+        Set<Integer> matchSizeSet,
+        // <ruleKey: R, ruleValueSet: Set<?>>
+        EnumMap<R, Set<?>> ruleSetMap
+    ) {
+        if (matchSizeSet == null || matchSizeSet.isEmpty())
+            throw new IllegalArgumentException(
+                "matchSizeSet cannot be null or empty"
+            );
+
+        long now = this.clock.getAsLong();
+
+        // 선호하는 사용자의 수 중에서 가장 빨리 매치되는 수를 고른다.
+        double wait = Double.NaN;
+        for (Integer matchSize : matchSizeSet) {
+            QueueBucket bucket = this.sizeBucketMap.get(matchSize);
+            if (bucket != null)
+                wait = min(wait, bucket.estimateWait(matchSize - 1, now));
+        }
+
+        if (Double.isNaN(wait))
+            return null;
+
+        if (ruleSetMap != null)
+            for (Map.Entry<R, Set<?>> entry : ruleSetMap.entrySet()) {
+                ConcurrentHashMap<Object, QueueBucket> bucketMap
+                    = this.valueBucketMap.get(entry.getKey());
+
+                // 규칙 값 중에서 가장 빨리 매치되는 값을 고른다.
+                double valueWait = Double.NaN;
+                for (Object ruleValue : entry.getValue()) {
+                    QueueBucket bucket = bucketMap.get(ruleValue);
+                    if (bucket != null)
+                        valueWait = min(valueWait, bucket.estimateWait(
+                            0,
+                            this.findWildcardBucket(entry.getKey(), ruleValue),
+                            now
+                        ));
+                }
+
+                if (Double.isNaN(valueWait))
+                    return null;
+
+                wait = Math.max(wait, valueWait);
+            }
+
+        return Duration.ofNanos((long)Math.min(
+            wait * 1_000_000_000.0,
+            Long.MAX_VALUE
+        ));
+    }
+
+
+    /**
+     * {@link Double#NaN}을 값이 없는 것으로 취급하여 두 값 중 작은 값을
+     * 리턴한다.
+     */
+    private static double min(double a, double b) {
+        if (Double.isNaN(a))
+            return b;
+
+        if (Double.isNaN(b))
+            return a;
+
+        return Math.min(a, b);
+    }
+
+
+    /**
+     * 직전 매치 주기의 실행 시간을 리턴한다.
+     * 매치 주기가 여러 조각으로 나누어 실행되었다면 조각 사이에 lock을 놓고
+     * 기다린 시간도 포함된다.
+     *
+     * @return 직전 매치 주기의 실행 시간
+     */
+    public final Duration getLastCycleTime() {
+        return Duration.ofNanos(this.lastCycleNanos);
+    }
+
+
+    /**
+     * 직전 매치 주기를 나누어 실행한 조각의 수를 리턴한다.
+     *
+     * @return 직전 매치 주기의 조각의 수
+     */
+    public final int getLastCycleSlices() {
+        return this.lastCycleSlices;
+    }
+
+
+    /**
+     * 직전 매치 주기에서 매치 규칙을 탐색하면서 펼친 노드의 수를 리턴한다.
+     *
+     * @return 직전 매치 주기에서 탐색한 노드의 수
+     */
+    public final long getLastCycleNodes() {
+        return this.lastCycleNodes;
+    }
+
+
+    /**
+     * 매치 주기를 나누어 실행할 때 조각 하나의 최대 실행 시간을 리턴한다.
+     *
+     * @return 조각 하나의 최대 실행 시간, 제한이 없으면 {@code null}
+     *
+     * @see MatcherConfig#getMaxSliceTime()
+     */
+    public final Duration getMaxSliceTime() {
+        return (this.maxSliceNanos == Long.MAX_VALUE)
+            ? null
+            : Duration.ofNanos(this.maxSliceNanos);
+    }
+
+
+    /**
+     * 매치 주기를 나누어 실행할 때 조각 하나에서 탐색할 수 있는 노드의 최대
+     * 수를 리턴한다.
+     *
+     * @return 조각 하나에서 탐색할 수 있는 노드의 최대 수
+     *
+     * @see MatcherConfig#getMaxSliceNodes()
+     */
+    public final int getMaxSliceNodes() {
+        return this.maxSliceNodes;
+    }
+
+
+    /**
+     * 사용자가 이전에 등록했던 내용을 취소한다.
+     * 취소된 사용자는 다시 등록되기 전까지 매치 대상에 포함되지 않는다.
+     *
+     * 사용자가 매치되면 이전에 등록했던 내용은 자동으로 삭제된다.
+     *
+     * 등록을 취소하는 것도 {@link MatcherConfig#getMaxSubmitRate()}의 횟수에
+     * 포함된다. 다만 횟수를 초과하더라도 취소는 거부되지 않는다.
+     *
+     * 파티로 등록된 사용자이면 파티 전체의 등록이 함께 취소된다.
+     *
+     * @param user 취소할 사용자
+     * @return 취소에 성공하면 {@code true},
+     *         사용자가 등록되어 있지 않으면 {@code false}
+     */
+    public final boolean cancel(U user) {
+        logger.debug("cancel(): user={}", user);
+
+        if (user == null)
+            throw new IllegalArgumentException("user cannot be null");
+
+        if (this.rateLimiter != null)
+            this.rateLimiter.tryAcquire(user, this.clock.getAsLong());
+
+        List<U> party;
+
+        synchronized (this) {
+            int handle = this.store.find(this.leaderOf(user));
+            if (handle == QueueStore.NONE)
+                return false;
+
+            party = this.partyOf(user);
+            this.removeUser(handle);
+        }
+
+        for (U member : party)
+            this.playCancel(member);
+        return true;
+    }
+
+
+    /**
+     * 등록된 모든 사용자를 꺼낸다.
+     * 꺼낸 사용자들은 더 이상 매치 대상에 포함되지 않으며, 각 사용자가 등록했던
+     * 선호 규칙과 그때까지 기다린 시간이 함께 리턴된다. 등록된 사용자들을 다른
+     * {@code Matcher}로 옮길 때 사용하며, 꺼낸 사용자들은
+     * {@link #handoff(Submission)}로 다시 등록하면 된다.
+     *
+     * @return 꺼낸 사용자들과 그 선호 규칙의 목록
+     */
+    public final List<Submission<U, R>> drain() {
+        synchronized (this) {
+            List<Submission<U, R>> submissionList
+                = new ArrayList<>(this.store.size());
+            long now = this.clock.getAsLong();
+
+            for (int handle = this.store.first(); handle != QueueStore.NONE; ) {
+                int next = this.store.next(handle);
+
+                U user = this.store.user(handle);
+                List<U> party = this.partyMap.get(user);
+                long waitNanos = now - this.store.submitTime(handle);
+                MatchRuleOptions<R> options = this.removeUser(handle);
+
+                submissionList.add(new Submission<>(
+                    user,
+                    options.matchSizeSet,
+                    options.ruleSetMap,
+                    party,
+                    waitNanos
+                ));
+
+                handle = next;
+            }
+
+            logger.debug("drain(): size={}", submissionList.size());
+
+            return submissionList;
+        }
+    }
+
+
+    /**
+     * 매치 주기의 실행을 중단한다.
+     * 이미 실행 중인 매치 주기는 끝까지 실행되며, 그 이후로는 더 이상 매치가
+     * 이루어지지 않는다. 등록된 사용자들은 그대로 남아 있으므로 필요하다면
+     * {@link #drain()}으로 꺼낼 수 있다.
+     */
+    public final void shutdown() {
+        if (this.executor != null)
+            this.executor.shutdown();
+
+        logger.info("{} stopped", this.getClass());
+    }
+
+
+    /**
+     * 등록된 사용자들 중에서 서로 취향이 맞는 사용자들을 찾아내어 매치시킨다.
+     * 매치 주기 하나를 호출한 스레드에서 끝까지 실행하며, 조각 사이에서는
+     * lock을 놓는다. 다른 스레드에서 실행 중인 매치 주기가 있으면 그 매치
+     * 주기의 남은 조각들을 이어서 실행한다.
+     *
+     * {@link MatcherConfig#isScheduled()}가 {@code false}이면 매치 주기가
+     * 자동으로 실행되지 않으므로 이 메서드를 직접 호출해야 한다.
+     * {@link MatcherConfig#getClock()}과 함께 사용하면 테스트나 시뮬레이션,
+     * 성능 측정에서 실제 시간을 기다리지 않고 매치 주기를 원하는 만큼 실행할
+     * 수 있다.
+     *
+     * 매치 규칙을 탐색하는 동안에는 미리 할당해 둔 배열들만 사용하므로, 매치가
+     * 이루어지지 않는 주기에서는 새로운 객체가 거의 만들어지지 않는다. 객체는
+     * 매치 규칙을 찾았을 때 {@link #findMatches(MatchRule, Set)}와
+     * {@link #playMatch(MatchRule, Set)}에 넘겨 줄 인자를 만들 때에만 생성된다.
+     *
+     * 매치 규칙은 사용자 대신 선호 규칙 단위로 탐색하므로, 탐색에 드는 비용은
+     * 등록된 사용자의 수가 아니라 서로 다른 선호 규칙의 수에 비례한다.
+     * 사용자들은 매치 규칙을 찾은 이후에 그 매치 규칙을 만족하는 선호 규칙을
+     * 등록한 사용자들만 꺼내어 살펴본다.
+     *
+     * @see #runSlice()
+     */
+    public final void runOnce() {
+        while (!this.runSlice())
+            Thread.yield();
+    }
+
+
+    /**
+     * 매 주기마다 {@link java.util.concurrent.ScheduledExecutorService}에 의해
+     * 실행된다. 이전 매치 주기의 남은 조각이 아직 실행되지 않았다면 새로운 매치
+     * 주기를 시작하지 않는다.
+     */
+    private void runScheduled() {
+        if (!this.cycleRunning)
+            this.runSlices();
+    }
+
+
+    /**
+     * 매치 주기의 조각 하나를 실행하고, 매치 주기가 끝나지 않았다면 다음 조각을
+     * {@link #executor}에 곧바로 넣는다. 다음 조각은 그 사이에 lock을 기다리던
+     * 등록과 취소가 처리된 이후에 실행된다. {@link #shutdown()}이 호출되어
+     * 다음 조각을 넣을 수 없으면 남은 조각들을 이어서 실행한다.
+     */
+    private void runSlices() {
+        if (this.runSlice())
+            return;
+
+        try {
+            this.executor.execute(this::runSlices);
+        } catch (RejectedExecutionException e) {
+            this.runOnce();
+        }
+    }
+
+
+    /**
+     * 매치 주기의 조각 하나를 실행한다.
+     * 실행 중인 매치 주기가 없으면 새로운 매치 주기를 시작한다.
+     *
+     * 매치 규칙을 탐색하다가 {@link MatcherConfig#getMaxSliceTime()}이
+     * 지나거나 {@link MatcherConfig#getMaxSliceNodes()}만큼 노드를 탐색하면
+     * 멈춘 위치를 기억해 두고 {@code false}를 리턴한다. 다음 조각은 멈춘
+     * 위치부터 이어서 탐색한다. 조각 사이에 사용자가 삭제되더라도 매치 규칙이
+     * 완성되었을 때 선호 규칙을 등록한 사용자의 수를 다시 확인하므로, 이미
+     * 삭제된 사용자가 매치되지는 않는다.
+     *
+     * @return 매치 주기가 끝났으면 {@code true},
+     *         이어서 실행할 조각이 남아 있으면 {@code false}
+     */
+    synchronized boolean runSlice() {
+        long now = this.clock.getAsLong();
+        boolean finished = true;
+
+        try {
+            if (!this.cycleRunning) {
+                this.cycleRunning = true;
+                this.cycleStartTime = now;
+                this.cycleSlices = 0;
+                this.cycleNodes = 0L;
+
+                // 대기 시간이 초과된 사용자들을 먼저 삭제한다.
+                boolean paused = !this.expireUsers(now);
+
+                // 오랫동안 등록하거나 취소하지 않은 사용자들의 토큰 정보를
+                // 정리한다.
+                this.purgeRateLimiter(now);
+
+                // 매치 결과를 더 처리할 수 없거나 등록된 사용자가 하나도
+                // 없으면 더 이상 진행하지 않는다.
+                if (paused || this.store.size() == 0) {
+                    ++this.cycleSlices;
+                    return true;
+                }
+
+                // 탐색 중에 표시해 둔 선호 규칙의 번호가 다시 사용되지 않도록
+                // 한다. 조각 사이에서도 번호가 유지되어야 하므로 매치 주기가
+                // 끝날 때까지 미룬다.
+                this.profileTable.deferRelease();
+                this.searchLevel = -1;
+            }
+
+            ++this.cycleSlices;
+            this.sliceStartTime = now;
+            this.sliceNodes = 0;
+
+            finished = this.matchUsers();
+            return finished;
+        } catch (Throwable e) {
+            String name = this.getClass().toString();
+            logger.error("An exception occurred while running " + name, e);
+
+            throw e;
+        } finally {
+            if (finished) {
+                this.profileTable.resumeRelease();
+                this.cycleRunning = false;
+                this.lastCycleNanos
+                    = this.clock.getAsLong() - this.cycleStartTime;
+                this.lastCycleSlices = this.cycleSlices;
+                this.lastCycleNodes = this.cycleNodes;
+            }
+        }
+    }
+
+
+    /**
+     * 서로 취향이 맞는 사용자들을 더 이상 찾을 수 없거나, 매치 결과를 더
+     * 처리할 수 없을 때까지 매치시킨다.
+     *
+     * @return 매치 주기가 끝났으면 {@code true},
+     *         조각 하나의 예산을 다 써서 멈췄으면 {@code false}
+     */
+    private boolean matchUsers() {
+        for (;;) {
+            // 서로 취향이 맞는 사용자들을 찾는다.
+            SearchResult result = this.findMatchRule();
+
+            if (result == SearchResult.SUSPENDED) {
+                logger.debug("run(): suspended, slices={}, nodes={}",
+                    this.cycleSlices,
+                    this.cycleNodes
+                );
+                return false;
+            }
+
+            if (result == SearchResult.EXHAUSTED)
+                return true;
+
+            MatchRule<R> matchRule = this.newMatchRule();
+            logger.debug("run(): {}", matchRule);
+
+            Set<U> finalUserSet = this.markFinalUsers();
+            logger.debug("run(): finalUserSet={}", finalUserSet);
+
+            // 서로 취향이 맞는 사용자들 중에서 매치를 찾는다. 다시 구현된
+            // 메서드가 매치 규칙을 변경할 수 있으므로 복사해서 넘겨 준다.
+            List<Set<U>> matchList = this.findMatches(
+                new MatchRule<>(matchRule),
+                finalUserSet
+            );
+
+            // 서로 매치된 사용자들의 그룹별로 매치 결과를 처리한다.
+            for (Set<U> match : matchList) {
+                // 처리되지 못한 매치의 사용자들은 다음 주기까지 남겨 둔다.
+                if (!this.hasDemand()) {
+                    logger.debug("run(): paused");
+                    return true;
+                }
+
+                logger.debug("run(): match={}", match);
+
+                for (U user : match) {
+                    int handle = this.store.find(this.leaderOf(user));
+
+                    if (handle == QueueStore.NONE
+                        || !this.isMarked(this.store.profileId(handle)))
+                        throw new IllegalStateException(
+                            "match must be a subset of userSet"
+                        );
+
+                    if (!match.containsAll(this.partyOf(user)))
+                        throw new IllegalStateException(
+                            "match cannot split a party"
+                        );
+                }
+                if (match.size() != this.matchSize)
+                    throw new IllegalStateException(
+                        "match must have exactly the same size as matchSize"
+                    );
+
+                // 매치된 사용자들이 이전에 등록했던 선호 규칙을 삭제하여 매치
+                // 대상에서 제외시킨다. 파티는 파티장을 삭제하면 파티원들도
+                // 함께 삭제된다.
+                for (U user : match) {
+                    int handle = this.store.find(user);
+                    if (handle != QueueStore.NONE)
+                        this.removeUser(handle);
+                }
+
+                long now = this.clock.getAsLong();
+                this.countMatches(matchRule, match.size(), now);
+
+                this.playMatch(new MatchRule<>(matchRule), match);
+            }
+        }
+    }
+
+
+    /**
+     * 등록된 사용자가 있는 모든 선호 규칙의 번호를 {@link #levelBuffers}의 첫
+     * 번째 배열에 모은다.
+     *
+     * @return 등록된 사용자가 있는 선호 규칙의 수
+     */
+    private int collectProfiles() {
+        int capacity = this.profileTable.capacity();
+
+        int[] profileIds = ensureCapacity(this.levelBuffers[0], capacity);
+        this.levelBuffers[0] = profileIds;
+
+        int profileCount = 0;
+        for (int profileId = 0; profileId < capacity; ++profileId)
+            if (this.profileTable.count(profileId) > 0)
+                profileIds[profileCount++] = profileId;
+
+        return profileCount;
+    }
+
+
+    /**
+     * 선호 규칙을 등록한 사용자의 수를 리턴한다.
+     * 파티는 파티원의 수만큼 센다.
+     *
+     * @param profileId 선호 규칙의 번호
+     * @return 선호 규칙을 등록한 사용자의 수
+     */
+    private int userCount(int profileId) {
+        int partySize = this.profileTable.get(profileId).partySize;
+
+        return this.profileTable.count(profileId) * partySize;
+    }
+
+
+    /**
+     * 주어진 선호 규칙들을 등록한 파티들 중 일부를 골라서 정확히
+     * {@link #matchSize}명을 채울 수 있는지 확인한다.
+     * 혼자 등록한 사용자가 충분히 많으면 곧바로 {@code true}를 리턴하고,
+     * 그렇지 않으면 파티원의 수에 대한 부분합 문제를 푼다.
+     *
+     * 선호 규칙들은 두 범위로 나누어 주어지며, 두 번째 범위에는 규칙 값을
+     * 가리지 않는 선호 규칙들이 담겨 있다.
+     *
+     * @param profileIds 선호 규칙의 번호들
+     * @param from 확인할 범위의 시작 위치
+     * @param to 확인할 범위의 끝 위치
+     * @param wildFrom 규칙 값을 가리지 않는 선호 규칙들의 시작 위치
+     * @param wildTo 규칙 값을 가리지 않는 선호 규칙들의 끝 위치
+     * @return 정확히 채울 수 있으면 {@code true}, 아니면 {@code false}
+     */
+    private boolean canPack(
+        int[] profileIds,
+        int from,
+        int to,
+        int wildFrom,
+        int wildTo
+    ) {
+        int singleCount = 0;
+        for (int part = 0; part < 2; ++part)
+            for (int i = (part == 0) ? from : wildFrom,
+                end = (part == 0) ? to : wildTo; i < end; ++i)
+                if (this.profileTable.get(profileIds[i]).partySize == 1)
+                    singleCount += this.profileTable.count(profileIds[i]);
+
+        if (singleCount >= this.matchSize)
+            return true;
+
+        // sums[n]은 지금까지 살펴본 파티들로 n명을 채울 수 있는지를 나타낸다.
+        // 혼자 등록한 사용자들로는 singleCount명까지 채울 수 있다.
+        boolean[] sums = this.packSums;
+        if (sums.length < this.matchSize + 1) {
+            sums = new boolean[this.matchSize + 1];
+            this.packSums = sums;
+        }
+        Arrays.fill(sums, 0, this.matchSize + 1, false);
+        for (int n = 0; n <= singleCount; ++n)
+            sums[n] = true;
+
+        for (int part = 0; part < 2; ++part)
+            for (int i = (part == 0) ? from : wildFrom,
+                end = (part == 0) ? to : wildTo; i < end; ++i) {
+                int partySize = this.profileTable.get(profileIds[i]).partySize;
+                if (partySize == 1)
+                    continue;
+
+                int partyCount = Math.min(
+                    this.profileTable.count(profileIds[i]),
+                    this.matchSize / partySize
+                );
+
+                for (int k = 0; k < partyCount; ++k)
+                    for (int n = this.matchSize; n >= partySize; --n)
+                        if (sums[n - partySize])
+                            sums[n] = true;
+
+                if (sums[this.matchSize])
+                    return true;
+            }
+
+        return false;
+    }
+
+
+    /**
+     * {@link #findMatchRule()}로 찾은 선호 규칙들을 표시하고, 그
+     * 선호 규칙들을 등록한 사용자들을 {@link #findMatches(MatchRule, Set)}에
+     * 넘겨 줄 {@link Set}으로 만든다. 표시된 선호 규칙을 등록한 사용자들만
+     * 매치될 수 있다.
+     *
+     * @return 서로 취향이 맞는 사용자들
+     */
+    private Set<U> markFinalUsers() {
+        if (++this.markStamp == 0) {
+            Arrays.fill(this.marks, 0);
+            this.markStamp = 1;
+        }
+
+        int[] profileIds = this.levelBuffers[this.levelCount];
+        Set<U> finalUserSet = new HashSet<>();
+
+        for (int part = 0; part < 2; ++part)
+            for (int i = (part == 0) ? this.finalFrom : this.finalWildFrom,
+                end = (part == 0) ? this.finalTo : this.finalWildTo;
+                i < end; ++i) {
+                int profileId = profileIds[i];
+
+                this.marks = ensureCapacity(this.marks, profileId + 1);
+                this.marks[profileId] = this.markStamp;
+
+                boolean isParty
+                    = (this.profileTable.get(profileId).partySize > 1);
+
+                for (int handle = this.store.firstOfProfile(profileId);
+                    handle != QueueStore.NONE;
+                    handle = this.store.nextOfProfile(handle)) {
+                    U user = this.store.user(handle);
+
+                    if (isParty)
+                        finalUserSet.addAll(this.partyMap.get(user));
+                    else
+                        finalUserSet.add(user);
+                }
+            }
+
+        return finalUserSet;
+    }
+
+
+    private boolean isMarked(int profileId) {
+        return (profileId < this.marks.length
+            && this.marks[profileId] == this.markStamp);
+    }
+
+
+    /**
+     * {@link #ruleCodes}에 저장된 매치 규칙으로 {@link MatchRule}을 만든다.
+     * 규칙 값을 가리지 않는 사용자들끼리만 찾은 규칙 키에는 그 사용자들이
+     * 선호하는 규칙 값 중에서 하나를 무작위로 고른다.
+     *
+     * @return 매치 규칙
+     */
+    private MatchRule<R> newMatchRule() {
+        MatchRule<R> matchRule
+            = new MatchRule<>(new EnumMap<>(this.ruleKeyType));
+
+        matchRule.matchSize = this.matchSize;
+        for (int level = 1; level < this.levelCount; ++level) {
+            R ruleKey = this.ruleKeyList.get(level - 1);
+
+            matchRule.ruleMap.put(ruleKey, (this.ruleCodes[level] == ANY_CODE)
+                ? this.anyValueOf(ruleKey)
+                : this.dictionaries[level].valueOf(this.ruleCodes[level])
+            );
+        }
+
+        return matchRule;
+    }
+
+
+    /**
+     * 규칙 값을 가리지 않는 사용자들끼리 매치될 때 사용할 규칙 값을 고른다.
+     * 이 사용자들은 모두 같은 규칙 값들을 선호하므로, 찾은 선호 규칙들 중
+     * 아무 것에서나 하나를 무작위로 고르면 된다.
+     *
+     * @param ruleKey 규칙 키
+     * @return 규칙 값
+     */
+    private Object anyValueOf(R ruleKey) {
+        int i = (this.finalFrom < this.finalTo)
+            ? this.finalFrom
+            : this.finalWildFrom;
+        int profileId = this.levelBuffers[this.levelCount][i];
+
+        Set<?> ruleValueSet
+            = this.profileTable.get(profileId).ruleSetMap.get(ruleKey);
+        int n = ThreadLocalRandom.current().nextInt(ruleValueSet.size());
+
+        Iterator<?> iterator = ruleValueSet.iterator();
+        while (n-- > 0)
+            iterator.next();
+
+        return iterator.next();
+    }
+
+
+    /**
+     * 대기 시간이 초과된 사용자들을 삭제한다.
+     * 사용자들은 등록된 순서대로 저장되어 있으므로, 가장 오래 기다린 사용자부터
+     * 차례대로 살펴보다가 대기 시간이 초과되지 않은 사용자를 만나면 멈춘다.
+     * 그 전에 {@link #hasDemand()}가 {@code false}를 리턴하면 남은 사용자들은
+     * 삭제하지 않는다.
+     *
+     * @param now 현재 시각
+     * @return 대기 시간이 초과된 사용자들을 모두 삭제했으면 {@code true},
+     *         {@link #hasDemand()} 때문에 멈췄으면 {@code false}
+     */
+    private boolean expireUsers(long now) {
+        if (this.maxWaitNanos == Long.MAX_VALUE)
+            return true;
 
+        for (int handle = this.store.first(); handle != QueueStore.NONE; ) {
+            if (now - this.store.submitTime(handle) < this.maxWaitNanos)
+                break;
+
+            if (!this.hasDemand()) {
+                logger.debug("run(): paused");
+                return false;
+            }
+
+            int next = this.store.next(handle);
+
+            List<U> party = this.partyOf(this.store.user(handle));
+            this.removeUser(handle);
+            handle = next;
+
+            logger.debug("run(): expired={}", party);
+
+            for (U user : party)
+                this.playExpiry(user);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * 토큰이 가득 찬 사용자들의 rate limiter 정보를 삭제한다.
+     * 모든 사용자를 살펴봐야 하므로 매 주기마다 하지 않고 1초에 한 번씩만
+     * 한다.
+     *
+     * @param now 현재 시각
+     */
+    private void purgeRateLimiter(long now) {
+        if (this.rateLimiter == null)
+            return;
+
+        if (now - this.lastPurgeTime < TimeUnit.SECONDS.toNanos(1L))
+            return;
+
+        this.rateLimiter.purge(now);
+        this.lastPurgeTime = now;
+    }
+
+
+    /**
+     * 서로 취향이 맞는 사용자들을 찾는다.
+     * 무작위로 매치 규칙을 정하고 그 매치 규칙을 선호하는 사용자들을 찾는다.
+     *
+     * 모든 경우에 대한 매치 규칙을 무작위 순서로 탐색하되, 그 매치 규칙을
+     * 선호하는 사용자들로부터 적어도 하나 이상의 매치를 찾을 수 있는 경우에
+     * 대해서만 탐색을 수행한다. 적절한 매치 규칙을 찾으면 탐색을 멈추고
+     * {@link SearchResult#FOUND}를 리턴한다. 이때 찾은 매치 규칙은
+     * {@link #ruleCodes}에, 그 매치 규칙을 만족하는 선호 규칙들은
+     * {@link #levelBuffers}의 마지막 배열의 {@link #finalFrom}부터
+     * {@link #finalTo} 이전까지와 {@link #finalWildFrom}부터
+     * {@link #finalWildTo} 이전까지에 저장된다. 모든 경우를 탐색했음에도 불구하고
+     * 적절한 매치 규칙을 찾지 못했다면 {@link SearchResult#EXHAUSTED}를
+     * 리턴한다.
+     *
+     * 모든 경우에 대한 매치 규칙을 탐색하기 위해서 규칙 키를 하나씩 조합하여
+     * 매치 규칙을 생성하는 방법을 사용한다. 어떤 규칙 키를 조합할 차례인지는
+     * {@link #searchLevel}로 주어진다. 0은 {@link MatchRule#matchSize}를
+     * 의미하며, 1부터는 {@link #ruleKeyList}에 나열된 순서대로 규칙 키를
+     * 의미한다. 규칙 키가 모두 조합되어 하나의 매치 규칙이 완성되면 그 매치
+     * 규칙이 적절한지 확인하고 탐색 종료 여부를 판단한다.
+     *
+     * 탐색은 재귀 호출 대신 규칙 키 번호별로 다음에 조합할 규칙 값의 위치를
+     * {@link #levelCursors}에 저장해 두는 방식으로 진행한다. 따라서 조각 하나의
+     * 예산을 다 쓰면 언제든지 {@link SearchResult#SUSPENDED}를 리턴하고 멈출
+     * 수 있으며, 다시 호출하면 멈춘 위치부터 이어서 탐색한다.
+     *
+     * 매치 규칙을 찾은 이후에 다시 호출하는 경우에도 처음부터 다시 탐색하지
+     * 않고 다음 매치 규칙부터 이어서 탐색한다. 따라서 한 주기 동안 각각의
+     * 매치 규칙은 많아야 한 번씩만 완성되며, 주기 하나의 비용은 매치가 몇 번
+     * 이루어지는지와 관계없이 한 번의 탐색에 드는 비용과 같다. 노드를 펼칠 때
+     * 센 사용자의 수에는 그 이후에 매치되어 삭제된 사용자들이 포함되어 있을
+     * 수 있지만, 이 값은 탐색 범위를 줄이는 데에만 사용되고 매치 규칙이
+     * 완성되었을 때에는 남아 있는 사용자의 수를 다시 확인하므로 이미 매치된
+     * 사용자가 다시 매치되지는 않는다.
+     *
+     * @return 탐색 결과
+     */
+    private SearchResult findMatchRule() {
+        for (;;) {
+            // 조각 하나의 예산을 다 썼으면 멈춘다. 조각마다 적어도 하나의
+            // 노드는 탐색하도록 한다.
+            if (this.sliceNodes > 0 && this.isSliceOver())
+                return SearchResult.SUSPENDED;
+
+            if (this.searchLevel < 0) {
+                // 탐색의 대상이 되는 선호 규칙들을 모은다.
+                int profileCount = this.collectProfiles();
+
+                if (!this.expand(0, 0, profileCount, 0, 0))
+                    return SearchResult.EXHAUSTED;
+
+                this.searchLevel = 0;
+                continue;
+            }
+
+            int level = this.searchLevel;
+            int i = this.levelCursors[level];
+
+            // 규칙 값을 모두 조합했으면 이전 규칙 키로 돌아간다.
+            if (i == this.levelCodeCounts[level]) {
+                if (--this.searchLevel < 0)
+                    return SearchResult.EXHAUSTED;
+
+                continue;
+            }
+            this.levelCursors[level] = i + 1;
+
+            // 규칙 키와 규칙 값을 매치 규칙에 추가한다.
+            int code = this.levelCodes[level][i];
+            this.ruleCodes[level] = code;
+
+            if (level == 0)
+                this.matchSize = (Integer)this.dictionaries[0].valueOf(code);
+
+            // 규칙 값을 가리지 않는 선호 규칙들은 모든 규칙 값에 공통으로
+            // 포함된다. 규칙 값을 가리지 않는 사용자들끼리만 매치될 때에는
+            // 그 선호 규칙들만 사용한다.
+            int from = (code == ANY_CODE) ? 0 : this.levelOffsets[level][code];
+            int to = (code == ANY_CODE) ? 0 : this.levelCounts[level][code];
+            int wildFrom = this.levelWildFroms[level];
+            int wildTo = this.levelWildTos[level];
+
+            if (level + 1 < this.levelCount) {
+                // 아직 매치 규칙이 완성되지 않았다면 다음 규칙 키를 조합한다.
+                if (this.expand(level + 1, from, to, wildFrom, wildTo))
+                    this.searchLevel = level + 1;
+            } else {
+                // 매치 규칙이 완성되었다면 지금 남아 있는 사용자들로 매치의
+                // 자리를 정확히 채울 수 있는지 확인한다. 이미 매치된
+                // 사용자들은 삭제되었으므로 세지 않는다.
+                if (this.canPack(
+                    this.levelBuffers[level + 1],
+                    from,
+                    to,
+                    wildFrom,
+                    wildTo
+                )) {
+                    this.finalFrom = from;
+                    this.finalTo = to;
+                    this.finalWildFrom = wildFrom;
+                    this.finalWildTo = wildTo;
+                    return SearchResult.FOUND;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 조각 하나의 예산을 다 썼는지 확인한다.
+     *
+     * @return 예산을 다 썼으면 {@code true}, 아니면 {@code false}
+     */
+    private boolean isSliceOver() {
+        if (this.sliceNodes >= this.maxSliceNodes)
+            return true;
+
+        if (this.maxSliceNanos == Long.MAX_VALUE)
+            return false;
+
+        long elapsed = this.clock.getAsLong() - this.sliceStartTime;
+
+        return (elapsed >= this.maxSliceNanos);
+    }
+
+
+    /**
+     * 탐색의 노드 하나를 펼친다.
+     * 탐색의 대상이 되는 선호 규칙들은 {@link #levelBuffers}의 {@code level}번째
+     * 배열의 {@code from}부터 {@code to} 이전까지와, {@code wildFrom}부터
+     * {@code wildTo} 이전까지에 저장되어 있다. 이 선호 규칙들을 규칙 값의
+     * 번호별로 counting sort하여 {@code level + 1}번째 배열에 나누어 담고,
+     * 조합할 규칙 값들을 무작위 순서로 {@link #levelCodes}에 담는다. 규칙
+     * 값별 사용자의 수는 각 선호 규칙을 등록한 사용자의 수를 더하여 구한다.
+     *
+     * 규칙 값을 가리지 않는 선호 규칙은 모든 규칙 값에 나누어 담지 않고, 배열의
+     * 끝에 한 번만 담아 둔다. 이 선호 규칙들은 모든 규칙 값의 사용자 수에
+     * 더해지며, 다음 규칙 키를 조합할 때 규칙 값별 선호 규칙들과 함께 탐색의
+     * 대상이 된다. 그 사용자들만으로도 매치를 찾을 수 있으면 {@link #ANY_CODE}를
+     * 마지막으로 조합할 규칙 값으로 추가한다.
+     *
+     * @param level 매치 규칙에 추가할 규칙 키 번호
+     * @param from 탐색의 대상이 되는 선호 규칙들의 시작 위치
+     * @param to 탐색의 대상이 되는 선호 규칙들의 끝 위치 (포함하지 않음)
+     * @param wildFrom 규칙 값을 가리지 않는 선호 규칙들의 시작 위치
+     * @param wildTo 규칙 값을 가리지 않는 선호 규칙들의 끝 위치
+     *        (포함하지 않음)
+     * @return 조합할 규칙 값이 하나라도 있으면 {@code true},
+     *         없으면 {@code false}
+     */
+    private boolean expand(
+        int level,
+        int from,
+        int to,
+        int wildFrom,
+        int wildTo
+    ) {
+        assert (level >= 0 && level < this.levelCount);
+
+        ++this.sliceNodes;
+        ++this.cycleNodes;
+
+        int[] profileIds = this.levelBuffers[level];
+        ValueDictionary dictionary = this.dictionaries[level];
+        int codeCount = dictionary.size();
+
+        // 탐색의 대상이 되는 사용자들을 규칙 값별로 센다. 규칙 값을 가리지
+        // 않는 사용자들은 따로 센다.
+        int[] counts = ensureCapacity(this.levelCounts[level], codeCount);
+        this.levelCounts[level] = counts;
+        Arrays.fill(counts, 0, codeCount, 0);
+
+        int[] userCounts = ensureCapacity(this.levelUserCounts[level], codeCount);
+        this.levelUserCounts[level] = userCounts;
+        Arrays.fill(userCounts, 0, codeCount, 0);
+
+        int wildCount = 0;
+        int wildUserCount = 0;
+
+        for (int part = 0; part < 2; ++part)
+            for (int i = (part == 0) ? from : wildFrom,
+                end = (part == 0) ? to : wildTo; i < end; ++i) {
+                int userCount = this.userCount(profileIds[i]);
+                int[] valueCodes = this.valueCodes(profileIds[i])[level];
+
+                if (valueCodes == null) {
+                    ++wildCount;
+                    wildUserCount += userCount;
+                    continue;
+                }
+
+                for (int code : valueCodes) {
+                    ++counts[code];
+                    userCounts[code] += userCount;
+                }
+            }
+
+        // 현재의 매치 규칙을 선호하는 사용자들로부터 적어도 하나 이상의
+        // 매치를 찾을 수 있는 규칙 값들만 골라서 자리를 배정한다. 자리를
+        // 배정받은 규칙 값은 {@code counts}에 다음으로 채울 위치를 저장하고,
+        // 그렇지 않은 규칙 값은 -1을 저장한다.
+        int[] codes = ensureCapacity(this.levelCodes[level], codeCount + 1);
+        this.levelCodes[level] = codes;
+        int[] offsets = ensureCapacity(this.levelOffsets[level], codeCount);
+        this.levelOffsets[level] = offsets;
+
+        int codeListSize = 0;
+        int total = 0;
+        for (int code = 0; code < codeCount; ++code) {
+            int minSize = (level == 0)
+                ? (Integer)dictionary.valueOf(code)
+                : this.matchSize;
+
+            if (counts[code] == 0
+                || userCounts[code] + wildUserCount < minSize) {
+                counts[code] = -1;
+                continue;
+            }
+
+            codes[codeListSize++] = code;
+            offsets[code] = total;
+            total += counts[code];
+            counts[code] = offsets[code];
+        }
+
+        boolean anyViable = (wildCount > 0 && wildUserCount >= this.matchSize);
+
+        this.levelCodeCounts[level] = codeListSize + (anyViable ? 1 : 0);
+        this.levelCursors[level] = 0;
+
+        if (this.levelCodeCounts[level] == 0)
+            return false;
+
+        // 탐색의 대상이 되는 선호 규칙들을 규칙 값별로 분류한다. 규칙 값을
+        // 가리지 않는 선호 규칙들은 맨 뒤에 모아 둔다.
+        int[] newProfileIds
+            = ensureCapacity(this.levelBuffers[level + 1], total + wildCount);
+        this.levelBuffers[level + 1] = newProfileIds;
+        this.levelWildFroms[level] = total;
+        this.levelWildTos[level] = total + wildCount;
+
+        int wildIndex = total;
+        for (int part = 0; part < 2; ++part)
+            for (int i = (part == 0) ? from : wildFrom,
+                end = (part == 0) ? to : wildTo; i < end; ++i) {
+                int[] valueCodes = this.valueCodes(profileIds[i])[level];
+
+                if (valueCodes == null) {
+                    newProfileIds[wildIndex++] = profileIds[i];
+                    continue;
+                }
+
+                for (int code : valueCodes)
+                    if (counts[code] >= 0)
+                        newProfileIds[counts[code]++] = profileIds[i];
+            }
+
+        // 매치 규칙에 추가할 규칙 값의 순서를 무작위로 섞는다. 규칙 값을
+        // 가리지 않는 사용자들끼리만 매치시키는 것은 다른 사용자들과 먼저
+        // 매치시켜 본 뒤에 마지막으로 시도한다.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = codeListSize - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+
+            int code = codes[i];
+            codes[i] = codes[j];
+            codes[j] = code;
+        }
+
+        if (anyViable)
+            codes[codeListSize] = ANY_CODE;
+
+        return true;
+    }
+
+
+    /**
+     * 선호 규칙의 규칙 값 번호들을 리턴한다.
+     *
+     * @param profileId 선호 규칙의 번호
+     * @return 규칙 키 번호별 규칙 값 번호들
+     */
+    private int[][] valueCodes(int profileId) {
+        return this.profileTable.get(profileId).valueCodes;
+    }
+
+
+    /**
+     * 선호 규칙의 규칙 값들을 번호로 바꾼다.
+     *
+     * @param options 선호 규칙
+     * @return 규칙 키 번호별 규칙 값 번호들
+     */
+    private int[][] encodeValues(MatchRuleOptions<R> options) {
+        int[][] valueCodes = new int[this.levelCount][];
+
+        for (int level = 0; level < this.levelCount; ++level) {
+            Set<?> ruleValueSet = (level == 0)
+                ? options.matchSizeSet
+                : options.ruleSetMap.get(this.ruleKeyList.get(level - 1));
+
+            // 규칙 값을 가리지 않는 선호 규칙은 규칙 값들을 번호로 바꾸지
+            // 않고 null로 나타낸다.
+            if (isWildcard(ruleValueSet)) {
+                valueCodes[level] = null;
+
+                if (level > 0)
+                    this.wildcardDomainMap.computeIfAbsent(
+                        this.ruleKeyList.get(level - 1),
+                        k -> ((Enum<?>)ruleValueSet.iterator().next())
+                            .getDeclaringClass()
+                            .getEnumConstants()
+                    );
+                continue;
+            }
+
+            valueCodes[level] = ruleValueSet.stream()
+                .mapToInt(this.dictionaries[level]::codeOf)
+                .toArray();
+        }
+
+        return valueCodes;
+    }
+
+
+    /**
+     * 규칙 값 집합이 규칙 값을 가리지 않는다는 뜻인지 확인한다.
+     * 규칙 값이 enum 타입이고 그 타입의 모든 값을 담고 있으면 그렇다고 본다.
+     * 선호 규칙이 {@link #profileTable}에 처음 저장될 때에만 호출된다.
+     *
+     * @param ruleValueSet 규칙 값 집합
+     * @return 규칙 값을 가리지 않으면 {@code true}, 아니면 {@code false}
+     */
+    private static boolean isWildcard(Set<?> ruleValueSet) {
+        Object ruleValue = ruleValueSet.iterator().next();
+        if (!(ruleValue instanceof Enum))
+            return false;
+
+        Object[] constants
+            = ((Enum<?>)ruleValue).getDeclaringClass().getEnumConstants();
+
+        return (ruleValueSet.size() == constants.length
+            && ruleValueSet.containsAll(Arrays.asList(constants)));
+    }
+
+
+    /**
+     * 배열의 크기가 {@code capacity} 이상이 되도록 한다.
+     * 배열이 충분히 크면 그대로 리턴하고, 그렇지 않으면 원래의 내용을 복사한 더
+     * 큰 배열을 리턴한다.
+     *
+     * @param array 배열
+     * @param capacity 필요한 크기
+     * @return 크기가 {@code capacity} 이상인 배열
+     */
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (array.length >= capacity)
+            return array;
+
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+}
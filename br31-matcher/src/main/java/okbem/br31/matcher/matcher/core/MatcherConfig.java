@@ -0,0 +1,135 @@
+
+package okbem.br31.matcher.matcher.core;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+
+/**
+ * {@link Matcher}의 동작 방식을 지정하는 설정.
+ * 지정하지 않은 항목은 기본값이 사용된다.
+ *
+ * <pre>{@code
+ * MatcherConfig config = MatcherConfig.builder()
+ *     .maxWait(Duration.ofMinutes(5L))
+ *     .maxQueueSize(100_000)
+ *     .maxSubmitRate(1.0)
+ *     .maxCycleTime(Duration.ofMillis(200L))
+ *     .maxSliceTime(Duration.ofMillis(5L))
+ *     .build();
+ * }</pre>
+ *
+ * 매치 주기를 직접 실행하려면 다음과 같이 지정한다.
+ *
+ * <pre>{@code
+ * AtomicLong now = new AtomicLong();
+ * MatcherConfig config = MatcherConfig.builder()
+ *     .scheduled(false)
+ *     .clock(now::get)
+ *     .build();
+ * }</pre>
+ */
+@lombok.Value
+@lombok.Builder
+public class MatcherConfig {
+
+    /**
+     * 사용자가 매치를 기다릴 수 있는 최대 시간.
+     * 등록된 이후로 이 시간이 지나도록 매치되지 않은 사용자는 자동으로
+     * 삭제된다. {@code null}이면 시간 제한이 없다.
+     */
+    private final Duration maxWait;
+
+
+    /**
+     * 동시에 등록될 수 있는 사용자의 최대 수.
+     */
+    @lombok.Builder.Default
+    private final int maxQueueSize = Integer.MAX_VALUE;
+
+
+    /**
+     * 선호하는 사용자의 수별로 동시에 등록될 수 있는 사용자의 최대 수.
+     * 사용자가 선호하는 사용자의 수 중 하나라도 등록하면 이 값을 넘게 되는
+     * 경우 등록이 거부된다. 여러 스레드가 동시에 등록하더라도 이 값을 넘지
+     * 않는다.
+     */
+    @lombok.Builder.Default
+    private final int maxBucketSize = Integer.MAX_VALUE;
+
+
+    /**
+     * 사용자 한 명이 1초 동안 등록하거나 취소할 수 있는 평균 횟수.
+     * 이 값이 0이면 횟수에 제한이 없다.
+     */
+    @lombok.Builder.Default
+    private final double maxSubmitRate = 0.0;
+
+
+    /**
+     * 사용자 한 명이 연달아 등록하거나 취소할 수 있는 최대 횟수.
+     * {@link #maxSubmitRate}가 0이면 사용되지 않는다.
+     */
+    @lombok.Builder.Default
+    private final int maxSubmitBurst = 10;
+
+
+    /**
+     * 새로운 사용자를 받아들일 수 있는 매치 주기의 최대 실행 시간.
+     * 직전 매치 주기의 실행 시간이 이 값을 초과하면 등록이 거부된다.
+     * {@code null}이면 실행 시간과 관계없이 등록을 받아들인다.
+     */
+    private final Duration maxCycleTime;
+
+
+    /**
+     * 매치 주기를 나누어 실행할 때 조각 하나의 최대 실행 시간.
+     * 매치 규칙을 탐색하다가 이 시간이 지나면 멈춘 위치를 기억해 두고 lock을
+     * 놓는다. 그 사이에 기다리던 등록과 취소가 처리되며, 다음 조각에서 멈춘
+     * 위치부터 이어서 탐색한다. {@code null}이면 시간으로 나누지 않는다.
+     * 기본값은 {@code null}이며, 나누어 실행하면 매치 주기 도중에 등록과
+     * 취소가 반영되므로 필요한 경우에만 지정한다.
+     */
+    private final Duration maxSliceTime;
+
+
+    /**
+     * 매치 주기를 나누어 실행할 때 조각 하나에서 탐색할 수 있는 노드의 최대 수.
+     * 노드는 매치 규칙에 규칙 키 하나를 조합하기 위해서 선호 규칙들을 규칙
+     * 값별로 분류하는 한 번의 단계를 말한다.
+     */
+    @lombok.Builder.Default
+    private final int maxSliceNodes = Integer.MAX_VALUE;
+
+
+    /**
+     * 예상 대기 시간을 계산할 때 사용하는 통계가 감쇠하는 시간.
+     * 사용자가 등록되고 매치되는 속도는 이 시간보다 오래된 사건일수록 적게
+     * 반영된다. 짧을수록 변화에 빠르게 반응하지만 예측 값이 더 많이 흔들린다.
+     *
+     * @see Matcher#estimateWait(java.util.Set, java.util.EnumMap)
+     */
+    @lombok.Builder.Default
+    private final Duration rateDecayTime = Duration.ofMinutes(1L);
+
+
+    /**
+     * 매치 주기를 자동으로 실행할지 여부.
+     * {@code false}이면 매치 주기를 실행하는 스레드를 만들지 않으며,
+     * {@link Matcher#runOnce()}를 호출할 때에만 호출한 스레드에서 매치 주기가
+     * 실행된다.
+     */
+    @lombok.Builder.Default
+    private final boolean scheduled = true;
+
+
+    /**
+     * 시각을 나노초 단위로 알려 주는 시계.
+     * {@link System#nanoTime()}처럼 시각의 차이를 계산하는 데에만 사용된다.
+     * 테스트나 시뮬레이션에서 실제 시간을 기다리지 않고 시간이 흐르게 하려면
+     * 직접 조작할 수 있는 시계를 지정하면 된다.
+     */
+    @lombok.Builder.Default
+    private final LongSupplier clock = System::nanoTime;
+
+}
@@ -0,0 +1,400 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * 사용자들을 heap 바깥의 메모리에 저장하는 {@link QueueStore}.
+ *
+ * 사용자별 정보는 {@link #slab}에 고정된 크기의 slot으로 저장되며, handle은
+ * slot의 번호가 된다. 하나의 slot은 다음과 같이 구성된다:
+ * <pre>
+ * +------+------+-------------+-------------+-----------+------+
+ * | prev | next | profilePrev | profileNext | profileId | hash |
+ * | int  | int  | int         | int         | int       | int  |
+ * +------+------+-------------+-------------+-----------+------+
+ * | submitTime | length | user (bytes) |
+ * | long       | int    | maxSize      |
+ * +------------+--------+--------------+
+ * </pre>
+ * 등록된 순서는 {@code prev}와 {@code next}로 이루어진 양방향 연결 리스트로
+ * 관리하며, 비어 있는 slot은 {@code next}를 통해 free list로 연결된다. 같은
+ * 선호 규칙을 등록한 사용자들의 순서는 {@code profilePrev}와
+ * {@code profileNext}로 이루어진 별도의 연결 리스트로 관리한다. 선호 규칙의
+ * 종류는 사용자의 수보다 훨씬 적으므로 선호 규칙별 처음과 마지막 사용자는
+ * heap의 배열에 저장한다.
+ *
+ * 사용자를 찾기 위한 index는 linear probing 방식의 open addressing hash
+ * table이며, {@link #table}에 {@code handle + 1} 값을 저장한다. 0은 비어 있는
+ * 자리를 의미한다. 삭제할 때에는 tombstone을 남기지 않고 뒤쪽 항목들을 앞으로
+ * 당겨서 채운다.
+ *
+ * @param <U> 사용자 타입
+ */
+final class OffHeapQueueStore<U> extends QueueStore<U> {
+
+    private static final int PREV = 0;
+
+    private static final int NEXT = 4;
+
+    private static final int PROFILE_PREV = 8;
+
+    private static final int PROFILE_NEXT = 12;
+
+    private static final int PROFILE_ID = 16;
+
+    private static final int HASH = 20;
+
+    private static final int SUBMIT_TIME = 24;
+
+    private static final int LENGTH = 32;
+
+    private static final int USER = 36;
+
+
+    private final UserCodec<U> codec;
+
+
+    private final int capacity;
+
+
+    private final int slotSize;
+
+
+    private final ByteBuffer slab;
+
+
+    private final ByteBuffer table;
+
+
+    private final int mask;
+
+
+    /**
+     * 사용자를 변환한 결과를 임시로 저장하는 버퍼.
+     */
+    private final ByteBuffer keyBuffer;
+
+
+    private int[] profileHeads;
+
+
+    private int[] profileTails;
+
+
+    private int head;
+
+
+    private int tail;
+
+
+    private int free;
+
+
+    private int used;
+
+
+    private int size;
+
+
+    OffHeapQueueStore(UserCodec<U> codec, int capacity) {
+        if (codec == null)
+            throw new IllegalArgumentException("codec cannot be null");
+
+        if (codec.maxSize() < 1)
+            throw new IllegalArgumentException(
+                "codec.maxSize() cannot be less than one"
+            );
+
+        if (capacity < 1)
+            throw new IllegalArgumentException(
+                "capacity cannot be less than one"
+            );
+
+        int slotSize = (USER + codec.maxSize() + 7) & ~7;
+        if ((long)slotSize * capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("capacity is too large");
+
+        // 적재율이 1/2을 넘지 않도록 capacity의 두 배 이상인 2의 거듭제곱을
+        // hash table의 크기로 사용한다.
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+
+        this.codec = codec;
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+        this.slab = ByteBuffer.allocateDirect(slotSize * capacity);
+        this.table = ByteBuffer.allocateDirect(tableSize * Integer.BYTES);
+        this.mask = tableSize - 1;
+        this.keyBuffer = ByteBuffer.allocate(codec.maxSize());
+        this.profileHeads = new int[0];
+        this.profileTails = new int[0];
+        this.head = NONE;
+        this.tail = NONE;
+        this.free = NONE;
+        this.used = 0;
+        this.size = 0;
+    }
+
+
+    @Override
+    int find(U user) {
+        int hash = this.encode(user);
+
+        for (int i = hash & this.mask; ; i = (i + 1) & this.mask) {
+            int entry = this.table.getInt(i * Integer.BYTES);
+            if (entry == 0)
+                return NONE;
+
+            if (this.matches(entry - 1, hash))
+                return (entry - 1);
+        }
+    }
+
+
+    @Override
+    int add(U user, int profileId, long submitTime) {
+        int hash = this.encode(user);
+
+        int handle = this.free;
+        if (handle != NONE)
+            this.free = this.slab.getInt(this.offset(handle) + NEXT);
+        else
+            handle = this.used++;
+
+        int offset = this.offset(handle);
+        this.slab.putInt(offset + PREV, this.tail);
+        this.slab.putInt(offset + NEXT, NONE);
+        this.slab.putInt(offset + PROFILE_ID, profileId);
+        this.slab.putInt(offset + HASH, hash);
+        this.slab.putLong(offset + SUBMIT_TIME, submitTime);
+        this.slab.putInt(offset + LENGTH, this.keyBuffer.remaining());
+        for (int i = 0; i < this.keyBuffer.remaining(); ++i)
+            this.slab.put(offset + USER + i, this.keyBuffer.get(i));
+
+        if (this.tail == NONE)
+            this.head = handle;
+        else
+            this.slab.putInt(this.offset(this.tail) + NEXT, handle);
+        this.tail = handle;
+
+        if (profileId >= this.profileHeads.length)
+            this.growProfiles(profileId + 1);
+
+        this.slab.putInt(offset + PROFILE_PREV, this.profileTails[profileId]);
+        this.slab.putInt(offset + PROFILE_NEXT, NONE);
+
+        if (this.profileTails[profileId] == NONE)
+            this.profileHeads[profileId] = handle;
+        else
+            this.slab.putInt(
+                this.offset(this.profileTails[profileId]) + PROFILE_NEXT,
+                handle
+            );
+        this.profileTails[profileId] = handle;
+
+        int i = hash & this.mask;
+        while (this.table.getInt(i * Integer.BYTES) != 0)
+            i = (i + 1) & this.mask;
+        this.table.putInt(i * Integer.BYTES, handle + 1);
+
+        ++this.size;
+        return handle;
+    }
+
+
+    @Override
+    void remove(int handle) {
+        int offset = this.offset(handle);
+        int prev = this.slab.getInt(offset + PREV);
+        int next = this.slab.getInt(offset + NEXT);
+
+        if (prev == NONE)
+            this.head = next;
+        else
+            this.slab.putInt(this.offset(prev) + NEXT, next);
+
+        if (next == NONE)
+            this.tail = prev;
+        else
+            this.slab.putInt(this.offset(next) + PREV, prev);
+
+        int profileId = this.slab.getInt(offset + PROFILE_ID);
+        int profilePrev = this.slab.getInt(offset + PROFILE_PREV);
+        int profileNext = this.slab.getInt(offset + PROFILE_NEXT);
+
+        if (profilePrev == NONE)
+            this.profileHeads[profileId] = profileNext;
+        else
+            this.slab.putInt(
+                this.offset(profilePrev) + PROFILE_NEXT,
+                profileNext
+            );
+
+        if (profileNext == NONE)
+            this.profileTails[profileId] = profilePrev;
+        else
+            this.slab.putInt(
+                this.offset(profileNext) + PROFILE_PREV,
+                profilePrev
+            );
+
+        // index에서 사용자의 위치를 찾는다.
+        int i = this.slab.getInt(offset + HASH) & this.mask;
+        while (this.table.getInt(i * Integer.BYTES) != handle + 1)
+            i = (i + 1) & this.mask;
+
+        // 비어 있는 자리를 만나기 전까지, 원래 자리가 삭제된 위치 이전인
+        // 항목들을 삭제된 위치로 당겨서 채운다.
+        for (int j = (i + 1) & this.mask; ; j = (j + 1) & this.mask) {
+            int entry = this.table.getInt(j * Integer.BYTES);
+            if (entry == 0)
+                break;
+
+            int k = this.slab.getInt(this.offset(entry - 1) + HASH) & this.mask;
+            if (((j - k) & this.mask) >= ((j - i) & this.mask)) {
+                this.table.putInt(i * Integer.BYTES, entry);
+                i = j;
+            }
+        }
+        this.table.putInt(i * Integer.BYTES, 0);
+
+        this.slab.putInt(offset + NEXT, this.free);
+        this.free = handle;
+
+        --this.size;
+    }
+
+
+    @Override
+    U user(int handle) {
+        int offset = this.offset(handle);
+
+        ByteBuffer buf = this.slab.duplicate();
+        buf.limit(offset + USER + this.slab.getInt(offset + LENGTH));
+        buf.position(offset + USER);
+
+        return this.codec.decode(buf);
+    }
+
+
+    @Override
+    int profileId(int handle) {
+        return this.slab.getInt(this.offset(handle) + PROFILE_ID);
+    }
+
+
+    @Override
+    long submitTime(int handle) {
+        return this.slab.getLong(this.offset(handle) + SUBMIT_TIME);
+    }
+
+
+    @Override
+    int size() {
+        return this.size;
+    }
+
+
+    @Override
+    boolean isFull() {
+        return (this.size >= this.capacity);
+    }
+
+
+    @Override
+    int first() {
+        return this.head;
+    }
+
+
+    @Override
+    int next(int handle) {
+        return this.slab.getInt(this.offset(handle) + NEXT);
+    }
+
+
+    @Override
+    int firstOfProfile(int profileId) {
+        if (profileId >= this.profileHeads.length)
+            return NONE;
+
+        return this.profileHeads[profileId];
+    }
+
+
+    @Override
+    int nextOfProfile(int handle) {
+        return this.slab.getInt(this.offset(handle) + PROFILE_NEXT);
+    }
+
+
+    private int offset(int handle) {
+        return (handle * this.slotSize);
+    }
+
+
+    private void growProfiles(int minCapacity) {
+        int oldCapacity = this.profileHeads.length;
+        int capacity = Math.max(minCapacity, oldCapacity * 2);
+
+        this.profileHeads = Arrays.copyOf(this.profileHeads, capacity);
+        this.profileTails = Arrays.copyOf(this.profileTails, capacity);
+        Arrays.fill(this.profileHeads, oldCapacity, capacity, NONE);
+        Arrays.fill(this.profileTails, oldCapacity, capacity, NONE);
+    }
+
+
+    /**
+     * 사용자를 변환하여 {@link #keyBuffer}에 저장하고 그 hash 값을 리턴한다.
+     *
+     * @param user 변환할 사용자
+     * @return 변환된 바이트 배열의 hash 값
+     */
+    private int encode(U user) {
+        this.keyBuffer.clear();
+
+        try {
+            this.codec.encode(user, this.keyBuffer);
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("user is too large: " + user, e);
+        }
+
+        this.keyBuffer.flip();
+
+        // FNV-1a
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < this.keyBuffer.remaining(); ++i)
+            hash = (hash ^ this.keyBuffer.get(i)) * 0x01000193;
+
+        hash ^= (hash >>> 16);
+        return hash;
+    }
+
+
+    /**
+     * 저장된 사용자가 {@link #keyBuffer}에 저장된 사용자와 같은지 확인한다.
+     *
+     * @param handle 저장된 사용자의 handle
+     * @param hash {@link #keyBuffer}에 저장된 사용자의 hash 값
+     * @return 같으면 {@code true}, 다르면 {@code false}
+     */
+    private boolean matches(int handle, int hash) {
+        int offset = this.offset(handle);
+
+        if (this.slab.getInt(offset + HASH) != hash)
+            return false;
+
+        int length = this.keyBuffer.remaining();
+        if (this.slab.getInt(offset + LENGTH) != length)
+            return false;
+
+        for (int i = 0; i < length; ++i)
+            if (this.slab.get(offset + USER + i) != this.keyBuffer.get(i))
+                return false;
+
+        return true;
+    }
+
+}
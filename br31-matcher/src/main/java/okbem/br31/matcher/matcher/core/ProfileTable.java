@@ -0,0 +1,195 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * 서로 같은 값을 하나의 번호로 관리하는 table.
+ * {@link Matcher}는 사용자마다 선호 규칙을 따로 저장하지 않고, 같은 선호 규칙을
+ * 등록한 사용자들이 이 table에 저장된 하나의 선호 규칙을 번호로 공유하도록
+ * 한다. 선호 규칙의 종류는 사용자의 수보다 훨씬 적으므로, 사용자의 수와
+ * 관계없이 heap에 남는 객체의 수를 적게 유지할 수 있다.
+ *
+ * 각 값은 참조 횟수를 가지며, 참조 횟수가 0이 되면 삭제되고 그 번호는 다시
+ * 사용될 수 있다. {@link Matcher}에서는 참조 횟수가 곧 그 선호 규칙을 등록한
+ * 사용자의 수가 된다.
+ *
+ * 매치 주기가 실행되는 동안에는 {@link #deferRelease()}를 호출하여 번호가 다시
+ * 사용되지 않도록 한다. 그렇게 하지 않으면 {@link Matcher#playMatch}에서
+ * 새로운 사용자를 등록했을 때, 탐색 중에 표시해 둔 번호가 다른 선호 규칙에게
+ * 할당될 수 있다.
+ *
+ * @param <P> 값 타입
+ */
+final class ProfileTable<P> {
+
+    // <profile: P, profileId: Integer>
+    private final HashMap<P, Integer> profileIdMap;
+
+
+    private final ArrayList<P> profileList;
+
+
+    private int[] refCounts;
+
+
+    private int[] freeIds;
+
+
+    private int freeCount;
+
+
+    /**
+     * 참조 횟수가 0이 되었지만 아직 삭제하지 않은 번호들.
+     * {@link #deferRelease()}를 호출한 이후에만 사용된다.
+     */
+    private int[] pendingIds;
+
+
+    private int pendingCount;
+
+
+    private boolean deferred;
+
+
+    ProfileTable() {
+        this.profileIdMap = new HashMap<>();
+        this.profileList = new ArrayList<>();
+        this.refCounts = new int[16];
+        this.freeIds = new int[16];
+        this.freeCount = 0;
+        this.pendingIds = new int[16];
+        this.pendingCount = 0;
+        this.deferred = false;
+    }
+
+
+    /**
+     * 값의 번호를 리턴하고 참조 횟수를 하나 증가시킨다.
+     * 저장되어 있지 않은 값이면 새로운 번호를 할당한다. 값은 table에 저장된
+     * 이후로 변경되어서는 안 된다.
+     *
+     * @param profile 값
+     * @return 값의 번호
+     */
+    int acquire(P profile) {
+        Integer profileId = this.profileIdMap.get(profile);
+
+        if (profileId == null) {
+            if (this.freeCount > 0) {
+                profileId = this.freeIds[--this.freeCount];
+                this.profileList.set(profileId, profile);
+            } else {
+                profileId = this.profileList.size();
+                this.profileList.add(profile);
+
+                if (profileId == this.refCounts.length)
+                    this.refCounts = Arrays.copyOf(
+                        this.refCounts,
+                        this.refCounts.length * 2
+                    );
+            }
+
+            this.profileIdMap.put(profile, profileId);
+        }
+
+        ++this.refCounts[profileId];
+        return profileId;
+    }
+
+
+    /**
+     * 값의 참조 횟수를 하나 감소시킨다.
+     * 참조 횟수가 0이 되면 값을 삭제한다.
+     *
+     * @param profileId 값의 번호
+     */
+    void release(int profileId) {
+        if (--this.refCounts[profileId] > 0)
+            return;
+
+        if (this.deferred) {
+            if (this.pendingCount == this.pendingIds.length)
+                this.pendingIds = Arrays.copyOf(
+                    this.pendingIds,
+                    this.pendingIds.length * 2
+                );
+            this.pendingIds[this.pendingCount++] = profileId;
+            return;
+        }
+
+        this.remove(profileId);
+    }
+
+
+    /**
+     * 참조 횟수가 0이 된 값을 곧바로 삭제하지 않고 {@link #resumeRelease()}를
+     * 호출할 때까지 미루도록 한다. 그 사이에 같은 값이 다시 저장되면 원래의
+     * 번호를 그대로 사용한다.
+     */
+    void deferRelease() {
+        this.deferred = true;
+    }
+
+
+    /**
+     * {@link #deferRelease()} 이후로 미루어 두었던 값들을 삭제한다.
+     * 그 사이에 다시 참조된 값은 삭제하지 않는다.
+     */
+    void resumeRelease() {
+        this.deferred = false;
+
+        for (int i = 0; i < this.pendingCount; ++i)
+            if (this.refCounts[this.pendingIds[i]] == 0
+                && this.profileList.get(this.pendingIds[i]) != null)
+                this.remove(this.pendingIds[i]);
+
+        this.pendingCount = 0;
+    }
+
+
+    private void remove(int profileId) {
+        this.profileIdMap.remove(this.profileList.get(profileId));
+        this.profileList.set(profileId, null);
+
+        if (this.freeCount == this.freeIds.length)
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length * 2);
+        this.freeIds[this.freeCount++] = profileId;
+    }
+
+
+    P get(int profileId) {
+        return this.profileList.get(profileId);
+    }
+
+
+    /**
+     * 값의 참조 횟수를 리턴한다.
+     *
+     * @param profileId 값의 번호
+     * @return 참조 횟수, 삭제된 번호이면 0
+     */
+    int count(int profileId) {
+        return this.refCounts[profileId];
+    }
+
+
+    /**
+     * 지금까지 할당된 번호의 최댓값보다 하나 큰 값을 리턴한다.
+     * 0부터 이 값 이전까지의 번호 중에서 {@link #count(int)}가 0보다 큰
+     * 번호들이 저장되어 있는 값들이다.
+     *
+     * @return 할당된 번호의 최댓값보다 하나 큰 값
+     */
+    int capacity() {
+        return this.profileList.size();
+    }
+
+
+    int size() {
+        return this.profileIdMap.size();
+    }
+
+}
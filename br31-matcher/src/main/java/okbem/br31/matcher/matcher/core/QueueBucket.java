@@ -0,0 +1,195 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * 선호하는 사용자의 수 하나, 또는 규칙 값 하나에 해당하는 사용자들의 통계.
+ * 현재 등록된 사용자의 수와 함께, 사용자가 등록되는 속도와 매치되는 속도를
+ * 지수적으로 감쇠하는 카운터로 관리한다. 오래된 사건일수록 적은 가중치를
+ * 가지므로 최근의 속도를 반영하게 된다.
+ *
+ * 사용자의 수를 제외한 값들은 {@link Matcher}의 lock을 잡은 상태에서만
+ * 갱신되며, lock을 잡지 않고 읽을 수 있다. 갱신되는 도중에 읽으면 사건 하나
+ * 정도의 오차가 생길 수 있다.
+ */
+final class QueueBucket {
+
+    /**
+     * 등록된 사용자의 수.
+     */
+    private final AtomicInteger size;
+
+
+    /**
+     * 카운터가 {@code 1/e}로 감쇠하는 데 걸리는 시간을 나노초 단위로 나타낸 값.
+     */
+    private final double decayNanos;
+
+
+    /**
+     * 통계를 모으기 시작한 시각.
+     * 충분한 시간이 지나지 않았을 때 속도가 작게 계산되지 않도록 보정하는 데
+     * 사용한다.
+     */
+    private final long startTime;
+
+
+    private volatile double arrivals;
+
+
+    private volatile long arrivalTime;
+
+
+    private volatile double matches;
+
+
+    private volatile long matchTime;
+
+
+    QueueBucket(long decayNanos, long now) {
+        this.size = new AtomicInteger();
+        this.decayNanos = decayNanos;
+        this.startTime = now;
+        this.arrivals = 0.0;
+        this.arrivalTime = now;
+        this.matches = 0.0;
+        this.matchTime = now;
+    }
+
+
+    int size() {
+        return this.size.get();
+    }
+
+
+    int addSize(int delta) {
+        return this.size.addAndGet(delta);
+    }
+
+
+    /**
+     * 등록된 사용자의 수가 {@code maxSize}를 넘지 않는 경우에만 늘린다.
+     * 확인과 변경을 compare-and-set으로 한 번에 하므로, 여러 스레드가 동시에
+     * 호출하더라도 {@code maxSize}를 넘지 않는다.
+     *
+     * @param delta 늘릴 사용자의 수
+     * @param maxSize 사용자의 최대 수
+     * @return 늘렸으면 {@code true}, 자리가 없으면 {@code false}
+     */
+    boolean tryAddSize(int delta, int maxSize) {
+        int size;
+        do {
+            size = this.size.get();
+            if (size + delta > maxSize)
+                return false;
+        } while (!this.size.compareAndSet(size, size + delta));
+
+        return true;
+    }
+
+
+    void countArrivals(int userCount, long now) {
+        this.arrivals
+            = this.decay(this.arrivals, this.arrivalTime, now) + userCount;
+        this.arrivalTime = now;
+    }
+
+
+    void countMatches(int userCount, long now) {
+        this.matches = this.decay(this.matches, this.matchTime, now) + userCount;
+        this.matchTime = now;
+    }
+
+
+    /**
+     * 1초 동안 등록되는 사용자의 수를 리턴한다.
+     *
+     * @param now 현재 시각
+     * @return 1초 동안 등록되는 사용자의 수
+     */
+    double arrivalRate(long now) {
+        return this.rate(this.arrivals, this.arrivalTime, now);
+    }
+
+
+    /**
+     * 1초 동안 매치되는 사용자의 수를 리턴한다.
+     *
+     * @param now 현재 시각
+     * @return 1초 동안 매치되는 사용자의 수
+     */
+    double matchRate(long now) {
+        return this.rate(this.matches, this.matchTime, now);
+    }
+
+
+    /**
+     * 지금 등록하는 사용자가 매치될 때까지 기다려야 하는 시간을 예측한다.
+     * Little's law에 따라 앞서 기다리고 있는 사용자들과 새로운 사용자가 모두
+     * 매치되는 데 걸리는 시간으로 계산한다. 아직 매치된 적이 없으면
+     * {@code minArrivals}만큼 사용자가 더 등록되는 데 걸리는 시간으로
+     * 계산한다.
+     *
+     * @param minArrivals 매치되기 위해서 더 등록되어야 하는 사용자의 최소 수,
+     *        알 수 없으면 0
+     * @param now 현재 시각
+     * @return 예상 대기 시간(초), 예측할 수 없으면 {@link Double#NaN}
+     */
+    double estimateWait(int minArrivals, long now) {
+        return this.estimateWait(minArrivals, null, now);
+    }
+
+
+    /**
+     * 지금 등록하는 사용자가 매치될 때까지 기다려야 하는 시간을 예측한다.
+     * 규칙 값을 가리지 않는 사용자들처럼 이 규칙 값에도 해당하지만 따로 세어
+     * 둔 사용자들이 있으면, 그 사용자의 수와 등록되는 속도를 더해서
+     * 계산한다.
+     *
+     * @param minArrivals 매치되기 위해서 더 등록되어야 하는 사용자의 최소 수,
+     *        알 수 없으면 0
+     * @param shared 함께 계산할 사용자들의 통계, 없으면 {@code null}
+     * @param now 현재 시각
+     * @return 예상 대기 시간(초), 예측할 수 없으면 {@link Double#NaN}
+     *
+     * @see #estimateWait(int, long)
+     */
+    double estimateWait(int minArrivals, QueueBucket shared, long now) {
+        int size = this.size();
+        double arrivalRate = this.arrivalRate(now);
+        if (shared != null) {
+            size += shared.size();
+            arrivalRate += shared.arrivalRate(now);
+        }
+
+        double matchRate = this.matchRate(now);
+        if (matchRate > 0.0)
+            return (Math.max(size, 0) + 1) / matchRate;
+
+        if (minArrivals > 0 && arrivalRate > 0.0)
+            return minArrivals / arrivalRate;
+
+        return Double.NaN;
+    }
+
+
+    private double decay(double count, long time, long now) {
+        return count * Math.exp(-Math.max(now - time, 0L) / this.decayNanos);
+    }
+
+
+    /**
+     * 감쇠된 카운터를 1초당 사건의 수로 바꾼다.
+     * 일정한 속도로 사건이 일어나면 카운터는 {@code 속도 * decayNanos}에
+     * 가까워지므로, 그 값으로 나눈다. 통계를 모으기 시작한 지 얼마 되지 않은
+     * 경우에는 아직 카운터가 다 차지 않았으므로 그만큼 보정한다.
+     */
+    private double rate(double count, long time, long now) {
+        double elapsed = Math.max(now - this.startTime, 1L);
+        double window = this.decayNanos * -Math.expm1(-elapsed / this.decayNanos);
+
+        return this.decay(count, time, now) / window * 1_000_000_000.0;
+    }
+
+}
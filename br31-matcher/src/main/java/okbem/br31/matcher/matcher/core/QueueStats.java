@@ -0,0 +1,42 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.Map;
+
+
+/**
+ * {@link Matcher}에 등록된 사용자의 수를 나타내는 통계.
+ * 선호하는 사용자의 수별, 규칙 값별로 몇 명의 사용자가 매치를 기다리고
+ * 있는지를 담고 있다.
+ *
+ * 각각의 값은 lock을 잡지 않고 따로따로 읽어 온 것이므로, 통계를 만드는 동안
+ * 사용자가 등록되거나 삭제되었다면 값들이 서로 정확히 맞지 않을 수 있다.
+ *
+ * @param <R> 규칙 타입
+ *
+ * @see Matcher#getQueueStats()
+ */
+@lombok.Value
+@lombok.AllArgsConstructor(access = lombok.AccessLevel.PACKAGE)
+public class QueueStats<R extends Enum<R>> {
+
+    /**
+     * 등록된 사용자의 수.
+     */
+    private final int queueSize;
+
+    /**
+     * 선호하는 사용자의 수별로 등록된 사용자의 수.
+     * 선호하는 사용자의 수를 여러 개 지정한 사용자는 그 수마다 한 번씩 센다.
+     */
+    // <matchSize: Integer, queueSize: Integer>
+    private final Map<Integer, Integer> matchSizeMap;
+
+    /**
+     * 규칙 값별로 그 값을 선호하는 사용자의 수.
+     * 규칙 값을 여러 개 지정한 사용자는 그 값마다 한 번씩 센다. 사용자가 한
+     * 명도 없는 규칙 값은 포함되지 않는다.
+     */
+    // <ruleKey: R, <ruleValue: Object, queueSize: Integer>>
+    private final Map<R, Map<Object, Integer>> ruleValueMap;
+
+}
@@ -0,0 +1,170 @@
+package okbem.br31.matcher.matcher.core;
+
+
+/**
+ * {@link Matcher}에 등록된 사용자들을 저장하는 자료 구조.
+ * 사용자마다 선호 규칙의 번호와 등록된 시각을 함께 저장하며, 사용자들은
+ * 등록된 순서대로 순회할 수 있다. 같은 선호 규칙을 등록한 사용자들끼리도
+ * 등록된 순서대로 순회할 수 있다.
+ *
+ * 저장된 사용자는 {@code int} 타입의 handle로 가리킨다. handle은 사용자가
+ * 삭제되기 전까지만 유효하며, 삭제된 이후에는 다른 사용자에게 다시 사용될 수
+ * 있다. 사용자가 없음을 나타낼 때에는 {@link #NONE}을 사용한다.
+ *
+ * 하나의 인스턴스는 하나의 {@link Matcher}에서만 사용할 수 있으며, 항상
+ * {@link Matcher}의 lock을 잡은 상태에서만 접근된다.
+ *
+ * @param <U> 사용자 타입
+ *
+ * @see Matcher#Matcher(Class, java.time.Duration, MatcherConfig, QueueStore)
+ */
+public abstract class QueueStore<U> {
+
+    /**
+     * 사용자가 없음을 나타내는 handle.
+     */
+    static final int NONE = -1;
+
+
+    /**
+     * 이 인스턴스를 사용하는 {@link Matcher}가 있는지 여부.
+     */
+    private boolean attached;
+
+
+    QueueStore() {
+    }
+
+
+    /**
+     * 사용자들을 heap에 저장하는 {@code QueueStore}를 생성한다.
+     * 저장할 수 있는 사용자의 수에 제한이 없다.
+     *
+     * @param <U> 사용자 타입
+     * @return 생성된 {@code QueueStore}
+     */
+    public static <U> QueueStore<U> onHeap() {
+        return new HeapQueueStore<>();
+    }
+
+
+    /**
+     * 사용자들을 heap 바깥의 메모리에 저장하는 {@code QueueStore}를 생성한다.
+     * 사용자는 {@code codec}으로 변환되어 미리 할당된 direct buffer에 저장되며,
+     * 사용자를 찾기 위한 index도 같은 방식으로 저장된다. 따라서 등록된 사용자의
+     * 수가 아무리 많더라도 heap에는 사용자별 객체가 남지 않으므로, 대기열의
+     * 크기와 관계없이 GC로 인한 지연 시간이 일정하게 유지된다.
+     *
+     * 필요한 메모리는 생성할 때 한 번에 할당되며, {@code capacity}만큼
+     * 사용자가 저장되어 있으면 더 이상 등록을 받아들이지 않는다.
+     *
+     * @param <U> 사용자 타입
+     * @param codec 사용자를 바이트 배열로 변환하는 codec
+     * @param capacity 저장할 수 있는 사용자의 최대 수
+     * @return 생성된 {@code QueueStore}
+     */
+    public static <U> QueueStore<U> offHeap(UserCodec<U> codec, int capacity) {
+        return new OffHeapQueueStore<>(codec, capacity);
+    }
+
+
+    /**
+     * 이 인스턴스를 {@link Matcher}에서 사용하도록 표시한다.
+     *
+     * @throws IllegalArgumentException 이미 다른 {@link Matcher}에서 사용
+     *         중인 경우
+     */
+    final synchronized void attach() {
+        if (this.attached)
+            throw new IllegalArgumentException("queueStore is already in use");
+
+        this.attached = true;
+    }
+
+
+    /**
+     * 사용자를 찾는다.
+     *
+     * @param user 찾을 사용자
+     * @return 사용자의 handle, 저장되어 있지 않으면 {@link #NONE}
+     */
+    abstract int find(U user);
+
+
+    /**
+     * 사용자를 저장한다.
+     * 이미 저장된 사용자가 아니어야 하며, {@link #isFull()}이 {@code false}인
+     * 경우에만 호출해야 한다.
+     *
+     * @param user 저장할 사용자
+     * @param profileId 선호 규칙의 번호
+     * @param submitTime 등록된 시각
+     * @return 저장된 사용자의 handle
+     */
+    abstract int add(U user, int profileId, long submitTime);
+
+
+    /**
+     * 사용자를 삭제한다.
+     *
+     * @param handle 삭제할 사용자의 handle
+     */
+    abstract void remove(int handle);
+
+
+    abstract U user(int handle);
+
+
+    abstract int profileId(int handle);
+
+
+    abstract long submitTime(int handle);
+
+
+    abstract int size();
+
+
+    abstract boolean isFull();
+
+
+    /**
+     * 가장 먼저 등록된 사용자의 handle을 리턴한다.
+     *
+     * @return 가장 먼저 등록된 사용자의 handle,
+     *         저장된 사용자가 없으면 {@link #NONE}
+     */
+    abstract int first();
+
+
+    /**
+     * 주어진 사용자 다음으로 등록된 사용자의 handle을 리턴한다.
+     *
+     * @param handle 사용자의 handle
+     * @return 다음으로 등록된 사용자의 handle,
+     *         다음 사용자가 없으면 {@link #NONE}
+     */
+    abstract int next(int handle);
+
+
+    /**
+     * 주어진 선호 규칙을 등록한 사용자들 중에서 가장 먼저 등록된 사용자의
+     * handle을 리턴한다.
+     *
+     * @param profileId 선호 규칙의 번호
+     * @return 가장 먼저 등록된 사용자의 handle,
+     *         그 선호 규칙을 등록한 사용자가 없으면 {@link #NONE}
+     */
+    abstract int firstOfProfile(int profileId);
+
+
+    /**
+     * 주어진 사용자와 같은 선호 규칙을 등록한 사용자들 중에서 다음으로
+     * 등록된 사용자의 handle을 리턴한다.
+     *
+     * @param handle 사용자의 handle
+     * @return 다음으로 등록된 사용자의 handle,
+     *         다음 사용자가 없으면 {@link #NONE}
+     */
+    abstract int nextOfProfile(int handle);
+
+}
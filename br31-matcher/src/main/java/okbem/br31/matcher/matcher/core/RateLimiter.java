@@ -0,0 +1,105 @@
+
+package okbem.br31.matcher.matcher.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * 키별로 token bucket을 관리하는 rate limiter.
+ * 각 키는 최대 {@code burst}개의 토큰을 가질 수 있으며, 토큰은 초당
+ * {@code rate}개씩 다시 채워진다.
+ *
+ * 토큰이 가득 찬 bucket은 없는 것과 같으므로 {@link #purge(long)}를 호출하여
+ * 주기적으로 삭제한다. 그렇게 하지 않으면 한 번이라도 요청했던 모든 키의
+ * bucket이 계속 남아 있게 된다.
+ *
+ * @param <K> 키 타입
+ */
+final class RateLimiter<K> {
+
+    private static final class Bucket {
+
+        private double tokens;
+
+        private long refillTime;
+
+        private Bucket(double tokens, long refillTime) {
+            this.tokens = tokens;
+            this.refillTime = refillTime;
+        }
+
+    }
+
+
+    /**
+     * 1나노초마다 채워지는 토큰의 수.
+     */
+    private final double ratePerNanos;
+
+
+    /**
+     * 하나의 bucket이 가질 수 있는 토큰의 최대 수.
+     */
+    private final double burst;
+
+
+    // <key: K, bucket: Bucket>
+    private final ConcurrentHashMap<K, Bucket> bucketMap;
+
+
+    RateLimiter(double ratePerSecond, int burst) {
+        this.ratePerNanos = ratePerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.bucketMap = new ConcurrentHashMap<>();
+    }
+
+
+    private void refill(Bucket bucket, long now) {
+        bucket.tokens = Math.min(
+            this.burst,
+            bucket.tokens + (now - bucket.refillTime) * this.ratePerNanos
+        );
+        bucket.refillTime = now;
+    }
+
+
+    /**
+     * 토큰을 하나 소모한다.
+     *
+     * @param key 키
+     * @param now 현재 시각
+     * @return 토큰이 남아 있었으면 {@code true},
+     *         남아 있지 않았으면 {@code false}
+     */
+    boolean tryAcquire(K key, long now) {
+        Bucket bucket = this.bucketMap
+            .computeIfAbsent(key, k -> new Bucket(this.burst, now));
+
+        synchronized (bucket) {
+            this.refill(bucket, now);
+
+            if (bucket.tokens < 1.0)
+                return false;
+
+            bucket.tokens -= 1.0;
+            return true;
+        }
+    }
+
+
+    /**
+     * 토큰이 가득 찬 bucket들을 삭제한다.
+     *
+     * @param now 현재 시각
+     */
+    void purge(long now) {
+        this.bucketMap.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                this.refill(bucket, now);
+
+                return (bucket.tokens >= this.burst);
+            }
+        });
+    }
+
+}
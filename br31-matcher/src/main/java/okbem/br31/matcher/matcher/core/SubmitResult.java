@@ -0,0 +1,54 @@
+
+package okbem.br31.matcher.matcher.core;
+
+
+/**
+ * 사용자를 등록한 결과.
+ * 등록이 거부된 경우에는 그 이유를 나타내며, 호출한 쪽에서는 이 값을 보고
+ * 클라이언트에게 어떻게 응답할지 결정할 수 있다. 예를 들어, HTTP gateway라면
+ * {@link #RATE_LIMITED}는 429로, {@link #QUEUE_FULL}, {@link #BUCKET_FULL},
+ * {@link #OVERLOADED}는 503으로 응답하면 된다.
+ *
+ * @see Matcher#trySubmit(Object, java.util.Set, java.util.EnumMap)
+ */
+public enum SubmitResult {
+
+    /**
+     * 등록에 성공했다.
+     */
+    ACCEPTED,
+
+
+    /**
+     * 동일한 사용자가 이미 등록되어 있다.
+     */
+    DUPLICATE,
+
+
+    /**
+     * 등록된 사용자의 수가 {@link MatcherConfig#getMaxQueueSize()}에
+     * 도달했다.
+     */
+    QUEUE_FULL,
+
+
+    /**
+     * 선호하는 사용자의 수 중 하나 이상에서 등록된 사용자의 수가
+     * {@link MatcherConfig#getMaxBucketSize()}를 넘게 된다.
+     */
+    BUCKET_FULL,
+
+
+    /**
+     * 사용자가 너무 자주 등록하거나 취소했다.
+     */
+    RATE_LIMITED,
+
+
+    /**
+     * 직전 매치 주기의 실행 시간이 {@link MatcherConfig#getMaxCycleTime()}을
+     * 초과했다.
+     */
+    OVERLOADED;
+
+}
@@ -0,0 +1,108 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * 사용자를 바이트 배열로 변환하는 codec.
+ * {@link QueueStore#offHeap(UserCodec, int)}에서 사용자를 heap 바깥의 메모리에
+ * 저장할 때 사용한다.
+ *
+ * 같은 사용자는 항상 같은 바이트 배열로 변환되어야 한다. 두 사용자가 서로
+ * 같은지는 {@link Object#equals(Object)}가 아니라 변환된 바이트 배열을 비교하여
+ * 판단하기 때문이다.
+ *
+ * @param <U> 사용자 타입
+ */
+public interface UserCodec<U> {
+
+    /**
+     * 사용자 한 명을 변환했을 때의 최대 바이트 수.
+     *
+     * @return 최대 바이트 수
+     */
+    int maxSize();
+
+
+    /**
+     * 사용자를 바이트 배열로 변환하여 {@code buf}의 현재 위치에 쓴다.
+     * {@link #maxSize()}보다 많이 쓰면
+     * {@link java.nio.BufferOverflowException}이 발생한다.
+     *
+     * @param user 변환할 사용자
+     * @param buf 변환한 결과를 쓸 버퍼
+     */
+    void encode(U user, ByteBuffer buf);
+
+
+    /**
+     * {@code buf}의 현재 위치부터 남아 있는 바이트를 모두 읽어서 사용자로
+     * 변환한다.
+     *
+     * @param buf 변환할 바이트 배열을 담고 있는 버퍼
+     * @return 변환된 사용자
+     */
+    U decode(ByteBuffer buf);
+
+
+    /**
+     * {@link Long} 타입의 사용자를 위한 codec을 리턴한다.
+     *
+     * @return {@link Long} 타입의 사용자를 위한 codec
+     */
+    static UserCodec<Long> ofLong() {
+        return new UserCodec<Long>() {
+            @Override
+            public int maxSize() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void encode(Long user, ByteBuffer buf) {
+                buf.putLong(user);
+            }
+
+            @Override
+            public Long decode(ByteBuffer buf) {
+                return buf.getLong();
+            }
+        };
+    }
+
+
+    /**
+     * {@link String} 타입의 사용자를 위한 codec을 리턴한다.
+     * 사용자는 UTF-8로 변환된다.
+     *
+     * @param maxSize 사용자 한 명을 UTF-8로 변환했을 때의 최대 바이트 수
+     * @return {@link String} 타입의 사용자를 위한 codec
+     */
+    static UserCodec<String> ofString(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException(
+                "maxSize cannot be less than one"
+            );
+
+        return new UserCodec<String>() {
+            @Override
+            public int maxSize() {
+                return maxSize;
+            }
+
+            @Override
+            public void encode(String user, ByteBuffer buf) {
+                buf.put(user.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public String decode(ByteBuffer buf) {
+                byte[] bytes = new byte[buf.remaining()];
+                buf.get(bytes);
+
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+}
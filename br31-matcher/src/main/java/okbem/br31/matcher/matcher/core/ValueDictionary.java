@@ -0,0 +1,60 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+/**
+ * 규칙 값을 0부터 시작하는 번호로 바꾸어 주는 사전.
+ * {@link Matcher}는 규칙 키마다 하나의 사전을 두고, 매치 주기 동안에는 규칙
+ * 값 대신 번호를 사용하여 사용자들을 분류한다. 번호는 배열의 index로 바로 쓸
+ * 수 있으므로 사용자들을 분류할 때 새로운 객체를 만들 필요가 없다.
+ *
+ * 한 번 할당된 번호는 삭제되지 않는다. 규칙 값의 종류는 한정되어 있으므로
+ * 사전의 크기도 그 이상으로 커지지 않는다.
+ */
+final class ValueDictionary {
+
+    // <ruleValue: Object, code: Integer>
+    private final HashMap<Object, Integer> codeMap;
+
+
+    private final ArrayList<Object> valueList;
+
+
+    ValueDictionary() {
+        this.codeMap = new HashMap<>();
+        this.valueList = new ArrayList<>();
+    }
+
+
+    /**
+     * 규칙 값의 번호를 리턴한다.
+     * 처음 보는 규칙 값이면 새로운 번호를 할당한다.
+     *
+     * @param value 규칙 값
+     * @return 규칙 값의 번호
+     */
+    int codeOf(Object value) {
+        Integer code = this.codeMap.get(value);
+
+        if (code == null) {
+            code = this.valueList.size();
+            this.codeMap.put(value, code);
+            this.valueList.add(value);
+        }
+
+        return code;
+    }
+
+
+    Object valueOf(int code) {
+        return this.valueList.get(code);
+    }
+
+
+    int size() {
+        return this.valueList.size();
+    }
+
+}
@@ -0,0 +1,103 @@
+package okbem.br31.matcher.matcher.event;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Set;
+
+
+/**
+ * {@link PublishingMatcher}가 발행하는 이벤트.
+ * 매치가 이루어졌거나, 대기 시간이 초과되었거나, 등록이 취소된 사용자들을
+ * 담고 있다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ */
+@lombok.Value
+@lombok.AllArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public class MatchEvent<U, R extends Enum<R>> {
+
+    /**
+     * 이벤트의 종류.
+     */
+    public enum Type {
+
+        /**
+         * 서로 취향이 맞는 사용자들끼리 매치되었다.
+         */
+        MATCH,
+
+
+        /**
+         * 대기 시간이 초과된 사용자가 삭제되었다.
+         */
+        EXPIRY,
+
+
+        /**
+         * 사용자의 등록이 취소되었다.
+         */
+        CANCEL
+
+    }
+
+
+    /**
+     * 이벤트의 종류.
+     */
+    private final Type type;
+
+    /**
+     * 이벤트의 대상이 되는 사용자들.
+     * {@link Type#MATCH}가 아니면 한 명의 사용자만 포함된다.
+     */
+    private final Set<U> users;
+
+    /**
+     * 하나의 매치에 포함되는 사용자의 수.
+     * {@link Type#MATCH}가 아니면 0이다.
+     */
+    private final int matchSize;
+
+    /**
+     * 서로 매치된 사용자들에게 공통으로 적용되는 규칙.
+     * {@link Type#MATCH}가 아니면 {@code null}이다.
+     */
+    // <ruleKey: R, ruleValue: Object>
+    private final EnumMap<R, Object> ruleMap;
+
+
+    static <U, R extends Enum<R>> MatchEvent<U, R> match(
+        Set<U> match,
+        int matchSize,
+        EnumMap<R, Object> ruleMap
+    ) {
+        return new MatchEvent<>(
+            Type.MATCH,
+            Collections.unmodifiableSet(match),
+            matchSize,
+            ruleMap
+        );
+    }
+
+
+    static <U, R extends Enum<R>> MatchEvent<U, R> expiry(U user) {
+        return new MatchEvent<>(
+            Type.EXPIRY,
+            Collections.singleton(user),
+            0,
+            null
+        );
+    }
+
+
+    static <U, R extends Enum<R>> MatchEvent<U, R> cancel(U user) {
+        return new MatchEvent<>(
+            Type.CANCEL,
+            Collections.singleton(user),
+            0,
+            null
+        );
+    }
+
+}
@@ -0,0 +1,325 @@
+package okbem.br31.matcher.matcher.event;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+
+/**
+ * {@link MatchEvent}를 여러 구독자에게 전달하는 {@link Publisher}.
+ *
+ * 모든 구독자는 같은 이벤트들을 같은 순서로 받으며, 구독하기 전에 발행된
+ * 이벤트는 받지 않는다. 이벤트는 구독자마다 따로 관리되는 대기열에 쌓였다가
+ * 생성할 때 지정한 {@link Executor}에서 구독자가 요청한 개수만큼만 전달된다.
+ * 따라서 구독자가 이벤트를 느리게 처리하더라도 이벤트를 발행한 스레드는
+ * 기다리지 않는다.
+ *
+ * 이벤트를 발행하는 쪽에서는 {@link #hasDemand()}로 모든 구독자에게 요청받은
+ * 이벤트가 남아 있는지 확인할 수 있다. {@link PublishingMatcher}는 요청받은
+ * 이벤트가 없는 동안 매치를 멈추므로, 대기열에는 매치 주기와 관계없이
+ * 발생하는 취소 이벤트만 요청받은 개수를 넘어서 쌓일 수 있다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ */
+public final class MatchEventPublisher<U, R extends Enum<R>>
+    implements Publisher<MatchEvent<U, R>> {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    /**
+     * 구독자 한 명의 구독 상태.
+     * 이벤트는 {@link #drain()}을 통해 한 번에 하나의 스레드에서만 전달된다.
+     */
+    private final class EventSubscription implements Subscription {
+
+        private final Subscriber<? super MatchEvent<U, R>> subscriber;
+
+
+        private final Queue<MatchEvent<U, R>> queue;
+
+
+        /**
+         * 대기열에 쌓여 있는 이벤트의 수.
+         */
+        private final AtomicInteger queued;
+
+
+        /**
+         * 요청받았지만 아직 전달하지 않은 이벤트의 수.
+         */
+        private final AtomicLong requested;
+
+
+        /**
+         * {@link #drain()}이 호출된 횟수.
+         * 0이 아니면 이미 다른 스레드에서 이벤트를 전달하고 있는 중이다.
+         */
+        private final AtomicInteger wip;
+
+
+        private volatile boolean cancelled;
+
+
+        private volatile boolean completed;
+
+
+        private volatile Throwable error;
+
+
+        EventSubscription(Subscriber<? super MatchEvent<U, R>> subscriber) {
+            this.subscriber = subscriber;
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.queued = new AtomicInteger();
+            this.requested = new AtomicLong();
+            this.wip = new AtomicInteger();
+        }
+
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.error = new IllegalArgumentException(
+                    "n must be positive: " + n
+                );
+            } else {
+                long r;
+                do {
+                    r = this.requested.get();
+                    if (r == Long.MAX_VALUE)
+                        break;
+                } while (!this.requested.compareAndSet(
+                    r,
+                    (r + n < 0) ? Long.MAX_VALUE : r + n
+                ));
+            }
+
+            this.drain();
+        }
+
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            MatchEventPublisher.this.subscriptionList.remove(this);
+
+            this.drain();
+        }
+
+
+        boolean hasDemand() {
+            return (this.cancelled
+                || this.requested.get() > this.queued.get());
+        }
+
+
+        void offer(MatchEvent<U, R> event) {
+            if (this.cancelled)
+                return;
+
+            this.queued.incrementAndGet();
+            this.queue.offer(event);
+
+            this.drain();
+        }
+
+
+        void complete() {
+            this.completed = true;
+
+            this.drain();
+        }
+
+
+        private void drain() {
+            if (this.wip.getAndIncrement() != 0)
+                return;
+
+            try {
+                MatchEventPublisher.this.executor.execute(this::drainLoop);
+            } catch (RejectedExecutionException e) {
+                logger.warn("Cannot deliver events to " + this.subscriber, e);
+
+                this.cancelled = true;
+                MatchEventPublisher.this.subscriptionList.remove(this);
+                this.queue.clear();
+            }
+        }
+
+
+        private void drainLoop() {
+            int missed = 1;
+
+            do {
+                try {
+                    this.emit();
+                } catch (Throwable e) {
+                    logger.warn("Subscriber threw an exception: "
+                        + this.subscriber, e);
+
+                    this.cancelled = true;
+                    MatchEventPublisher.this.subscriptionList.remove(this);
+                }
+
+                if (this.cancelled)
+                    this.queue.clear();
+
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+
+        private void emit() {
+            if (this.cancelled)
+                return;
+
+            Throwable error = this.error;
+            if (error != null) {
+                this.cancelled = true;
+                MatchEventPublisher.this.subscriptionList.remove(this);
+
+                this.subscriber.onError(error);
+                return;
+            }
+
+            while (!this.cancelled && this.requested.get() > 0) {
+                MatchEvent<U, R> event = this.queue.poll();
+                if (event == null)
+                    break;
+
+                // 요청받은 이벤트의 수를 먼저 줄여야 hasDemand()가 실제보다
+                // 큰 값으로 계산되지 않는다.
+                if (this.requested.get() != Long.MAX_VALUE)
+                    this.requested.decrementAndGet();
+                this.queued.decrementAndGet();
+
+                this.subscriber.onNext(event);
+            }
+
+            if (this.completed && !this.cancelled && this.queue.isEmpty()) {
+                this.cancelled = true;
+
+                this.subscriber.onComplete();
+            }
+        }
+
+    }
+
+
+    /**
+     * 구독자들에게 이벤트를 전달할 때 사용하는 {@link Executor}.
+     */
+    private final Executor executor;
+
+
+    private final List<EventSubscription> subscriptionList;
+
+
+    private volatile boolean closed;
+
+
+    /**
+     * {@code MatchEventPublisher} 인스턴스를 생성한다.
+     *
+     * @param executor 구독자들에게 이벤트를 전달할 때 사용하는
+     *        {@link Executor}
+     */
+    public MatchEventPublisher(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor cannot be null");
+
+        this.executor = executor;
+        this.subscriptionList = new CopyOnWriteArrayList<>();
+        this.closed = false;
+    }
+
+
+    @Override
+    public void subscribe(Subscriber<? super MatchEvent<U, R>> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("subscriber cannot be null");
+
+        EventSubscription subscription = new EventSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+
+        if (subscription.cancelled)
+            return;
+
+        this.subscriptionList.add(subscription);
+
+        // close()와 동시에 구독한 경우에도 구독이 끝났음을 알려 준다.
+        if (this.closed) {
+            this.subscriptionList.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+
+    /**
+     * 모든 구독자에게 요청받은 이벤트가 남아 있는지 확인한다.
+     *
+     * @return 구독자가 한 명 이상이고 모든 구독자에게 요청받은 이벤트가 남아
+     *         있으면 {@code true}, 그렇지 않으면 {@code false}
+     */
+    public boolean hasDemand() {
+        if (this.subscriptionList.isEmpty())
+            return false;
+
+        for (EventSubscription subscription : this.subscriptionList)
+            if (!subscription.hasDemand())
+                return false;
+
+        return true;
+    }
+
+
+    /**
+     * 모든 구독자에게 이벤트를 발행한다.
+     *
+     * @param event 발행할 이벤트
+     */
+    public void publish(MatchEvent<U, R> event) {
+        if (event == null)
+            throw new IllegalArgumentException("event cannot be null");
+
+        for (EventSubscription subscription : this.subscriptionList)
+            subscription.offer(event);
+    }
+
+
+    /**
+     * 더 이상 이벤트를 발행하지 않는다.
+     * 구독자들은 대기열에 남아 있는 이벤트를 모두 받은 이후에 구독이 끝났다는
+     * 알림을 받는다. 이후에 구독하는 구독자는 곧바로 구독이 끝났다는 알림을
+     * 받는다.
+     */
+    public void close() {
+        this.closed = true;
+
+        for (EventSubscription subscription : this.subscriptionList) {
+            this.subscriptionList.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+
+    /**
+     * 구독 중인 구독자의 수를 리턴한다.
+     *
+     * @return 구독자의 수
+     */
+    public int getSubscriberCount() {
+        return this.subscriptionList.size();
+    }
+
+}
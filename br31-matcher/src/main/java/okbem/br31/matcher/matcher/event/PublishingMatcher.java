@@ -0,0 +1,156 @@
+package okbem.br31.matcher.matcher.event;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import okbem.br31.matcher.matcher.core.Matcher;
+import okbem.br31.matcher.matcher.core.MatcherConfig;
+import okbem.br31.matcher.matcher.core.QueueStore;
+
+
+/**
+ * 매치 결과를 {@link MatchEvent}의 흐름으로 발행하는 {@link Matcher}.
+ * {@link Matcher}를 상속하여 {@link Matcher#playMatch}를 구현하는 대신,
+ * {@link #subscribe(Subscriber)}로 구독하여 매치, 대기 시간 초과, 등록 취소
+ * 이벤트를 받을 수 있다. 여러 구독자가 같은 이벤트들을 함께 받을 수 있다.
+ *
+ * 이벤트는 구독자가 요청한 개수만큼만 전달된다. 구독자가 한 명도 없거나, 요청한
+ * 이벤트를 모두 받은 구독자가 한 명이라도 있으면 매치와 대기 시간 초과 처리를
+ * 멈추며, 사용자들은 삭제되지 않고 그대로 대기한다. 다시 이벤트가 요청되면
+ * 다음 주기부터 매치가 이어진다.
+ *
+ * {@link #shutdown()}은 구독자들에게 구독이 끝났음을 알리지 않는다. 구독을
+ * 끝내려면 {@link #close()}를 호출하면 된다.
+ *
+ * @param <U> 사용자 타입
+ * @param <R> 규칙 타입
+ */
+public class PublishingMatcher<U, R extends Enum<R>> extends Matcher<U, R>
+    implements Publisher<MatchEvent<U, R>> {
+
+    private final MatchEventPublisher<U, R> publisher;
+
+
+    /**
+     * {@code PublishingMatcher} 인스턴스를 생성한다.
+     * 구독자들에게는 {@link ForkJoinPool#commonPool()}에서 이벤트를 전달한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     */
+    public PublishingMatcher(Class<R> ruleKeyType, Duration delay) {
+        this(ruleKeyType, delay, MatcherConfig.builder().build());
+    }
+
+
+    /**
+     * {@code PublishingMatcher} 인스턴스를 생성한다.
+     * 구독자들에게는 {@link ForkJoinPool#commonPool()}에서 이벤트를 전달한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     */
+    public PublishingMatcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        MatcherConfig config
+    ) {
+        this(
+            ruleKeyType,
+            delay,
+            config,
+            QueueStore.onHeap(),
+            ForkJoinPool.commonPool()
+        );
+    }
+
+
+    /**
+     * {@code PublishingMatcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     * @param store 등록된 사용자들을 저장할 자료 구조
+     * @param executor 구독자들에게 이벤트를 전달할 때 사용하는
+     *        {@link Executor}
+     */
+    public PublishingMatcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        MatcherConfig config,
+        QueueStore<U> store,
+        Executor executor
+    ) {
+        super(ruleKeyType, delay, config, store);
+
+        this.publisher = new MatchEventPublisher<>(executor);
+    }
+
+
+    @Override
+    public void subscribe(Subscriber<? super MatchEvent<U, R>> subscriber) {
+        this.publisher.subscribe(subscriber);
+    }
+
+
+    /**
+     * 매치 주기의 실행을 중단하고 구독자들에게 구독이 끝났음을 알린다.
+     * 구독자들은 이미 발행된 이벤트를 모두 받은 이후에 알림을 받는다.
+     */
+    public void close() {
+        this.shutdown();
+        this.publisher.close();
+    }
+
+
+    /**
+     * 구독 중인 구독자의 수를 리턴한다.
+     *
+     * @return 구독자의 수
+     */
+    public int getSubscriberCount() {
+        return this.publisher.getSubscriberCount();
+    }
+
+
+    @Override
+    protected final void playMatch(MatchRule<R> matchRule, Set<U> match) {
+        this.publisher.publish(MatchEvent.match(
+            match,
+            matchRule.getMatchSize(),
+            matchRule.getRuleMap()
+        ));
+    }
+
+
+    @Override
+    protected final void playExpiry(U user) {
+        this.publisher.publish(MatchEvent.expiry(user));
+    }
+
+
+    @Override
+    protected final void playCancel(U user) {
+        this.publisher.publish(MatchEvent.cancel(user));
+    }
+
+
+    /**
+     * 모든 구독자에게 요청받은 이벤트가 남아 있는지 확인한다.
+     * 생성자가 끝나기 전에 매치 주기가 실행되면 {@code false}를 리턴한다.
+     */
+    @Override
+    protected final boolean hasDemand() {
+        MatchEventPublisher<U, R> publisher = this.publisher;
+
+        return (publisher != null && publisher.hasDemand());
+    }
+
+}
@@ -0,0 +1,99 @@
+
+package okbem.br31.matcher.util.consistenthash;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+/**
+ * 키를 노드에 할당하는 consistent hashing ring.
+ * 노드가 추가되거나 제거되어도 대부분의 키는 원래의 노드에 그대로 남아 있고,
+ * 추가되거나 제거된 노드와 관련된 키만 다른 노드로 옮겨진다.
+ *
+ * 각 노드는 {@code virtualNodeCount}개의 가상 노드로 ring에 배치된다. 해시
+ * 함수로는 MD5의 앞쪽 8바이트를 사용하므로, 같은 노드 목록으로 생성한 ring은
+ * 어느 프로세스에서든 동일한 결과를 낸다.
+ *
+ * 이 클래스는 불변이므로 여러 스레드에서 동기화 없이 사용할 수 있다.
+ */
+public final class ConsistentHashRing {
+
+    private static final ThreadLocal<MessageDigest> md5
+        = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+
+    private final Set<String> nodeSet;
+
+
+    // <hash: Long, node: String>
+    private final NavigableMap<Long, String> ring;
+
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodeCount) {
+        if (virtualNodeCount < 1)
+            throw new IllegalArgumentException(
+                "virtualNodeCount cannot be less than one"
+            );
+
+        this.nodeSet = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        this.ring = new TreeMap<>();
+
+        for (String node : this.nodeSet)
+            for (int i = 0; i < virtualNodeCount; ++i)
+                this.ring.putIfAbsent(hash(node + "#" + i), node);
+    }
+
+
+    public static long hash(String key) {
+        byte[] digest = md5.get().digest(key.getBytes(StandardCharsets.UTF_8));
+
+        long hash = 0L;
+        for (int i = 0; i < Long.BYTES; ++i)
+            hash = (hash << 8) | (digest[i] & 0xFF);
+
+        return hash;
+    }
+
+
+    public Set<String> getNodeSet() {
+        return this.nodeSet;
+    }
+
+
+    public boolean isEmpty() {
+        return this.ring.isEmpty();
+    }
+
+
+    /**
+     * 키를 소유한 노드를 리턴한다.
+     *
+     * @param key 키
+     * @return 키를 소유한 노드, ring이 비어 있으면 {@code null}
+     */
+    public String getOwner(String key) {
+        if (this.ring.isEmpty())
+            return null;
+
+        Map.Entry<Long, String> entry = this.ring.ceilingEntry(hash(key));
+        if (entry == null)
+            entry = this.ring.firstEntry();
+
+        return entry.getValue();
+    }
+
+}
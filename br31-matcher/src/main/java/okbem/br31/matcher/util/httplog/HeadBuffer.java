@@ -0,0 +1,102 @@
+package okbem.br31.matcher.util.httplog;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+
+final class HeadBuffer {
+
+    private static final int MIN_GROWTH = 256;
+
+
+    private final int capacity;
+
+
+    private byte[] head;
+
+
+    private int headSize;
+
+
+    private long totalSize;
+
+
+    HeadBuffer(int capacity) {
+        this.capacity = capacity;
+        this.head = new byte[0];
+        this.headSize = 0;
+        this.totalSize = 0L;
+    }
+
+
+    private int reserve(int len) {
+        int n = Math.min(len, this.capacity - this.headSize);
+
+        if (n > 0 && this.headSize + n > this.head.length)
+            this.head = Arrays.copyOf(this.head, Math.min(
+                this.capacity,
+                Math.max(this.headSize + n, this.head.length * 2 + MIN_GROWTH)
+            ));
+
+        return n;
+    }
+
+
+    void write(int b) {
+        if (this.reserve(1) > 0)
+            this.head[this.headSize++] = (byte)b;
+
+        ++this.totalSize;
+    }
+
+
+    void write(byte[] b, int off, int len) {
+        int n = this.reserve(len);
+        if (n > 0) {
+            System.arraycopy(b, off, this.head, this.headSize, n);
+            this.headSize += n;
+        }
+
+        this.totalSize += len;
+    }
+
+
+    void write(char[] c, int off, int len, Charset charset) {
+        int n = Math.min(len, this.capacity - this.headSize);
+        if (n > 0) {
+            byte[] b = new String(c, off, n).getBytes(charset);
+            this.write(b, 0, b.length);
+        }
+
+        this.totalSize += len - n;
+    }
+
+
+    void clear() {
+        this.head = new byte[0];
+        this.headSize = 0;
+        this.totalSize = 0L;
+    }
+
+
+    String toString(String charsetName) {
+        String body;
+        try {
+            body = new String(
+                this.head,
+                0,
+                this.headSize,
+                (charsetName == null) ? "ISO-8859-1" : charsetName
+            );
+        } catch (UnsupportedEncodingException e) {
+            return String.format("length=%d", this.totalSize);
+        }
+
+        if (this.totalSize > this.headSize)
+            body = String.format("%s... (length=%d)", body, this.totalSize);
+
+        return body;
+    }
+
+}
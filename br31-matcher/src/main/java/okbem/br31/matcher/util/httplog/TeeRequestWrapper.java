@@ -0,0 +1,115 @@
+package okbem.br31.matcher.util.httplog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+
+public class TeeRequestWrapper extends HttpServletRequestWrapper {
+
+    private final HeadBuffer headBuffer;
+
+
+    private ServletInputStream inputStream;
+
+
+    private BufferedReader reader;
+
+
+    public TeeRequestWrapper(HttpServletRequest request, int maxBodySize) {
+        super(request);
+
+        this.headBuffer = new HeadBuffer(maxBodySize);
+    }
+
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (this.inputStream == null)
+            this.inputStream = new TeeInputStream(super.getInputStream());
+
+        return this.inputStream;
+    }
+
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (this.reader == null) {
+            String encoding = this.getCharacterEncoding();
+
+            this.reader = new BufferedReader(new InputStreamReader(
+                this.getInputStream(),
+                (encoding == null) ? "ISO-8859-1" : encoding
+            ));
+        }
+
+        return this.reader;
+    }
+
+
+    public String getBodyHead() {
+        return this.headBuffer.toString(this.getCharacterEncoding());
+    }
+
+
+    private final class TeeInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+
+
+        private TeeInputStream(ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            int b = this.delegate.read();
+            if (b != -1)
+                TeeRequestWrapper.this.headBuffer.write(b);
+
+            return b;
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = this.delegate.read(b, off, len);
+            if (n > 0)
+                TeeRequestWrapper.this.headBuffer.write(b, off, n);
+
+            return n;
+        }
+
+
+        @Override
+        public boolean isFinished() {
+            return this.delegate.isFinished();
+        }
+
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.delegate.setReadListener(readListener);
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+    }
+
+}
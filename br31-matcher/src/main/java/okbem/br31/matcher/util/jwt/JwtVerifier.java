@@ -0,0 +1,106 @@
+package okbem.br31.matcher.util.jwt;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+
+@Component
+@ConditionalOnProperty("jwt.public-keys")
+public class JwtVerifier {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    // <keyId: String, verifier: JWTVerifier>
+    private final Map<String, JWTVerifier> verifierMap;
+
+
+    public JwtVerifier(
+        @Value("${jwt.issuer}") String issuer,
+        @Value("${jwt.public-keys}") String publicKeys
+    ) {
+        Map<String, JWTVerifier> verifierMap = new TreeMap<>();
+
+        parsePublicKeys(publicKeys).forEach((keyId, publicKey) -> {
+            verifierMap.put(
+                keyId,
+                JWT.require(Algorithm.ECDSA256(publicKey, null))
+                    .withIssuer(issuer)
+                    .build()
+            );
+        });
+
+        this.verifierMap = Collections.unmodifiableMap(verifierMap);
+
+        logger.info("issuer={}, keyIds={}", issuer, this.verifierMap.keySet());
+    }
+
+
+    private static Map<String, ECPublicKey> parsePublicKeys(String keys) {
+        Map<String, ECPublicKey> publicKeyMap = new TreeMap<>();
+
+        for (String key : keys.split(",")) {
+            key = key.trim();
+            if (key.isEmpty())
+                continue;
+
+            int i = key.indexOf('=');
+            if (i <= 0 || i == key.length() - 1)
+                throw new IllegalArgumentException(
+                    "Invalid public key: " + key + ". " +
+                    "The following format is currently available: " +
+                    "keyId=base64(X.509)"
+                );
+
+            try {
+                byte[] encoded = Base64.getDecoder().decode(
+                    key.substring(i + 1).trim()
+                );
+
+                publicKeyMap.put(
+                    key.substring(0, i).trim(),
+                    (ECPublicKey)KeyFactory.getInstance("EC").generatePublic(
+                        new X509EncodedKeySpec(encoded)
+                    )
+                );
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(
+                    "Invalid public key: " + key.substring(0, i),
+                    e
+                );
+            }
+        }
+
+        return publicKeyMap;
+    }
+
+
+    public DecodedJWT verify(String token) throws JWTVerificationException {
+        DecodedJWT jwt = JWT.decode(token);
+
+        JWTVerifier verifier = this.verifierMap.get(jwt.getKeyId());
+        if (verifier == null)
+            throw new JWTVerificationException(
+                "Unknown key id: " + jwt.getKeyId()
+            );
+
+        return verifier.verify(jwt);
+    }
+
+}
@@ -0,0 +1,80 @@
+package okbem.br31.matcher.util.matcherstats;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okbem.br31.matcher.matcher.core.Matcher;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class MatcherMetrics implements MeterBinder {
+
+    // <beanName: String, matcher: Matcher<?, ?>>
+    private final Map<String, Matcher<?, ?>> matcherMap;
+
+
+    public MatcherMetrics(
+        ObjectProvider<Map<String, Matcher<?, ?>>> matcherMapProvider
+    ) {
+        this.matcherMap = matcherMapProvider.getIfAvailable(Collections::emptyMap);
+    }
+
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.matcherMap.forEach((name, matcher) -> {
+            TimeGauge.builder(
+                "matcher.cycle.time",
+                matcher,
+                TimeUnit.NANOSECONDS,
+                m -> m.getLastCycleTime().toNanos()
+            )
+                .tag("matcher", name)
+                .register(registry);
+
+            Gauge.builder(
+                "matcher.cycle.slices",
+                matcher,
+                Matcher::getLastCycleSlices
+            )
+                .tag("matcher", name)
+                .register(registry);
+
+            Gauge.builder(
+                "matcher.cycle.nodes",
+                matcher,
+                Matcher::getLastCycleNodes
+            )
+                .tag("matcher", name)
+                .register(registry);
+
+            Gauge.builder(
+                "matcher.slice.max.nodes",
+                matcher,
+                Matcher::getMaxSliceNodes
+            )
+                .tag("matcher", name)
+                .register(registry);
+
+            if (matcher.getMaxSliceTime() != null)
+                TimeGauge.builder(
+                    "matcher.slice.max.time",
+                    matcher,
+                    TimeUnit.NANOSECONDS,
+                    m -> m.getMaxSliceTime().toNanos()
+                )
+                    .tag("matcher", name)
+                    .register(registry);
+        });
+    }
+
+}
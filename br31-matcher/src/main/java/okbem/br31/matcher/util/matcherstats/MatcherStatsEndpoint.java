@@ -0,0 +1,51 @@
+package okbem.br31.matcher.util.matcherstats;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okbem.br31.matcher.matcher.core.Matcher;
+import okbem.br31.matcher.matcher.core.QueueStats;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+
+@Component
+@Endpoint(id="matcherstats")
+public class MatcherStatsEndpoint {
+
+    // <beanName: String, matcher: Matcher<?, ?>>
+    private final Map<String, Matcher<?, ?>> matcherMap;
+
+
+    public MatcherStatsEndpoint(
+        ObjectProvider<Map<String, Matcher<?, ?>>> matcherMapProvider
+    ) {
+        this.matcherMap = matcherMapProvider.getIfAvailable(Collections::emptyMap);
+    }
+
+
+    @ReadOperation
+    public Map<String, QueueStats<?>> stats() {
+        Map<String, QueueStats<?>> statsMap = new TreeMap<>();
+
+        this.matcherMap.forEach((name, matcher) -> {
+            statsMap.put(name, matcher.getQueueStats());
+        });
+
+        return statsMap;
+    }
+
+
+    @ReadOperation
+    public QueueStats<?> statsOf(@Selector String name) {
+        Matcher<?, ?> matcher = this.matcherMap.get(name);
+
+        return (matcher == null) ? null : matcher.getQueueStats();
+    }
+
+}
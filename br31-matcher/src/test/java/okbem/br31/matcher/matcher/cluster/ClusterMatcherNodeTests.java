@@ -0,0 +1,266 @@
+package okbem.br31.matcher.matcher.cluster;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okbem.br31.matcher.matcher.core.Matcher;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link ClusterMatcherNode}의 파티션 소유권과 소유권 이전을 검증하는 테스트.
+ * 모든 노드는 {@link LocalClusterMembership}과 {@link LocalClusterTransport}를
+ * 사용하여 하나의 JVM 안에서 실행된다.
+ */
+public class ClusterMatcherNodeTests {
+
+    private static enum NoRule {
+    }
+
+
+    private static final class RecordingMatcher extends Matcher<String, NoRule> {
+
+        private final String partition;
+
+        private final ConcurrentHashMap<String, String> matchedMap;
+
+        private final CountDownLatch latch;
+
+        public RecordingMatcher(
+            String partition,
+            ConcurrentHashMap<String, String> matchedMap,
+            CountDownLatch latch
+        ) {
+            super(NoRule.class, Duration.ofMillis(100L));
+
+            this.partition = partition;
+            this.matchedMap = matchedMap;
+            this.latch = latch;
+        }
+
+        @Override
+        protected void playMatch(MatchRule<NoRule> matchRule, Set<String> match) {
+            for (String user : match)
+                this.matchedMap.put(user, this.partition);
+
+            this.latch.countDown();
+        }
+
+    }
+
+
+    private static final List<String> partitions = Arrays.asList(
+        "RANK:ASIA", "RANK:EU", "RANK:NA",
+        "CASUAL:ASIA", "CASUAL:EU", "CASUAL:NA",
+        "ARENA:ASIA", "ARENA:EU", "ARENA:NA"
+    );
+
+
+    private final LocalClusterMembership membership
+        = new LocalClusterMembership();
+
+
+    private final LocalClusterTransport<String, NoRule> transport
+        = new LocalClusterTransport<>();
+
+
+    private final ConcurrentHashMap<String, String> matchedMap
+        = new ConcurrentHashMap<>();
+
+
+    private final List<ClusterMatcherNode<String, NoRule>> nodeList
+        = new ArrayList<>();
+
+
+    private CountDownLatch latch;
+
+
+    private ClusterMatcherNode<String, NoRule> startNode(String nodeId) {
+        ClusterMatcherNode<String, NoRule> node = new ClusterMatcherNode<>(
+            nodeId,
+            this.membership,
+            this.transport,
+            partition -> new RecordingMatcher(
+                partition,
+                this.matchedMap,
+                this.latch
+            ),
+            64
+        );
+
+        node.start();
+        this.nodeList.add(node);
+
+        return node;
+    }
+
+
+    private static Set<Integer> pair() {
+        return new HashSet<>(Arrays.asList(2));
+    }
+
+
+    private void assertSingleOwner() {
+        for (String partition : partitions) {
+            long count = this.nodeList.stream()
+                .filter(node -> node.getPartitions().contains(partition))
+                .count();
+
+            assertThat(count)
+                .as(partition)
+                .isLessThanOrEqualTo(1L);
+
+            for (ClusterMatcherNode<String, NoRule> node : this.nodeList)
+                if (node.getPartitions().contains(partition))
+                    assertThat(node.getOwner(partition))
+                        .isEqualTo(node.getNodeId());
+        }
+    }
+
+
+    private boolean await() throws InterruptedException {
+        return this.latch.await(2L, TimeUnit.SECONDS);
+    }
+
+
+    @Before
+    public void initLatch() {
+        this.latch = new CountDownLatch(partitions.size());
+    }
+
+
+    @After
+    public void stopNodes() {
+        for (ClusterMatcherNode<String, NoRule> node : this.nodeList)
+            if (this.membership.getMembers().contains(node.getNodeId()))
+                node.stop();
+    }
+
+
+    @Test
+    public void submit_IsRoutedToOwner() throws InterruptedException {
+        ClusterMatcherNode<String, NoRule> node1 = this.startNode("node1");
+        ClusterMatcherNode<String, NoRule> node2 = this.startNode("node2");
+        ClusterMatcherNode<String, NoRule> node3 = this.startNode("node3");
+
+        for (String partition : partitions) {
+            assertThat(node1.submit(partition, partition + "/A", pair()))
+                .isTrue();
+            assertThat(node2.submit(partition, partition + "/A", pair()))
+                .isFalse();
+            assertThat(node3.submit(partition, partition + "/B", pair()))
+                .isTrue();
+        }
+
+        assertThat(this.await())
+            .isTrue();
+
+        this.assertSingleOwner();
+
+        for (String partition : partitions) {
+            assertThat(this.matchedMap)
+                .containsEntry(partition + "/A", partition)
+                .containsEntry(partition + "/B", partition);
+        }
+
+        assertThat(node1.getPartitions().size()
+            + node2.getPartitions().size()
+            + node3.getPartitions().size())
+            .isEqualTo(partitions.size());
+    }
+
+
+    @Test
+    public void cancel_IsRoutedToOwner() throws InterruptedException {
+        ClusterMatcherNode<String, NoRule> node1 = this.startNode("node1");
+        ClusterMatcherNode<String, NoRule> node2 = this.startNode("node2");
+
+        for (String partition : partitions) {
+            assertThat(node1.submit(partition, partition + "/A", pair()))
+                .isTrue();
+            assertThat(node2.cancel(partition, partition + "/A"))
+                .isTrue();
+            assertThat(node1.cancel(partition, partition + "/A"))
+                .isFalse();
+        }
+    }
+
+
+    @Test
+    public void stop_HandsPartitionsOver() throws InterruptedException {
+        ClusterMatcherNode<String, NoRule> node1 = this.startNode("node1");
+        ClusterMatcherNode<String, NoRule> node2 = this.startNode("node2");
+        ClusterMatcherNode<String, NoRule> node3 = this.startNode("node3");
+
+        for (String partition : partitions)
+            node1.submit(partition, partition + "/A", pair());
+
+        Set<String> movedPartitions = node2.getPartitions();
+
+        node2.stop();
+
+        assertThat(node2.getPartitions())
+            .isEmpty();
+
+        this.assertSingleOwner();
+
+        for (String partition : partitions)
+            node3.submit(partition, partition + "/B", pair());
+
+        assertThat(this.await())
+            .isTrue();
+
+        for (String partition : partitions)
+            assertThat(this.matchedMap)
+                .containsEntry(partition + "/A", partition)
+                .containsEntry(partition + "/B", partition);
+
+        for (String partition : movedPartitions)
+            assertThat(node1.getPartitions().contains(partition)
+                || node3.getPartitions().contains(partition))
+                .isTrue();
+    }
+
+
+    @Test
+    public void start_TakesPartitionsOver() throws InterruptedException {
+        ClusterMatcherNode<String, NoRule> node1 = this.startNode("node1");
+
+        for (String partition : partitions)
+            node1.submit(partition, partition + "/A", pair());
+
+        assertThat(node1.getPartitions())
+            .hasSameSizeAs(partitions);
+
+        ClusterMatcherNode<String, NoRule> node2 = this.startNode("node2");
+        ClusterMatcherNode<String, NoRule> node3 = this.startNode("node3");
+
+        this.assertSingleOwner();
+
+        assertThat(node2.getPartitions().size()
+            + node3.getPartitions().size())
+            .isGreaterThan(0);
+
+        for (String partition : partitions)
+            node1.submit(partition, partition + "/B", pair());
+
+        assertThat(this.await())
+            .isTrue();
+
+        for (String partition : partitions)
+            assertThat(this.matchedMap)
+                .containsEntry(partition + "/A", partition)
+                .containsEntry(partition + "/B", partition);
+    }
+
+}
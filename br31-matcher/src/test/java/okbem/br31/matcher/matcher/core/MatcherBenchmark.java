@@ -0,0 +1,143 @@
+package okbem.br31.matcher.matcher.core;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * {@link Matcher}의 매치 주기 하나를 실행하는 데 걸리는 시간과 할당되는 메모리를
+ * 측정하는 benchmark.
+ *
+ * 등록된 사용자들이 서로 매치되지 않는 상태에서 매치 주기를 반복해서 실행하므로,
+ * 매치가 이루어지지 않는 주기의 비용을 측정하게 된다. 할당되는 메모리는
+ * {@link GCProfiler}가 출력하는 {@code gc.alloc.rate.norm} 값으로 확인할 수
+ * 있다.
+ *
+ * <pre>
+ * mvn -pl br31-matcher test-compile exec:java \
+ *     -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=okbem.br31.matcher.matcher.core.MatcherBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatcherBenchmark {
+
+    private static enum Rule {
+        TOPIC,
+        FOOD,
+        TIME;
+
+        private static enum Topic { 독서, 게임, 축구, 영화, 수다, 쇼핑 }
+        private static enum Food { 피자, 치킨, 감자, 고구마, 커피, 소주, 맥주 }
+        private static enum Time { 아침, 점심, 저녁 }
+    }
+
+
+    private static final class IdleMatcher extends Matcher<Long, Rule> {
+
+        private IdleMatcher(QueueStore<Long> store) {
+            super(
+                Rule.class,
+                Duration.ofDays(1L),
+                MatcherConfig.builder().scheduled(false).build(),
+                store
+            );
+        }
+
+        @Override
+        protected void playMatch(MatchRule<Rule> matchRule, Set<Long> match) {
+            throw new IllegalStateException("users must not be matched");
+        }
+
+    }
+
+
+    @Param({"1000", "100000"})
+    private int userCount;
+
+
+    @Param({"onHeap", "offHeap"})
+    private String storeType;
+
+
+    private IdleMatcher matcher;
+
+
+    @Setup
+    public void setUp() {
+        Logger logger = (Logger)LoggerFactory.getLogger(Matcher.class);
+        logger.setLevel(Level.INFO);
+
+        QueueStore<Long> store = this.storeType.equals("offHeap")
+            ? QueueStore.offHeap(UserCodec.ofLong(), this.userCount)
+            : QueueStore.onHeap();
+        this.matcher = new IdleMatcher(store);
+
+        // 규칙 키를 두 개까지 조합했을 때에는 매치를 찾을 수 있을 것처럼
+        // 보이지만, 세 개를 모두 조합하면 매치를 찾을 수 없도록 한다.
+        Set<Integer> matchSizeSet
+            = Collections.singleton(this.userCount / 50 + 2);
+
+        Random random = new Random(31L);
+        Rule.Topic[] topics = Rule.Topic.values();
+        Rule.Food[] foods = Rule.Food.values();
+        Rule.Time[] times = Rule.Time.values();
+
+        for (long user = 0L; user < this.userCount; ++user) {
+            EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+            ruleSetMap.put(Rule.TOPIC, EnumSet.of(
+                topics[random.nextInt(topics.length)]
+            ));
+            ruleSetMap.put(Rule.FOOD, EnumSet.of(
+                foods[random.nextInt(foods.length)]
+            ));
+            ruleSetMap.put(Rule.TIME, EnumSet.of(
+                times[random.nextInt(times.length)]
+            ));
+
+            this.matcher.submit(user, matchSizeSet, ruleSetMap);
+        }
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.matcher.shutdown();
+    }
+
+
+    @Benchmark
+    public void idleCycle() {
+        this.matcher.runOnce();
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(MatcherBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()
+        ).run();
+    }
+
+}
@@ -2,10 +2,12 @@
 package okbem.br31.matcher.matcher.core;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
@@ -18,9 +20,16 @@ import static org.mockito.Mockito.*;
 
 /**
  * {@link Matcher}의 매치 기능을 검증하는 테스트.
+ * 매치 주기를 기다리지 않도록 {@link TestMatcher#isMatched()}를 호출할 때마다
+ * 매치 주기를 한 번씩 직접 실행한다.
  */
 public class MatcherMatchingTests {
 
+    private static final MatcherConfig STEP = MatcherConfig.builder()
+        .scheduled(false)
+        .build();
+
+
     private static enum Rule1 {
         COLOR,
         FOOD;
@@ -36,7 +45,8 @@ public class MatcherMatchingTests {
             Rule1.class,
             Duration.ofMillis(500L),
             new CountDownLatch(1),
-            Duration.ofMillis(1000L)
+            Duration.ofMillis(1000L),
+            STEP
         );
 
         EnumMap<Rule1, Set<?>> A = new EnumMap<>(Rule1.class);
@@ -81,7 +91,8 @@ public class MatcherMatchingTests {
             Rule2.class,
             Duration.ofMillis(500L),
             new CountDownLatch(4),
-            Duration.ofMillis(1000L)
+            Duration.ofMillis(1000L),
+            STEP
         );
 
         EnumMap<Rule2, Set<?>> A = new EnumMap<>(Rule2.class);
@@ -320,7 +331,43 @@ public class MatcherMatchingTests {
             Rule3.class,
             Duration.ofMillis(1500L),
             new CountDownLatch(3),
-            Duration.ofMillis(2000L)
+            Duration.ofMillis(2000L),
+            STEP
+        );
+
+        EnumMap<Rule3, Set<?>> ruleSetMap = new EnumMap<>(Rule3.class);
+
+        matcher.submit("A", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("B", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("C", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("D", new HashSet<>(Arrays.asList(3)));
+
+        assertThat(matcher.isMatched())
+            .isFalse();
+
+        matcher.assertMatch(ruleSetMap, 2, 1, "A", "B", "C");
+
+        matcher.cancel("D");
+        matcher.submit("D", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("E", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("F", new HashSet<>(Arrays.asList(2)));
+
+        assertThat(matcher.isMatched())
+            .isTrue();
+
+        matcher.assertMatch(ruleSetMap, 2, 3, "A", "B", "C", "D", "E", "F");
+    }
+
+
+    @Test
+    public void testUseCase3_OffHeap() {
+        TestMatcher<String, Rule3> matcher = new TestMatcher<>(
+            Rule3.class,
+            Duration.ofMillis(1500L),
+            new CountDownLatch(3),
+            Duration.ofMillis(2000L),
+            STEP,
+            QueueStore.offHeap(UserCodec.ofString(4), 8)
         );
 
         EnumMap<Rule3, Set<?>> ruleSetMap = new EnumMap<>(Rule3.class);
@@ -357,7 +404,8 @@ public class MatcherMatchingTests {
             Rule4.class,
             Duration.ofMillis(500L),
             new CountDownLatch(2),
-            Duration.ofMillis(1000L)
+            Duration.ofMillis(1000L),
+            STEP
         );
 
         String[] users = String.join("", Arrays.asList(
@@ -374,5 +422,142 @@ public class MatcherMatchingTests {
         matcher.assertMatch(new EnumMap<>(Rule4.class), 26, 2, users);
     }
 
+
+
+    private static enum Rule5 {
+        COLOR;
+
+        private static enum Color { RED, GREEN, BLUE }
+    }
+
+
+    private static List<Matcher.Submission<String, Rule5>> createParty(
+        EnumMap<Rule5, Set<?>> ruleSetMap,
+        String... users
+    ) {
+        List<Matcher.Submission<String, Rule5>> members = new ArrayList<>();
+
+        for (String user : users)
+            members.add(new Matcher.Submission<>(
+                user,
+                new HashSet<>(Arrays.asList(4)),
+                ruleSetMap
+            ));
+
+        return members;
+    }
+
+
+    @Test
+    public void testUseCase5() {
+        TestMatcher<String, Rule5> matcher = new TestMatcher<>(
+            Rule5.class,
+            Duration.ofMillis(500L),
+            new CountDownLatch(2),
+            Duration.ofMillis(1000L),
+            STEP
+        );
+
+        EnumMap<Rule5, Set<?>> A = new EnumMap<>(Rule5.class);
+        A.put(Rule5.COLOR, EnumSet.of(Rule5.Color.RED, Rule5.Color.BLUE));
+
+        EnumMap<Rule5, Set<?>> B = new EnumMap<>(Rule5.class);
+        B.put(Rule5.COLOR, EnumSet.of(Rule5.Color.BLUE));
+
+        // 파티원들이 모두 선호하는 BLUE로만 매치된다.
+        matcher.submitParty(createParty(A, "A", "B"));
+        matcher.submitParty(createParty(A, "C", "D", "E"));
+        matcher.submit("F", new HashSet<>(Arrays.asList(4)), B);
+        matcher.submit("G", new HashSet<>(Arrays.asList(4)), B);
+        matcher.submit("H", new HashSet<>(Arrays.asList(4)), B);
+
+        assertThat(matcher.isMatched())
+            .isTrue();
+
+        matcher.assertMatch(B, 4, 2, "A", "B", "C", "D", "E", "F", "G", "H");
+
+        // 파티는 서로 다른 매치로 나뉘지 않는다.
+        for (Set<Set<String>> matchSet : matcher.matchResult.values())
+            for (Set<String> match : matchSet) {
+                assertThat(match.contains("A"))
+                    .isEqualTo(match.contains("B"));
+                assertThat(match.contains("C"))
+                    .isEqualTo(match.contains("D"))
+                    .isEqualTo(match.contains("E"));
+            }
+    }
+
+
+    @Test
+    public void testUseCase5_PartiesDoNotFit() {
+        TestMatcher<String, Rule5> matcher = new TestMatcher<>(
+            Rule5.class,
+            Duration.ofMillis(500L),
+            new CountDownLatch(1),
+            Duration.ofMillis(1000L),
+            STEP
+        );
+
+        EnumMap<Rule5, Set<?>> A = new EnumMap<>(Rule5.class);
+        A.put(Rule5.COLOR, EnumSet.of(Rule5.Color.GREEN));
+
+        // 3명짜리 파티 두 개로는 4명을 정확히 채울 수 없다.
+        matcher.submitParty(createParty(A, "A", "B", "C"));
+        matcher.submitParty(createParty(A, "D", "E", "F"));
+
+        assertThat(matcher.isMatched())
+            .isFalse();
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(6);
+
+        matcher.cancel("E");
+        matcher.submit("D", new HashSet<>(Arrays.asList(4)), A);
+
+        assertThat(matcher.isMatched())
+            .isTrue();
+
+        matcher.assertMatch(A, 4, 1, "A", "B", "C", "D");
+    }
+
+
+
+    @Test
+    public void testUseCase6() {
+        TestMatcher<String, Rule1> matcher = new TestMatcher<>(
+            Rule1.class,
+            Duration.ofMillis(500L),
+            new CountDownLatch(2),
+            Duration.ofMillis(1000L),
+            STEP
+        );
+
+        EnumMap<Rule1, Set<?>> any = new EnumMap<>(Rule1.class);
+        any.put(Rule1.COLOR, EnumSet.allOf(Rule1.Color.class));
+        any.put(Rule1.FOOD, EnumSet.allOf(Rule1.Food.class));
+
+        EnumMap<Rule1, Set<?>> red = new EnumMap<>(Rule1.class);
+        red.put(Rule1.COLOR, EnumSet.of(Rule1.Color.RED));
+        red.put(Rule1.FOOD, EnumSet.of(Rule1.Food.치킨));
+
+        // 규칙 값을 가리지 않는 사용자는 다른 사용자가 선호하는 규칙 값으로
+        // 매치되고, 그런 사용자들끼리도 매치된다.
+        matcher.submit("A", new HashSet<>(Arrays.asList(2)), any);
+        matcher.submit("B", new HashSet<>(Arrays.asList(2)), red);
+        matcher.submit("C", new HashSet<>(Arrays.asList(2)), any);
+        matcher.submit("D", new HashSet<>(Arrays.asList(2)), any);
+
+        assertThat(matcher.isMatched())
+            .isTrue();
+
+        matcher.assertMatch(any, 2, 2, "A", "B", "C", "D");
+
+        matcher.matchResult.forEach((ruleMap, matchSet) -> {
+            if (matchSet.stream().anyMatch(match -> match.contains("B")))
+                assertThat(ruleMap)
+                    .containsEntry(Rule1.COLOR, Rule1.Color.RED)
+                    .containsEntry(Rule1.FOOD, Rule1.Food.치킨);
+        });
+    }
+
 }
 
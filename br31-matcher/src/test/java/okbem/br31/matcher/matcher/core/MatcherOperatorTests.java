@@ -2,11 +2,18 @@
 package okbem.br31.matcher.matcher.core;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.*;
 import org.mockito.*;
@@ -20,7 +27,16 @@ import static org.mockito.Mockito.*;
  * 이 테스트가 검증하는 메서드는 다음과 같다:
  * {@link Matcher#submit(Object, Set)},
  * {@link Matcher#submit(Object, Set, EnumMap)},
- * {@link Matcher#cancel(Object)}
+ * {@link Matcher#trySubmit(Object, Set)},
+ * {@link Matcher#trySubmit(Object, Set, EnumMap)},
+ * {@link Matcher#submitParty(List)},
+ * {@link Matcher#trySubmitParty(List)},
+ * {@link Matcher#cancel(Object)},
+ * {@link Matcher#drain()},
+ * {@link Matcher#handoff(Matcher.Submission)},
+ * {@link Matcher#getQueueStats()},
+ * {@link Matcher#estimateWait(Set, EnumMap)},
+ * {@link Matcher#runOnce()}
  */
 public class MatcherOperatorTests {
 
@@ -31,6 +47,19 @@ public class MatcherOperatorTests {
             super(ruleKeyType, Duration.ofHours(1L));
         }
 
+        public DummyMatcher(Class<R> ruleKeyType, MatcherConfig config) {
+            super(ruleKeyType, Duration.ofHours(1L), config);
+        }
+
+        public DummyMatcher(Class<R> ruleKeyType, QueueStore<U> store) {
+            super(
+                ruleKeyType,
+                Duration.ofHours(1L),
+                MatcherConfig.builder().build(),
+                store
+            );
+        }
+
         @Override
         protected void playMatch(MatchRule<R> matchRule, Set<U> match) {
         }
@@ -220,6 +249,413 @@ public class MatcherOperatorTests {
     }
 
 
+    @Test
+    public void submit_ReturnsFalse_IfQueueIsFull() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(
+            Rule.class,
+            MatcherConfig.builder().maxQueueSize(2).build()
+        );
+        Set<Integer> matchSizeSet = createValidMatchSizeSet();
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+
+        assertThat(matcher.submit("A", matchSizeSet, ruleSetMap))
+            .isTrue();
+
+        assertThat(matcher.submit("B", matchSizeSet, ruleSetMap))
+            .isTrue();
+
+        assertThat(matcher.submit("C", matchSizeSet, ruleSetMap))
+            .isFalse();
+
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+
+        assertThat(matcher.submit("C", matchSizeSet, ruleSetMap))
+            .isTrue();
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsDuplicate_IfUserAlreadyExists() {
+        String user = "trySubmit_ReturnsDuplicate_IfUserAlreadyExists";
+        Set<Integer> matchSizeSet = createValidMatchSizeSet();
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+
+        assertThat(matcher.trySubmit(user, matchSizeSet, ruleSetMap))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.trySubmit(user, matchSizeSet, ruleSetMap))
+            .isEqualTo(SubmitResult.DUPLICATE);
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsQueueFull_IfQueueIsFull() {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            MatcherConfig.builder().maxQueueSize(1).build()
+        );
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        // 이미 등록된 사용자라도 자리가 없으면 먼저 거부된다.
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.QUEUE_FULL);
+
+        assertThat(matcher.trySubmit("B", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.QUEUE_FULL);
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsQueueFull_IfStoreIsFull() {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            QueueStore.offHeap(UserCodec.ofString(16), 1)
+        );
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.DUPLICATE);
+
+        assertThat(matcher.trySubmit("B", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.QUEUE_FULL);
+
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+
+        assertThat(matcher.trySubmit("B", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsBucketFull_IfAnyBucketIsFull() {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            MatcherConfig.builder().maxBucketSize(1).build()
+        );
+
+        assertThat(matcher.trySubmit("A", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.trySubmit("B", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.BUCKET_FULL);
+
+        assertThat(matcher.trySubmit("B", new HashSet<>(Arrays.asList(2, 3))))
+            .isEqualTo(SubmitResult.BUCKET_FULL);
+
+        // 거부된 등록은 자리가 남아 있던 버킷에도 자리를 남기지 않는다.
+        assertThat(matcher.getQueueSize(3))
+            .isZero();
+
+        assertThat(matcher.trySubmit("C", new HashSet<>(Arrays.asList(3))))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+
+        assertThat(matcher.trySubmit("B", new HashSet<>(Arrays.asList(2, 3))))
+            .isEqualTo(SubmitResult.BUCKET_FULL);
+
+        assertThat(matcher.trySubmit("B", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(2);
+    }
+
+
+    @Test
+    public void trySubmit_KeepsBucketSize_IfSubmittedConcurrently()
+        throws InterruptedException {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            MatcherConfig.builder().maxBucketSize(100).build()
+        );
+
+        Set<Integer> matchSizeSet = new HashSet<>(Arrays.asList(2, 3));
+        AtomicInteger acceptedCount = new AtomicInteger();
+        CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<Thread> threadList = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            int offset = t * 1000;
+
+            threadList.add(new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int i = 0; i < 1000; ++i)
+                    if (matcher.trySubmit("U" + (offset + i), matchSizeSet)
+                        == SubmitResult.ACCEPTED)
+                        acceptedCount.incrementAndGet();
+            }));
+        }
+
+        threadList.forEach(Thread::start);
+        startLatch.countDown();
+        for (Thread thread : threadList)
+            thread.join();
+
+        assertThat(acceptedCount.get())
+            .isEqualTo(100);
+        assertThat(matcher.getQueueSize(2))
+            .isEqualTo(100);
+        assertThat(matcher.getQueueSize(3))
+            .isEqualTo(100);
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(100);
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsRateLimited_IfUserFlaps() {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            MatcherConfig.builder()
+                .maxSubmitRate(0.001)
+                .maxSubmitBurst(3)
+                .build()
+        );
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.RATE_LIMITED);
+
+        // 횟수를 초과하더라도 취소는 거부되지 않는다.
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+
+        // 다른 사용자는 영향을 받지 않는다.
+        assertThat(matcher.trySubmit("B", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+    }
+
+
+    @Test
+    public void trySubmit_ReturnsOverloaded_IfCycleTakesTooLong()
+        throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        Matcher<String, NoRule> matcher = new Matcher<String, NoRule>(
+            NoRule.class,
+            Duration.ofMillis(1000L),
+            MatcherConfig.builder().maxCycleTime(Duration.ofMillis(50L)).build()
+        ) {
+            @Override
+            protected void playMatch(
+                MatchRule<NoRule> matchRule,
+                Set<String> match
+            ) {
+                latch.countDown();
+
+                try {
+                    Thread.sleep(200L);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+
+        assertThat(matcher.trySubmit("A", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.trySubmit("B", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.ACCEPTED);
+
+        // 오래 걸리는 매치 주기가 끝날 때까지 기다린다.
+        assertThat(latch.await(2L, TimeUnit.SECONDS))
+            .isTrue();
+        Thread.sleep(400L);
+
+        assertThat(matcher.trySubmit("C", new HashSet<>(Arrays.asList(2))))
+            .isEqualTo(SubmitResult.OVERLOADED);
+
+        matcher.shutdown();
+    }
+
+
+    private static List<Matcher.Submission<String, Rule>> createParty(
+        String... users
+    ) {
+        List<Matcher.Submission<String, Rule>> members = new ArrayList<>();
+
+        for (String user : users)
+            members.add(new Matcher.Submission<>(
+                user,
+                createValidMatchSizeSet(),
+                createValidRuleSetMap()
+            ));
+
+        return members;
+    }
+
+
+    @Test
+    public void submitParty_ThrowsException_IfMembersIsEmpty() {
+        List<Matcher.Submission<String, Rule>> members = createParty();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> matcher.submitParty(members))
+            .withMessage("members cannot be null or empty");
+    }
+
+
+    @Test
+    public void submitParty_ThrowsException_IfMembersContainSameUser() {
+        List<Matcher.Submission<String, Rule>> members = createParty(
+            "submitParty_ThrowsException_IfMembersContainSameUser",
+            "submitParty_ThrowsException_IfMembersContainSameUser"
+        );
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> matcher.submitParty(members))
+            .withMessage("members cannot contain the same user twice");
+    }
+
+
+    @Test
+    public void submitParty_ThrowsException_IfNoMatchSizeInCommon() {
+        List<Matcher.Submission<String, Rule>> members = createParty(
+            "submitParty_ThrowsException_IfNoMatchSizeInCommon_1",
+            "submitParty_ThrowsException_IfNoMatchSizeInCommon_2"
+        );
+
+        members.set(1, new Matcher.Submission<>(
+            members.get(1).getUser(),
+            new HashSet<>(Arrays.asList(2, 3)),
+            createValidRuleSetMap()
+        ));
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> matcher.submitParty(members))
+            .withMessage("members have no matchSize in common");
+    }
+
+
+    @Test
+    public void submitParty_ThrowsException_IfNoRuleValueInCommon() {
+        List<Matcher.Submission<String, Rule>> members = createParty(
+            "submitParty_ThrowsException_IfNoRuleValueInCommon_1",
+            "submitParty_ThrowsException_IfNoRuleValueInCommon_2"
+        );
+
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+        ruleSetMap.put(Rule.COLOR, EnumSet.of(Rule.Color.RED));
+
+        members.set(1, new Matcher.Submission<>(
+            members.get(1).getUser(),
+            createValidMatchSizeSet(),
+            ruleSetMap
+        ));
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> matcher.submitParty(members))
+            .withMessage("members have no ruleValue in common");
+    }
+
+
+    @Test
+    public void trySubmitParty_ReturnsDuplicate_IfMemberAlreadyExists() {
+        String user = "trySubmitParty_ReturnsDuplicate_IfMemberAlreadyExists";
+
+        assertThat(matcher.submit(
+            user + "_2",
+            createValidMatchSizeSet(),
+            createValidRuleSetMap()
+        )).isTrue();
+
+        List<Matcher.Submission<String, Rule>> members
+            = createParty(user + "_1", user + "_2");
+
+        assertThat(matcher.trySubmitParty(members))
+            .isEqualTo(SubmitResult.DUPLICATE);
+
+        assertThat(matcher.submit(
+            user + "_1",
+            createValidMatchSizeSet(),
+            createValidRuleSetMap()
+        )).isTrue();
+    }
+
+
+    @Test
+    public void cancel_CancelsWholeParty_IfMemberIsCancelled() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        assertThat(matcher.submitParty(createParty("A", "B", "C")))
+            .isTrue();
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(3);
+        assertThat(matcher.submit(
+            "B",
+            createValidMatchSizeSet(),
+            createValidRuleSetMap()
+        )).isFalse();
+
+        assertThat(matcher.cancel("B"))
+            .isTrue();
+        assertThat(matcher.getQueueSize())
+            .isZero();
+        assertThat(matcher.cancel("A"))
+            .isFalse();
+
+        assertThat(matcher.submit(
+            "B",
+            createValidMatchSizeSet(),
+            createValidRuleSetMap()
+        )).isTrue();
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfMaxQueueSizeIsLessThanOne() {
+        MatcherConfig config = MatcherConfig.builder().maxQueueSize(0).build();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, config))
+            .withMessage("maxQueueSize cannot be less than one");
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfStoreIsAlreadyInUse() {
+        QueueStore<String> store = QueueStore.onHeap();
+        new DummyMatcher<>(Rule.class, store);
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, store))
+            .withMessage("queueStore is already in use");
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfMaxWaitIsNegative() {
+        MatcherConfig config = MatcherConfig.builder()
+            .maxWait(Duration.ofSeconds(-1L))
+            .build();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, config))
+            .withMessage("maxWait cannot be negative");
+    }
+
+
     @Test
     public void cancel_ThrowsException_IfUserIsNull() {
         String user = null;
@@ -252,5 +688,425 @@ public class MatcherOperatorTests {
             .isTrue();
     }
 
-}
 
+
+    @Test
+    public void getQueueStats_CountsUsers_PerMatchSizeAndRuleValue() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+        ruleSetMap.put(Rule.COLOR, EnumSet.of(Rule.Color.RED));
+        ruleSetMap.put(Rule.FOOD, EnumSet.of(Rule.Food.피자, Rule.Food.치킨));
+
+        matcher.submit("A", new HashSet<>(Arrays.asList(2, 3)), ruleSetMap);
+        matcher.submit("B", new HashSet<>(Arrays.asList(2)), ruleSetMap);
+        matcher.submit("C", createValidMatchSizeSet(), createValidRuleSetMap());
+
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(3);
+        assertThat(matcher.getQueueSize(2))
+            .isEqualTo(2);
+        assertThat(matcher.getQueueSize(Rule.FOOD, Rule.Food.피자))
+            .isEqualTo(3);
+
+        matcher.cancel("A");
+
+        QueueStats<Rule> stats = matcher.getQueueStats();
+        assertThat(stats.getQueueSize())
+            .isEqualTo(2);
+        assertThat(stats.getMatchSizeMap())
+            .containsOnlyKeys(2, 5, 6)
+            .containsEntry(2, 1);
+        assertThat(stats.getRuleValueMap().get(Rule.COLOR))
+            .containsOnlyKeys(Rule.Color.RED, Rule.Color.BLUE);
+        assertThat(stats.getRuleValueMap().get(Rule.FOOD))
+            .containsEntry(Rule.Food.피자, 2)
+            .containsEntry(Rule.Food.치킨, 1)
+            .containsEntry(Rule.Food.고구마, 1);
+    }
+
+
+
+    @Test
+    public void getQueueStats_FoldsWildcardUsers_IntoEveryRuleValue() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+        ruleSetMap.put(Rule.COLOR, EnumSet.allOf(Rule.Color.class));
+        ruleSetMap.put(Rule.FOOD, EnumSet.of(Rule.Food.피자));
+
+        matcher.submit("A", createValidMatchSizeSet(), ruleSetMap);
+        matcher.submit("B", createValidMatchSizeSet(), ruleSetMap);
+        matcher.submit("C", createValidMatchSizeSet(), createValidRuleSetMap());
+
+        assertThat(matcher.getQueueSize(Rule.COLOR, Rule.Color.GREEN))
+            .isEqualTo(2);
+        assertThat(matcher.getQueueSize(Rule.COLOR, Rule.Color.BLUE))
+            .isEqualTo(3);
+        assertThat(matcher.getQueueSize(Rule.COLOR, "GREEN"))
+            .isZero();
+
+        matcher.cancel("A");
+
+        Map<Object, Integer> colorMap
+            = matcher.getQueueStats().getRuleValueMap().get(Rule.COLOR);
+        for (Rule.Color color : Rule.Color.values())
+            assertThat(colorMap)
+                .containsEntry(color, (color == Rule.Color.BLUE) ? 2 : 1);
+
+        matcher.cancel("B");
+
+        assertThat(matcher.getQueueStats().getRuleValueMap().get(Rule.COLOR))
+            .containsOnlyKeys(Rule.Color.BLUE);
+    }
+
+
+    @Test
+    public void estimateWait_ReturnsNull_IfNoStatisticsExist() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        assertThat(matcher.estimateWait(
+            createValidMatchSizeSet(),
+            createValidRuleSetMap()
+        )).isNull();
+    }
+
+
+    @Test
+    public void estimateWait_ReturnsWait_IfUsersWereMatched() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+        ruleSetMap.put(Rule.COLOR, EnumSet.of(Rule.Color.RED));
+        ruleSetMap.put(Rule.FOOD, EnumSet.of(Rule.Food.피자));
+
+        for (String user : Arrays.asList("A", "B", "C", "D"))
+            matcher.submit(user, new HashSet<>(Arrays.asList(2)), ruleSetMap);
+
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isZero();
+
+        Set<Integer> two = new HashSet<>(Arrays.asList(2));
+        Set<Integer> three = new HashSet<>(Arrays.asList(3));
+        Set<Integer> twoOrThree = new HashSet<>(Arrays.asList(2, 3));
+
+        assertThat(matcher.estimateWait(two, ruleSetMap))
+            .isNotNull()
+            .isGreaterThan(Duration.ZERO);
+        assertThat(matcher.estimateWait(twoOrThree, null))
+            .isNotNull()
+            .isGreaterThan(Duration.ZERO);
+
+        // 매치된 적도 등록된 적도 없는 수나 규칙 값은 예측할 수 없다.
+        assertThat(matcher.estimateWait(three, null))
+            .isNull();
+
+        ruleSetMap.put(Rule.COLOR, EnumSet.of(Rule.Color.GREEN));
+        assertThat(matcher.estimateWait(two, ruleSetMap))
+            .isNull();
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfRateDecayTimeIsNotPositive() {
+        MatcherConfig config = MatcherConfig.builder()
+            .rateDecayTime(Duration.ZERO)
+            .build();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, config))
+            .withMessage("rateDecayTime must be positive");
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfMaxSliceNodesIsLessThanOne() {
+        MatcherConfig config = MatcherConfig.builder()
+            .maxSliceNodes(0)
+            .build();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, config))
+            .withMessage("maxSliceNodes cannot be less than one");
+    }
+
+
+    @Test
+    public void run_MatchesUsers_InMultipleSlices() {
+        MatcherConfig config = MatcherConfig.builder()
+            .maxSliceNodes(1)
+            .build();
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class, config);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+
+        for (String user : Arrays.asList("A", "B", "C", "D", "E"))
+            matcher.submit(user, createValidMatchSizeSet(), ruleSetMap);
+
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isZero();
+        assertThat(matcher.getLastCycleSlices())
+            .isGreaterThan(1);
+        assertThat(matcher.getLastCycleNodes())
+            .isPositive();
+    }
+
+
+    @Test
+    public void run_RunsInOneSlice_ByDefault() {
+        // 시계를 읽을 때마다 1초씩 흐르게 하여, 시간으로 나누어 실행한다면
+        // 노드마다 조각이 나뉘도록 한다.
+        AtomicLong now = new AtomicLong();
+        MatcherConfig config = MatcherConfig.builder()
+            .scheduled(false)
+            .clock(() -> now.addAndGet(1_000_000_000L))
+            .build();
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class, config);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+
+        for (String user : Arrays.asList("A", "B", "C", "D", "E"))
+            matcher.submit(user, createValidMatchSizeSet(), ruleSetMap);
+
+        matcher.runOnce();
+
+        assertThat(config.getMaxSliceTime())
+            .isNull();
+        assertThat(matcher.getQueueSize())
+            .isZero();
+        assertThat(matcher.getLastCycleSlices())
+            .isEqualTo(1);
+    }
+
+
+    @Test
+    public void run_ExpandsEachNodeOnce_RegardlessOfMatchCount() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        Set<Integer> two = new HashSet<>(Arrays.asList(2));
+
+        // 규칙 값의 조합마다 두 명씩 등록하여 12개의 매치가 이루어지도록 한다.
+        for (Rule.Color color : Rule.Color.values())
+            for (Rule.Food food : Rule.Food.values()) {
+                EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+                ruleSetMap.put(Rule.COLOR, EnumSet.of(color));
+                ruleSetMap.put(Rule.FOOD, EnumSet.of(food));
+
+                matcher.submit(color + "/" + food + "/1", two, ruleSetMap);
+                matcher.submit(color + "/" + food + "/2", two, ruleSetMap);
+            }
+
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isZero();
+
+        // 선호하는 사용자의 수와 색깔을 펼치는 노드가 하나씩, 음식을 펼치는
+        // 노드가 색깔별로 하나씩이다.
+        assertThat(matcher.getLastCycleNodes())
+            .isEqualTo(1L + 1L + Rule.Color.values().length);
+    }
+
+
+    @Test
+    public void run_DoesNotExpandWildcards_IntoEveryRuleValue() {
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+        ruleSetMap.put(Rule.COLOR, EnumSet.allOf(Rule.Color.class));
+        ruleSetMap.put(Rule.FOOD, EnumSet.allOf(Rule.Food.class));
+
+        Set<Integer> two = new HashSet<>(Arrays.asList(2));
+        matcher.submit("A", two, ruleSetMap);
+        matcher.submit("B", two, ruleSetMap);
+
+        matcher.runOnce();
+
+        // 규칙 키마다 규칙 값의 수와 관계없이 노드 하나만 펼친다.
+        assertThat(matcher.getQueueSize())
+            .isZero();
+        assertThat(matcher.getLastCycleNodes())
+            .isEqualTo(3L);
+    }
+
+
+    @Test
+    public void runSlice_AppliesCancel_BetweenSlices() {
+        MatcherConfig config = MatcherConfig.builder()
+            .maxSliceNodes(1)
+            .build();
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class, config);
+
+        EnumMap<Rule, Set<?>> ruleSetMap = createValidRuleSetMap();
+        Set<Integer> two = new HashSet<>(Arrays.asList(2));
+
+        matcher.submit("A", two, ruleSetMap);
+        matcher.submit("B", two, ruleSetMap);
+
+        assertThat(matcher.runSlice())
+            .isFalse();
+
+        assertThat(matcher.cancel("B"))
+            .isTrue();
+
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(1);
+        assertThat(matcher.cancel("A"))
+            .isTrue();
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfClockIsNull() {
+        MatcherConfig config = MatcherConfig.builder()
+            .clock(null)
+            .build();
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new DummyMatcher<>(Rule.class, config))
+            .withMessage("clock cannot be null");
+    }
+
+
+    @Test
+    public void runOnce_ExpiresUsers_ByInjectedClock() {
+        AtomicLong now = new AtomicLong();
+        MatcherConfig config = MatcherConfig.builder()
+            .scheduled(false)
+            .clock(now::get)
+            .maxWait(Duration.ofMinutes(1L))
+            .build();
+        Matcher<String, Rule> matcher = new DummyMatcher<>(Rule.class, config);
+
+        matcher.submit("A", createValidMatchSizeSet(), createValidRuleSetMap());
+
+        now.addAndGet(Duration.ofSeconds(59L).toNanos());
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(1);
+        assertThat(matcher.getLastCycleTime())
+            .isEqualTo(Duration.ZERO);
+
+        now.addAndGet(Duration.ofSeconds(1L).toNanos());
+        matcher.runOnce();
+
+        assertThat(matcher.getQueueSize())
+            .isZero();
+    }
+
+
+
+    @Test
+    public void handoff_KeepsWaitTime_FromDrainedMatcher() {
+        AtomicLong now = new AtomicLong();
+        MatcherConfig config = MatcherConfig.builder()
+            .scheduled(false)
+            .clock(now::get)
+            .maxWait(Duration.ofMinutes(1L))
+            .build();
+        Matcher<String, Rule> source = new DummyMatcher<>(Rule.class, config);
+        Matcher<String, Rule> target = new DummyMatcher<>(Rule.class, config);
+
+        source.submit("A", createValidMatchSizeSet(), createValidRuleSetMap());
+
+        now.addAndGet(Duration.ofSeconds(50L).toNanos());
+        List<Matcher.Submission<String, Rule>> submissionList = source.drain();
+
+        assertThat(submissionList)
+            .extracting(submission -> submission.getWaitNanos())
+            .containsExactly(Duration.ofSeconds(50L).toNanos());
+
+        for (Matcher.Submission<String, Rule> submission : submissionList)
+            assertThat(target.handoff(submission))
+                .isEqualTo(SubmitResult.ACCEPTED);
+
+        now.addAndGet(Duration.ofSeconds(9L).toNanos());
+        target.runOnce();
+
+        assertThat(target.getQueueSize())
+            .isEqualTo(1);
+
+        now.addAndGet(Duration.ofSeconds(1L).toNanos());
+        target.runOnce();
+
+        assertThat(target.getQueueSize())
+            .isZero();
+    }
+
+
+    @Test
+    public void handoff_Accepts_IfQueueIsFull() {
+        Matcher<String, NoRule> matcher = new DummyMatcher<>(
+            NoRule.class,
+            MatcherConfig.builder().maxQueueSize(1).build()
+        );
+
+        assertThat(matcher.trySubmit("A", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.ACCEPTED);
+        assertThat(matcher.trySubmit("B", createValidMatchSizeSet()))
+            .isEqualTo(SubmitResult.QUEUE_FULL);
+
+        assertThat(matcher.handoff(
+            new Matcher.Submission<>("B", createValidMatchSizeSet(), null)
+        )).isEqualTo(SubmitResult.ACCEPTED);
+
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(2);
+        assertThat(matcher.cancel("B"))
+            .isTrue();
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(1);
+    }
+
+
+    @Test
+    public void handoff_PlaysExpiry_IfStoreIsFull() {
+        List<String> expiredList = new ArrayList<>();
+        Matcher<String, NoRule> matcher = new Matcher<String, NoRule>(
+            NoRule.class,
+            Duration.ofHours(1L),
+            MatcherConfig.builder().build(),
+            QueueStore.offHeap(UserCodec.ofString(16), 1)
+        ) {
+            @Override
+            protected void playMatch(
+                MatchRule<NoRule> matchRule,
+                Set<String> match
+            ) {
+            }
+
+            @Override
+            protected void playExpiry(String user) {
+                expiredList.add(user);
+            }
+        };
+
+        matcher.submit("A", createValidMatchSizeSet());
+
+        assertThat(matcher.handoff(new Matcher.Submission<>(
+            "B",
+            createValidMatchSizeSet(),
+            null,
+            Arrays.asList("B", "C"),
+            0L
+        ))).isEqualTo(SubmitResult.QUEUE_FULL);
+
+        // 이미 등록되어 있는 사용자에게는 알리지 않는다.
+        assertThat(matcher.handoff(
+            new Matcher.Submission<>("A", createValidMatchSizeSet(), null)
+        )).isEqualTo(SubmitResult.DUPLICATE);
+
+        assertThat(expiredList)
+            .containsExactly("B", "C");
+        assertThat(matcher.getQueueSize())
+            .isEqualTo(1);
+    }
+
+}
@@ -8,6 +8,7 @@ import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
 
 import okbem.br31.matcher.test.LogAssertion;
@@ -23,6 +24,7 @@ import static org.mockito.Mockito.*;
  * {@link Matcher}의 overriding 가능한 메서드를 검증하는 테스트.
  * 이 테스트가 검증하는 메서드는 다음과 같다:
  * {@link Matcher#playMatch(MatchRule, Set)},
+ * {@link Matcher#playExpiry(Object)},
  * {@link Matcher#findMatches(MatchRule, Set)}
  */
 public class MatcherOverridingTests {
@@ -166,6 +168,48 @@ public class MatcherOverridingTests {
     }
 
 
+    @Test
+    public void playExpiry_IsCalled_IfUserWaitsTooLong() {
+        Set<String> expiredSet = new ConcurrentSkipListSet<>();
+
+        TestMatcher<String, NoRule> matcher = new TestMatcher<String, NoRule>(
+            NoRule.class,
+            Duration.ofMillis(100L),
+            new CountDownLatch(1),
+            Duration.ofMillis(1000L),
+            MatcherConfig.builder().maxWait(Duration.ofMillis(500L)).build()
+        ) {
+            @Override
+            protected void playExpiry(String user) {
+                expiredSet.add(user);
+            }
+        };
+
+        matcher.submit("A", new HashSet<>(Arrays.asList(2)));
+        matcher.submit("B", new HashSet<>(Arrays.asList(3)));
+
+        assertThat(matcher.isMatched())
+            .isFalse();
+
+        assertThat(expiredSet)
+            .containsExactlyInAnyOrder("A", "B");
+
+        // 대기 시간이 초과된 사용자는 더 이상 매치되지 않는다.
+        matcher.submit("C", new HashSet<>(Arrays.asList(2)));
+
+        assertThat(matcher.isMatched(Duration.ofMillis(200L)))
+            .isFalse();
+
+        // 다시 등록된 사용자는 처음부터 대기 시간을 센다.
+        matcher.submit("A", new HashSet<>(Arrays.asList(2)));
+
+        assertThat(matcher.isMatched())
+            .isTrue();
+
+        matcher.assertMatch(new EnumMap<>(NoRule.class), 2, 1, "A", "C");
+    }
+
+
     @Test
     public void findMatches_WorksFine_IfRuleMapIsModified() {
         TestMatcher<String, Rule> matcher = new TestMatcher<String, Rule>(
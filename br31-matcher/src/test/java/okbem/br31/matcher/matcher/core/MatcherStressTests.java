@@ -0,0 +1,357 @@
+package okbem.br31.matcher.matcher.core;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.*;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * 매치 주기가 실행되는 동안 여러 스레드가 동시에 등록하고 취소할 때
+ * {@link Matcher}가 올바르게 동작하는지 검증하는 stress 테스트.
+ *
+ * 각 스레드는 한 번도 등록된 적이 없는 사용자를 등록하고, 그 중 일부를
+ * 취소한다. 매치가 이루어질 때마다 다음을 확인한다:
+ * 같은 사용자가 두 번 매치되지 않아야 하고,
+ * 취소에 성공한 사용자는 매치되지 않아야 하며,
+ * 매치에 포함된 사용자의 수는 매치 규칙과 같아야 한다.
+ *
+ * 테스트는 짧게 실행하여 위의 조건만 확인한다. 스레드의 수를 늘려 가며 1초당
+ * 처리한 요청의 수와 지연 시간의 백분위수를 측정하려면 {@link #main}을
+ * 실행하면 된다.
+ *
+ * <pre>
+ * mvn -pl br31-matcher test-compile exec:java \
+ *     -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=okbem.br31.matcher.matcher.core.MatcherStressTests
+ * </pre>
+ */
+public class MatcherStressTests {
+
+    private static enum Rule {
+        COLOR,
+        FOOD;
+
+        private static enum Color { RED, GREEN, BLUE }
+        private static enum Food { 피자, 치킨, 감자, 고구마 }
+    }
+
+
+    /**
+     * 측정할 {@link Matcher}의 동작 방식.
+     */
+    private static enum Mode {
+        UNSLICED(() -> MatcherConfig.builder().maxSliceTime(null).build(),
+            QueueStore::onHeap),
+        SLICED(() -> MatcherConfig.builder().maxSliceNodes(4).build(),
+            QueueStore::onHeap),
+        OFF_HEAP(() -> MatcherConfig.builder().build(),
+            () -> QueueStore.offHeap(UserCodec.ofLong(), 1 << 20));
+
+        private final Supplier<MatcherConfig> configFactory;
+
+        private final Supplier<QueueStore<Long>> storeFactory;
+
+        private Mode(
+            Supplier<MatcherConfig> configFactory,
+            Supplier<QueueStore<Long>> storeFactory
+        ) {
+            this.configFactory = configFactory;
+            this.storeFactory = storeFactory;
+        }
+    }
+
+
+    /**
+     * 매치가 이루어질 때마다 조건을 확인하는 {@link Matcher}.
+     */
+    private static final class StressMatcher extends Matcher<Long, Rule> {
+
+        private final Set<Long> matchedSet = ConcurrentHashMap.newKeySet();
+
+        private final Set<Long> cancelledSet = ConcurrentHashMap.newKeySet();
+
+        private final List<String> violationList
+            = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicLong matchCount = new AtomicLong();
+
+        private StressMatcher(Mode mode) {
+            super(
+                Rule.class,
+                Duration.ofMillis(1L),
+                mode.configFactory.get(),
+                mode.storeFactory.get()
+            );
+        }
+
+        @Override
+        protected void playMatch(MatchRule<Rule> matchRule, Set<Long> match) {
+            this.matchCount.incrementAndGet();
+
+            if (match.size() != matchRule.getMatchSize())
+                this.violationList.add("wrong size: " + match);
+
+            for (Long user : match) {
+                if (!this.matchedSet.add(user))
+                    this.violationList.add("matched twice: " + user);
+
+                if (this.cancelledSet.contains(user))
+                    this.violationList.add("matched after cancel: " + user);
+            }
+        }
+
+        private void cancelled(Long user) {
+            this.cancelledSet.add(user);
+
+            if (this.matchedSet.contains(user))
+                this.violationList.add("cancelled after match: " + user);
+        }
+
+    }
+
+
+    /**
+     * 한 번의 측정 결과.
+     */
+    @lombok.Value
+    private static final class Result {
+
+        private final int threadCount;
+
+        private final long operationCount;
+
+        private final long matchCount;
+
+        private final double operationsPerSecond;
+
+        // 요청 하나의 지연 시간을 마이크로초 단위로 나타낸 백분위수
+        private final double p50;
+
+        private final double p99;
+
+        private final double p999;
+
+        private final List<String> violationList;
+
+    }
+
+
+    private static final AtomicLong userIds = new AtomicLong();
+
+
+    /**
+     * 여러 스레드가 동시에 등록하고 취소하는 동안 매치를 실행한다.
+     *
+     * @param mode {@link Matcher}의 동작 방식
+     * @param threadCount 등록하고 취소하는 스레드의 수
+     * @param duration 실행 시간
+     * @return 측정 결과
+     */
+    private static Result stress(Mode mode, int threadCount, Duration duration)
+        throws InterruptedException {
+        StressMatcher matcher = new StressMatcher(mode);
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(threadCount);
+        long[][] latencies = new long[threadCount][];
+        AtomicInteger operationCount = new AtomicInteger();
+
+        for (int t = 0; t < threadCount; ++t) {
+            int index = t;
+
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    latencies[index] = produce(matcher, duration);
+                    operationCount.addAndGet(latencies[index].length);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finish.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        finish.await();
+        long elapsed = System.nanoTime() - startTime;
+
+        // 남아 있는 사용자들이 매치될 수 있도록 매치 주기를 한 번 더 실행한다.
+        matcher.shutdown();
+        matcher.runOnce();
+
+        long[] merged = Arrays.stream(latencies)
+            .flatMapToLong(Arrays::stream)
+            .sorted()
+            .toArray();
+
+        return new Result(
+            threadCount,
+            operationCount.get(),
+            matcher.matchCount.get(),
+            operationCount.get() * 1e9 / elapsed,
+            percentile(merged, 0.5),
+            percentile(merged, 0.99),
+            percentile(merged, 0.999),
+            new ArrayList<>(matcher.violationList)
+        );
+    }
+
+
+    /**
+     * 한 스레드에서 주어진 시간 동안 사용자를 등록하고 취소한다.
+     *
+     * @return 요청마다 걸린 시간(나노초)
+     */
+    private static long[] produce(StressMatcher matcher, Duration duration) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Rule.Color[] colors = Rule.Color.values();
+        Rule.Food[] foods = Rule.Food.values();
+
+        long[] latencies = new long[1 << 16];
+        int latencyCount = 0;
+        List<Long> recentList = new ArrayList<>();
+        long endTime = System.nanoTime() + duration.toNanos();
+
+        while (System.nanoTime() < endTime) {
+            long begin = System.nanoTime();
+
+            if (!recentList.isEmpty() && random.nextInt(4) == 0) {
+                int index = random.nextInt(recentList.size());
+                Long user = recentList.remove(index);
+
+                if (matcher.cancel(user))
+                    matcher.cancelled(user);
+            } else {
+                Long user = userIds.incrementAndGet();
+
+                EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+                ruleSetMap.put(Rule.COLOR, EnumSet.of(
+                    colors[random.nextInt(colors.length)]
+                ));
+                ruleSetMap.put(Rule.FOOD, (random.nextInt(4) == 0)
+                    ? EnumSet.allOf(Rule.Food.class)
+                    : EnumSet.of(foods[random.nextInt(foods.length)])
+                );
+
+                Set<Integer> matchSizeSet
+                    = Collections.singleton(2 + random.nextInt(3));
+
+                if (matcher.submit(user, matchSizeSet, ruleSetMap)) {
+                    recentList.add(user);
+                    if (recentList.size() > 64)
+                        recentList.remove(0);
+                }
+            }
+
+            if (latencyCount == latencies.length)
+                latencies = Arrays.copyOf(latencies, latencyCount * 2);
+            latencies[latencyCount++] = System.nanoTime() - begin;
+        }
+
+        return Arrays.copyOf(latencies, latencyCount);
+    }
+
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return Double.NaN;
+
+        int index = Math.min(sorted.length - 1, (int)(sorted.length * p));
+
+        return sorted[index] / 1e3;
+    }
+
+
+    @BeforeClass
+    public static void setLogLevel() {
+        Logger logger = (Logger)LoggerFactory.getLogger(Matcher.class);
+        logger.setLevel(Level.INFO);
+    }
+
+
+    @AfterClass
+    public static void resetLogLevel() {
+        Logger logger = (Logger)LoggerFactory.getLogger(Matcher.class);
+        logger.setLevel(null);
+    }
+
+
+    private static void testInvariants(Mode mode) throws InterruptedException {
+        Result result = stress(mode, 4, Duration.ofMillis(500L));
+
+        assertThat(result.getViolationList())
+            .isEmpty();
+        assertThat(result.getMatchCount())
+            .isPositive();
+    }
+
+
+    @Test
+    public void stress_KeepsInvariants_IfUnsliced() throws Exception {
+        testInvariants(Mode.UNSLICED);
+    }
+
+
+    @Test
+    public void stress_KeepsInvariants_IfSliced() throws Exception {
+        testInvariants(Mode.SLICED);
+    }
+
+
+    @Test
+    public void stress_KeepsInvariants_IfOffHeap() throws Exception {
+        testInvariants(Mode.OFF_HEAP);
+    }
+
+
+    public static void main(String[] args) throws InterruptedException {
+        setLogLevel();
+
+        System.out.printf("%-10s %7s %12s %10s %10s %10s %10s %s%n",
+            "mode", "threads", "ops/s", "matches",
+            "p50(us)", "p99(us)", "p999(us)", "violations"
+        );
+
+        for (Mode mode : Mode.values())
+            for (int threadCount = 1; threadCount <= 16; threadCount *= 2) {
+                Result result
+                    = stress(mode, threadCount, Duration.ofSeconds(3L));
+
+                System.out.printf(
+                    "%-10s %7d %12.0f %10d %10.1f %10.1f %10.1f %d%n",
+                    mode,
+                    result.getThreadCount(),
+                    result.getOperationsPerSecond(),
+                    result.getMatchCount(),
+                    result.getP50(),
+                    result.getP99(),
+                    result.getP999(),
+                    result.getViolationList().size()
+                );
+            }
+    }
+
+}
@@ -0,0 +1,210 @@
+package okbem.br31.matcher.matcher.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link QueueStore}의 구현체들을 검증하는 테스트.
+ */
+public class QueueStoreTests {
+
+    private static List<String> users(QueueStore<String> store) {
+        List<String> userList = new ArrayList<>();
+
+        for (int handle = store.first(); handle != QueueStore.NONE;
+            handle = store.next(handle))
+            userList.add(store.user(handle));
+
+        return userList;
+    }
+
+
+    private static void testInsertionOrder(QueueStore<String> store) {
+        int a = store.add("A", 0, 100L);
+        int b = store.add("B", 1, 200L);
+        int c = store.add("C", 0, 300L);
+
+        assertThat(users(store))
+            .containsExactly("A", "B", "C");
+
+        assertThat(store.find("B"))
+            .isEqualTo(b);
+        assertThat(store.profileId(b))
+            .isEqualTo(1);
+        assertThat(store.submitTime(b))
+            .isEqualTo(200L);
+
+        store.remove(b);
+
+        assertThat(store.find("B"))
+            .isEqualTo(QueueStore.NONE);
+        assertThat(users(store))
+            .containsExactly("A", "C");
+
+        store.add("D", 2, 400L);
+        store.remove(a);
+        store.remove(c);
+
+        assertThat(users(store))
+            .containsExactly("D");
+        assertThat(store.size())
+            .isEqualTo(1);
+    }
+
+
+    private static List<String> usersOfProfile(
+        QueueStore<String> store,
+        int profileId
+    ) {
+        List<String> userList = new ArrayList<>();
+
+        for (int handle = store.firstOfProfile(profileId);
+            handle != QueueStore.NONE;
+            handle = store.nextOfProfile(handle))
+            userList.add(store.user(handle));
+
+        return userList;
+    }
+
+
+    private static void testProfileOrder(QueueStore<String> store) {
+        store.add("A", 0, 0L);
+        int b = store.add("B", 1, 0L);
+        store.add("C", 0, 0L);
+        int d = store.add("D", 1, 0L);
+        store.add("E", 0, 0L);
+
+        assertThat(usersOfProfile(store, 0))
+            .containsExactly("A", "C", "E");
+        assertThat(usersOfProfile(store, 1))
+            .containsExactly("B", "D");
+        assertThat(usersOfProfile(store, 5))
+            .isEmpty();
+
+        store.remove(store.find("C"));
+        store.remove(b);
+
+        assertThat(usersOfProfile(store, 0))
+            .containsExactly("A", "E");
+        assertThat(usersOfProfile(store, 1))
+            .containsExactly("D");
+
+        store.remove(d);
+        store.add("F", 1, 0L);
+
+        assertThat(usersOfProfile(store, 1))
+            .containsExactly("F");
+    }
+
+
+    private static void testRandomOperations(QueueStore<String> store) {
+        Random random = new Random(31L);
+        Map<String, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; ++i) {
+            String user = "user" + random.nextInt(2_000);
+            int handle = store.find(user);
+
+            if (expected.containsKey(user)) {
+                assertThat(handle)
+                    .isNotEqualTo(QueueStore.NONE);
+                assertThat(store.profileId(handle))
+                    .isEqualTo(expected.get(user));
+
+                store.remove(handle);
+                expected.remove(user);
+            } else {
+                assertThat(handle)
+                    .isEqualTo(QueueStore.NONE);
+
+                store.add(user, i, i);
+                expected.put(user, i);
+            }
+        }
+
+        assertThat(store.size())
+            .isEqualTo(expected.size());
+        assertThat(users(store))
+            .containsOnlyElementsOf(expected.keySet())
+            .hasSameSizeAs(expected.keySet());
+    }
+
+
+    @Test
+    public void onHeap_KeepsInsertionOrder() {
+        testInsertionOrder(QueueStore.onHeap());
+    }
+
+
+    @Test
+    public void offHeap_KeepsInsertionOrder() {
+        testInsertionOrder(QueueStore.offHeap(UserCodec.ofString(8), 4));
+    }
+
+
+    @Test
+    public void onHeap_KeepsInsertionOrderPerProfile() {
+        testProfileOrder(QueueStore.onHeap());
+    }
+
+
+    @Test
+    public void offHeap_KeepsInsertionOrderPerProfile() {
+        testProfileOrder(QueueStore.offHeap(UserCodec.ofString(8), 8));
+    }
+
+
+    @Test
+    public void onHeap_FindsUsers_AfterRandomOperations() {
+        testRandomOperations(QueueStore.onHeap());
+    }
+
+
+    @Test
+    public void offHeap_FindsUsers_AfterRandomOperations() {
+        testRandomOperations(QueueStore.offHeap(UserCodec.ofString(16), 2_000));
+    }
+
+
+    @Test
+    public void offHeap_IsFull_IfCapacityIsReached() {
+        QueueStore<Long> store = QueueStore.offHeap(UserCodec.ofLong(), 2);
+
+        store.add(1L, 0, 0L);
+        assertThat(store.isFull())
+            .isFalse();
+
+        store.add(2L, 0, 0L);
+        assertThat(store.isFull())
+            .isTrue();
+
+        store.remove(store.find(1L));
+        assertThat(store.isFull())
+            .isFalse();
+    }
+
+
+    @Test
+    public void offHeap_ThrowsException_IfUserIsTooLarge() {
+        QueueStore<String> store = QueueStore.offHeap(UserCodec.ofString(4), 4);
+
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> store.add("ABCDE", 0, 0L));
+    }
+
+
+    @Test
+    public void offHeap_ThrowsException_IfCapacityIsLessThanOne() {
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> QueueStore.offHeap(UserCodec.ofLong(), 0));
+    }
+
+}
@@ -39,6 +39,14 @@ public class TestMatcher<U, R extends Enum<R>> extends Matcher<U, R> {
     private final Duration defaultTimeout;
 
 
+    /**
+     * 매치 주기가 자동으로 실행되는지 여부.
+     * {@code false}이면 매치 횟수를 확인할 때 기다리는 대신 매치 주기를 직접
+     * 한 번 실행한다.
+     */
+    private final boolean scheduled;
+
+
     /**
      * 매치 결과를 저장하기 위한 자료 구조.
      */
@@ -60,10 +68,93 @@ public class TestMatcher<U, R extends Enum<R>> extends Matcher<U, R> {
         CountDownLatch latch,
         Duration defaultTimeout
     ) {
-        super(ruleKeyType, delay);
+        this(
+            ruleKeyType,
+            delay,
+            latch,
+            defaultTimeout,
+            MatcherConfig.builder().build()
+        );
+    }
+
+
+    /**
+     * {@code TestMatcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param latch 예상되는 매치 횟수
+     * @param defaultTimeout 매치 횟수를 확인하기 전에 대기해야 하는 최대 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     */
+    public TestMatcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        CountDownLatch latch,
+        Duration defaultTimeout,
+        MatcherConfig config
+    ) {
+        this(
+            ruleKeyType,
+            delay,
+            latch,
+            defaultTimeout,
+            config,
+            QueueStore.onHeap()
+        );
+    }
+
+
+    /**
+     * {@code TestMatcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param latch 예상되는 매치 횟수
+     * @param defaultTimeout 매치 횟수를 확인하기 전에 대기해야 하는 최대 시간
+     * @param store 등록된 사용자들을 저장할 자료 구조
+     */
+    public TestMatcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        CountDownLatch latch,
+        Duration defaultTimeout,
+        QueueStore<U> store
+    ) {
+        this(
+            ruleKeyType,
+            delay,
+            latch,
+            defaultTimeout,
+            MatcherConfig.builder().build(),
+            store
+        );
+    }
+
+
+    /**
+     * {@code TestMatcher} 인스턴스를 생성한다.
+     *
+     * @param ruleKeyType 규칙 타입의 클래스 객체
+     * @param delay 매 주기마다 추가되는 지연 시간
+     * @param latch 예상되는 매치 횟수
+     * @param defaultTimeout 매치 횟수를 확인하기 전에 대기해야 하는 최대 시간
+     * @param config {@code Matcher}의 동작 방식을 지정하는 설정
+     * @param store 등록된 사용자들을 저장할 자료 구조
+     */
+    public TestMatcher(
+        Class<R> ruleKeyType,
+        Duration delay,
+        CountDownLatch latch,
+        Duration defaultTimeout,
+        MatcherConfig config,
+        QueueStore<U> store
+    ) {
+        super(ruleKeyType, delay, config, store);
 
         this.latch = latch;
         this.defaultTimeout = defaultTimeout;
+        this.scheduled = config.isScheduled();
 
         this.matchResult = new HashMap<>();
     }
@@ -104,12 +195,20 @@ public class TestMatcher<U, R extends Enum<R>> extends Matcher<U, R> {
      * 예상되는 횟수만큼 매치되었는지 확인한다.
      * 매치 횟수를 확인하기 전에 매치가 충분히 일어나게 하기 위해서 일정 시간을
      * 기다린다. 얼마나 대기해야 하는지는 {@code timeout} 값으로 지정할 수 있다.
+     * 매치 주기가 자동으로 실행되지 않으면 기다리지 않고 매치 주기를 한 번
+     * 실행한 다음 곧바로 확인한다.
      *
      * @param timeout 매치 횟수를 확인하기 전에 대기해야 하는 최대 시간
      * @return 예상되는 횟수만큼 매치되었으면 {@code true},
      *         그만큼 매치되지 않았으면 {@code false}
      */
     public final boolean isMatched(Duration timeout) {
+        if (!this.scheduled) {
+            this.runOnce();
+
+            return (this.latch.getCount() == 0L);
+        }
+
         try {
             return this.latch.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
@@ -0,0 +1,277 @@
+package okbem.br31.matcher.matcher.event;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okbem.br31.matcher.matcher.core.MatcherConfig;
+import okbem.br31.matcher.matcher.core.QueueStore;
+
+import org.junit.*;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link PublishingMatcher}가 구독자의 요청에 맞춰 이벤트를 발행하는지 검증하는
+ * 테스트.
+ */
+public class PublishingMatcherTests {
+
+    private static enum Rule {
+        COLOR;
+
+        private static enum Color { RED, GREEN, BLUE }
+    }
+
+
+    /**
+     * 받은 이벤트들을 저장하는 구독자.
+     */
+    private static class TestSubscriber
+        implements Subscriber<MatchEvent<String, Rule>> {
+
+        private final BlockingQueue<MatchEvent<String, Rule>> eventQueue
+            = new LinkedBlockingQueue<>();
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private volatile Subscription subscription;
+
+        private volatile Throwable error;
+
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+
+        @Override
+        public void onNext(MatchEvent<String, Rule> event) {
+            this.eventQueue.add(event);
+        }
+
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            this.completed.countDown();
+        }
+
+
+        @Override
+        public void onComplete() {
+            this.completed.countDown();
+        }
+
+
+        MatchEvent<String, Rule> poll() throws InterruptedException {
+            return this.eventQueue.poll(1000L, TimeUnit.MILLISECONDS);
+        }
+
+
+        boolean isCompleted() throws InterruptedException {
+            return this.completed.await(1000L, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+
+    private PublishingMatcher<String, Rule> matcher;
+
+
+    private void initMatcher(MatcherConfig config) {
+        this.matcher = new PublishingMatcher<>(
+            Rule.class,
+            Duration.ofMillis(10L),
+            config,
+            QueueStore.onHeap(),
+            Runnable::run
+        );
+    }
+
+
+    @Before
+    public void initMatcher() {
+        this.initMatcher(MatcherConfig.builder().build());
+    }
+
+
+    @After
+    public void closeMatcher() {
+        this.matcher.close();
+    }
+
+
+    private void submit(String user) {
+        EnumMap<Rule, Set<?>> ruleSetMap = new EnumMap<>(Rule.class);
+        ruleSetMap.put(Rule.COLOR, EnumSet.of(Rule.Color.BLUE));
+
+        assertThat(this.matcher.submit(
+            user,
+            Collections.singleton(2),
+            ruleSetMap
+        )).isTrue();
+    }
+
+
+    @Test
+    public void subscribe_KeepsUsersQueued_WhileNoDemand() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        this.matcher.subscribe(subscriber);
+
+        this.submit("A");
+        this.submit("B");
+        this.submit("C");
+        this.submit("D");
+
+        Thread.sleep(300L);
+        assertThat(subscriber.eventQueue)
+            .isEmpty();
+
+        subscriber.subscription.request(1L);
+
+        MatchEvent<String, Rule> event1 = subscriber.poll();
+        assertThat(event1.getType())
+            .isEqualTo(MatchEvent.Type.MATCH);
+        assertThat(event1.getMatchSize())
+            .isEqualTo(2);
+        assertThat(event1.getRuleMap())
+            .containsEntry(Rule.COLOR, Rule.Color.BLUE);
+
+        Thread.sleep(300L);
+        assertThat(subscriber.eventQueue)
+            .isEmpty();
+
+        subscriber.subscription.request(1L);
+
+        MatchEvent<String, Rule> event2 = subscriber.poll();
+        assertThat(event2.getType())
+            .isEqualTo(MatchEvent.Type.MATCH);
+
+        Set<String> userSet = new HashSet<>(event1.getUsers());
+        userSet.addAll(event2.getUsers());
+        assertThat(userSet)
+            .containsOnly("A", "B", "C", "D");
+    }
+
+
+    @Test
+    public void subscribe_DeliversSameEvents_ToMultipleSubscribers()
+        throws Exception {
+        TestSubscriber subscriber1 = new TestSubscriber();
+        TestSubscriber subscriber2 = new TestSubscriber();
+        this.matcher.subscribe(subscriber1);
+        this.matcher.subscribe(subscriber2);
+
+        assertThat(this.matcher.getSubscriberCount())
+            .isEqualTo(2);
+
+        subscriber1.subscription.request(Long.MAX_VALUE);
+
+        this.submit("A");
+        this.submit("B");
+
+        // 요청하지 않은 구독자가 있으면 매치하지 않는다.
+        Thread.sleep(300L);
+        assertThat(subscriber1.eventQueue)
+            .isEmpty();
+
+        subscriber2.subscription.request(1L);
+
+        MatchEvent<String, Rule> event1 = subscriber1.poll();
+        MatchEvent<String, Rule> event2 = subscriber2.poll();
+        assertThat(event1)
+            .isNotNull()
+            .isSameAs(event2);
+        assertThat(event1.getUsers())
+            .containsOnly("A", "B");
+    }
+
+
+    @Test
+    public void cancel_PublishesCancelEvent() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        this.matcher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        this.submit("A");
+        assertThat(this.matcher.cancel("A"))
+            .isTrue();
+
+        MatchEvent<String, Rule> event = subscriber.poll();
+        assertThat(event.getType())
+            .isEqualTo(MatchEvent.Type.CANCEL);
+        assertThat(event.getUsers())
+            .containsOnly("A");
+        assertThat(event.getRuleMap())
+            .isNull();
+    }
+
+
+    @Test
+    public void subscribe_PublishesExpiryEvent() throws Exception {
+        this.matcher.close();
+        this.initMatcher(
+            MatcherConfig.builder().maxWait(Duration.ofMillis(100L)).build()
+        );
+
+        TestSubscriber subscriber = new TestSubscriber();
+        this.matcher.subscribe(subscriber);
+
+        this.submit("A");
+
+        Thread.sleep(300L);
+        assertThat(subscriber.eventQueue)
+            .isEmpty();
+
+        subscriber.subscription.request(1L);
+
+        MatchEvent<String, Rule> event = subscriber.poll();
+        assertThat(event.getType())
+            .isEqualTo(MatchEvent.Type.EXPIRY);
+        assertThat(event.getUsers())
+            .containsOnly("A");
+    }
+
+
+    @Test
+    public void request_SignalsError_IfNIsNotPositive() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        this.matcher.subscribe(subscriber);
+
+        subscriber.subscription.request(0L);
+
+        assertThat(subscriber.isCompleted())
+            .isTrue();
+        assertThat(subscriber.error)
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(this.matcher.getSubscriberCount())
+            .isZero();
+    }
+
+
+    @Test
+    public void close_CompletesSubscribers() throws Exception {
+        TestSubscriber subscriber = new TestSubscriber();
+        this.matcher.subscribe(subscriber);
+
+        this.matcher.close();
+
+        assertThat(subscriber.isCompleted())
+            .isTrue();
+        assertThat(subscriber.error)
+            .isNull();
+    }
+
+}
@@ -0,0 +1,167 @@
+package okbem.br31.matcher.util.jwt;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link JwtVerifier}가 ES256으로 서명된 토큰을 {@code kid} 헤더의 키로
+ * 검증하는지 확인하는 테스트.
+ */
+public class JwtVerifierTests {
+
+    /**
+     * br31-server의 {@code JwtManager}가 ES256으로 발급한 토큰의 공개 키.
+     */
+    private static final String SERVER_PUBLIC_KEY
+        = "MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEFnrZx1jJbcRbdObLkBDJffm8wvd0"
+        + "Fsf3F62xpqqEHeSxseOke48vO6VQlGH6K9EhYSywUq3vIF/KLX6WMmqgEg==";
+
+
+    /**
+     * br31-server의 {@code JwtManager}가 {@code server-1} 키로 발급한 alice의
+     * 토큰. 2106년에 만료된다.
+     */
+    private static final String SERVER_TOKEN
+        = "eyJraWQiOiJzZXJ2ZXItMSIsInR5cCI6IkpXVCIsImFsZyI6IkVTMjU2In0"
+        + ".eyJyZXYiOjAsInJvbGUiOlsiVVNFUiJdLCJpc3MiOiJicjMxIiwiZXhwIjo0MzE1"
+        + "MjQwNDUxLCJ1c2VyIjoiYWxpY2UifQ"
+        + ".n3SW17uDjhUrkLkKgxyGjDeXzdn2441gdjDRscFvWyP1hDgkIXu_Iip69Ta6Zqdm"
+        + "2s7_bNfIipLUo4XB0PGZSg";
+
+
+    private KeyPair keyPair1;
+
+
+    private KeyPair keyPair2;
+
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        this.keyPair1 = generator.generateKeyPair();
+        this.keyPair2 = generator.generateKeyPair();
+    }
+
+
+    private static String encode(KeyPair keyPair) {
+        return Base64.getEncoder()
+            .encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+
+    private static String sign(String issuer, String keyId, KeyPair keyPair) {
+        return JWT.create()
+            .withIssuer(issuer)
+            .withKeyId(keyId)
+            .withClaim("user", "alice")
+            .withExpiresAt(Date.from(Instant.now().plus(Duration.ofHours(1))))
+            .sign(Algorithm.ECDSA256(
+                null,
+                (ECPrivateKey)keyPair.getPrivate()
+            ));
+    }
+
+
+    @Test
+    public void verify_PicksPublicKey_ByKeyId() {
+        JwtVerifier verifier = new JwtVerifier(
+            "br31",
+            "k1=" + encode(this.keyPair1) + ", k2=" + encode(this.keyPair2)
+        );
+
+        DecodedJWT jwt1 = verifier.verify(sign("br31", "k1", this.keyPair1));
+        DecodedJWT jwt2 = verifier.verify(sign("br31", "k2", this.keyPair2));
+
+        assertThat(jwt1.getAlgorithm())
+            .isEqualTo("ES256");
+        assertThat(jwt1.getKeyId())
+            .isEqualTo("k1");
+        assertThat(jwt2.getKeyId())
+            .isEqualTo("k2");
+        assertThat(jwt2.getClaim("user").asString())
+            .isEqualTo("alice");
+    }
+
+
+    @Test
+    public void verify_ThrowsException_IfKeyIdIsUnknown() {
+        JwtVerifier verifier = new JwtVerifier(
+            "br31",
+            "k1=" + encode(this.keyPair1)
+        );
+
+        assertThatExceptionOfType(JWTVerificationException.class)
+            .isThrownBy(() -> verifier.verify(
+                sign("br31", "k2", this.keyPair2)
+            ))
+            .withMessage("Unknown key id: k2");
+    }
+
+
+    @Test
+    public void verify_ThrowsException_IfSignedWithAnotherKey() {
+        JwtVerifier verifier = new JwtVerifier(
+            "br31",
+            "k1=" + encode(this.keyPair1)
+        );
+
+        assertThatExceptionOfType(JWTVerificationException.class)
+            .isThrownBy(() -> verifier.verify(
+                sign("br31", "k1", this.keyPair2)
+            ));
+    }
+
+
+    @Test
+    public void verify_ThrowsException_IfIssuerIsDifferent() {
+        JwtVerifier verifier = new JwtVerifier(
+            "br31",
+            "k1=" + encode(this.keyPair1)
+        );
+
+        assertThatExceptionOfType(JWTVerificationException.class)
+            .isThrownBy(() -> verifier.verify(
+                sign("other", "k1", this.keyPair1)
+            ));
+    }
+
+
+    @Test
+    public void verify_AcceptsToken_IssuedByServer() {
+        JwtVerifier verifier = new JwtVerifier(
+            "br31",
+            "server-1=" + SERVER_PUBLIC_KEY
+        );
+
+        DecodedJWT jwt = verifier.verify(SERVER_TOKEN);
+
+        assertThat(jwt.getKeyId())
+            .isEqualTo("server-1");
+        assertThat(jwt.getClaim("user").asString())
+            .isEqualTo("alice");
+        assertThat(jwt.getClaim("role").asArray(String.class))
+            .containsExactly("USER");
+        assertThat(jwt.getClaim("rev").asLong())
+            .isEqualTo(0L);
+    }
+
+}
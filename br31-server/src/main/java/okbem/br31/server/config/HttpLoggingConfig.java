@@ -7,6 +7,7 @@ import javax.servlet.DispatcherType;
 
 import okbem.br31.server.util.httplog.HttpLoggingFilter;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,14 +17,20 @@ import org.springframework.context.annotation.Configuration;
 public class HttpLoggingConfig {
 
     @Bean
-    public FilterRegistrationBean<HttpLoggingFilter> httpLoggingFilter() {
+    public FilterRegistrationBean<HttpLoggingFilter> httpLoggingFilter(
+        @Value("${httplog.max-body-size}") int maxBodySize,
+        @Value("${httplog.sample-rate}") int sampleRate
+    ) {
         FilterRegistrationBean<HttpLoggingFilter> filterRegistrationBean
             = new FilterRegistrationBean<>();
 
-        filterRegistrationBean.setFilter(new HttpLoggingFilter());
+        filterRegistrationBean.setFilter(new HttpLoggingFilter(
+            maxBodySize,
+            sampleRate
+        ));
         filterRegistrationBean.addUrlPatterns("/*");
         filterRegistrationBean.setDispatcherTypes(
-            EnumSet.allOf(DispatcherType.class)
+            EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC)
         );
 
         return filterRegistrationBean;
@@ -0,0 +1,42 @@
+package okbem.br31.server.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+
+@Configuration
+public class LoginExecutorConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor loginExecutor(
+        @Value("${login.executor.pool-size}") int poolSize,
+        @Value("${login.executor.queue-capacity}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("login-");
+
+        return executor;
+    }
+
+
+    @Lazy
+    @Bean(name = {
+        TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+        "taskExecutor"
+    })
+    public ThreadPoolTaskExecutor applicationTaskExecutor(
+        TaskExecutorBuilder builder
+    ) {
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,34 @@
+package okbem.br31.server.config;
+
+import okbem.br31.server.util.ratelimit.StripedRateLimiter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+@Configuration
+public class RateLimitConfig {
+
+    @Value("${ratelimit.stripes}")
+    private int stripeCount;
+
+
+    @Bean
+    public StripedRateLimiter loginRateLimiter(
+        @Value("${ratelimit.login.rate}") double rate,
+        @Value("${ratelimit.login.burst}") int burst
+    ) {
+        return new StripedRateLimiter(rate, burst, this.stripeCount);
+    }
+
+
+    @Bean
+    public StripedRateLimiter tokenFailureRateLimiter(
+        @Value("${ratelimit.token-failure.rate}") double rate,
+        @Value("${ratelimit.token-failure.burst}") int burst
+    ) {
+        return new StripedRateLimiter(rate, burst, this.stripeCount);
+    }
+
+}
@@ -0,0 +1,20 @@
+package okbem.br31.server.config;
+
+import okbem.br31.server.security.LocalRevisionTransport;
+import okbem.br31.server.security.RevisionTransport;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+@Configuration
+public class RevisionTransportConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(RevisionTransport.class)
+    public RevisionTransport revisionTransport() {
+        return new LocalRevisionTransport();
+    }
+
+}
@@ -54,6 +54,9 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
             )
             .authorizeRequests()
                 .antMatchers("/login").permitAll()
+                .antMatchers("/refresh").authenticated()
+                .antMatchers("/revoke").authenticated()
+                .antMatchers("/revoke/*").hasRole("ADMIN")
                 .anyRequest().denyAll()
                 ;
     }
@@ -1,7 +1,15 @@
 
 package okbem.br31.server.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Resource;
 import javax.servlet.FilterChain;
@@ -9,6 +17,11 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import okbem.br31.server.util.ratelimit.StripedRateLimiter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -26,6 +39,52 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtManager jwtManager;
 
 
+    @Resource
+    private StripedRateLimiter tokenFailureRateLimiter;
+
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+
+    @Value("${ratelimit.token-failure.log-interval}")
+    private Duration logInterval;
+
+
+    // <reason: String, count: LongAdder>
+    private final ConcurrentHashMap<String, LongAdder> failureCountMap
+        = new ConcurrentHashMap<>();
+
+
+    private final AtomicLong lastLogTime = new AtomicLong(System.nanoTime());
+
+
+    private void countFailure(String reason) {
+        this.failureCountMap
+            .computeIfAbsent(reason, k -> new LongAdder())
+            .increment();
+
+        this.meterRegistry.counter("jwt.rejected", "reason", reason)
+            .increment();
+
+        long now = System.nanoTime();
+        long last = this.lastLogTime.get();
+        if (now - last < this.logInterval.toNanos()
+            || !this.lastLogTime.compareAndSet(last, now))
+            return;
+
+        Map<String, Long> countMap = new TreeMap<>();
+        this.failureCountMap.forEach((k, v) ->
+            countMap.put(k, v.sumThenReset())
+        );
+
+        logger.warn("Rejected tokens in the last {}: {}",
+            Duration.ofNanos(now - last),
+            countMap
+        );
+    }
+
+
     @Override
     protected void doFilterInternal(
         HttpServletRequest request,
@@ -42,18 +101,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         token = token.substring(bearer.length());
 
+        String client = request.getRemoteAddr();
+        if (!this.tokenFailureRateLimiter.canAcquire(client)) {
+            this.countFailure("RateLimited");
+
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+
         try {
             UserDetails userDetails = this.jwtManager.decode(token);
 
             SecurityContextHolder.getContext().setAuthentication(
                 new UsernamePasswordAuthenticationToken(
                     userDetails,
-                    null,
+                    token,
                     userDetails.getAuthorities()
                 )
             );
         } catch (RuntimeException e) {
-            logger.warn("Failed to verify token: {} ({})", token, e.toString());
+            this.tokenFailureRateLimiter.tryAcquire(client);
+            this.countFailure(e.getClass().getSimpleName());
 
             response.setStatus(HttpServletResponse.SC_FORBIDDEN);
             return;
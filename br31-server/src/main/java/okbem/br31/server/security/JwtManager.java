@@ -9,6 +9,13 @@ import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.exceptions.TokenExpiredException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -17,6 +24,7 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 
 
@@ -26,6 +34,54 @@ public class JwtManager {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
 
+    @lombok.Value
+    private static final class VerifiedToken {
+
+        private final String user;
+        private final Long revision;
+        private final long expiresAt;
+        private final UserDetails userDetails;
+
+    }
+
+
+    private static final class VerifiedTokenExpiry
+        implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(
+            String key,
+            VerifiedToken value,
+            long currentTime
+        ) {
+            long millis = value.getExpiresAt() - System.currentTimeMillis();
+
+            return Duration.ofMillis(Math.max(millis, 0L)).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(
+            String key,
+            VerifiedToken value,
+            long currentTime,
+            long currentDuration
+        ) {
+            return this.expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+            String key,
+            VerifiedToken value,
+            long currentTime,
+            long currentDuration
+        ) {
+            return currentDuration;
+        }
+
+    }
+
+
     private final String issuer;
 
 
@@ -41,15 +97,50 @@ public class JwtManager {
     private final UserAuthService userAuthService;
 
 
+    private final RevocationIndex revocationIndex;
+
+
+    // <token: String, verifiedToken: VerifiedToken>
+    private final Cache<String, VerifiedToken> verifiedTokenCache;
+
+
+    private final Timer verifyTimer;
+
+
     public JwtManager(
         @Value("${jwt.issuer}") String issuer,
-        @Value("${jwt.secret}") String secret,
+        @Value("${jwt.algorithm}") String algorithm,
+        @Value("${jwt.secret:}") String secret,
+        @Value("${jwt.key-id:}") String keyId,
+        @Value("${jwt.private-key:}") String privateKey,
+        @Value("${jwt.public-keys:}") String publicKeys,
         @Value("${jwt.expiration}") Duration expiration,
-        UserAuthService userAuthService
+        @Value("${caffeine.spec.verified-token}") String spec,
+        UserAuthService userAuthService,
+        RevocationIndex revocationIndex,
+        MeterRegistry meterRegistry
     ) {
         this.issuer = issuer;
 
-        this.algorithm = Algorithm.HMAC512(secret);
+        switch (algorithm.trim().toUpperCase()) {
+        case "HS512":
+            this.algorithm = Algorithm.HMAC512(secret);
+            break;
+
+        case "ES256":
+            this.algorithm = Algorithm.ECDSA256(
+                new LocalEcdsaKeyProvider(publicKeys, keyId, privateKey)
+            );
+            break;
+
+        default:
+            throw new IllegalArgumentException(
+                "Invalid algorithm: " +
+                algorithm + ". " +
+                "The following algorithms are currently available: " +
+                "HS512, ES256"
+            );
+        }
 
         this.jwtVerifier = JWT.require(this.algorithm)
             .withIssuer(this.issuer)
@@ -59,22 +150,51 @@ public class JwtManager {
 
         this.userAuthService = userAuthService;
 
-        logger.info("issuer={}, algorithm={}, expiration={}",
+        this.revocationIndex = revocationIndex;
+
+        this.verifiedTokenCache = Caffeine.from(spec)
+            .expireAfter(new VerifiedTokenExpiry())
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(
+            meterRegistry,
+            this.verifiedTokenCache,
+            "verifiedTokenCache"
+        );
+
+        this.verifyTimer = Timer.builder("jwt.verify")
+            .description("Time spent verifying token signatures and claims")
+            .register(meterRegistry);
+
+        logger.info("issuer={}, algorithm={}, keyId={}, expiration={}, spec={}",
             this.issuer,
             this.algorithm,
-            this.expiration
+            this.algorithm.getSigningKeyId(),
+            this.expiration,
+            spec
         );
     }
 
 
     public String encode(UserDetails userDetails) throws JWTCreationException {
+        Long rev = this.userAuthService
+            .getUserRevisionFromCache(userDetails.getUsername());
+
+        return this.encode(userDetails, rev);
+    }
+
+
+    private String encode(
+        UserDetails userDetails,
+        Long rev
+    ) throws JWTCreationException {
         Date exp = Date.from(Instant.now().plus(this.expiration));
         String user = userDetails.getUsername();
         String[] role = userDetails.getAuthorities().stream()
             .map(auth -> auth.getAuthority().replace("ROLE_", ""))
             .collect(Collectors.toList())
             .toArray(new String[0]);
-        Long rev = this.userAuthService.getUserRevisionFromCache(user);
 
         if (rev == null)
             rev = -1L;
@@ -90,11 +210,82 @@ public class JwtManager {
 
 
     public UserDetails decode(String token) throws JWTVerificationException {
+        return this.validate(token).getUserDetails();
+    }
+
+
+    public String refresh(String token) throws JWTVerificationException {
+        VerifiedToken verifiedToken = this.validate(token);
+        String user = verifiedToken.getUser();
+
+        UserDetails userDetails;
+        try {
+            userDetails = this.userAuthService.loadUserByUsername(user);
+        } catch (UsernameNotFoundException e) {
+            throw new InvalidClaimException("user=" + user);
+        }
+
+        Long revision = this.userAuthService.getUserRevisionFromCache(user);
+
+        if (revision == null || verifiedToken.getRevision() < revision)
+            throw new TokenExpiredException(String.format(
+                "rev=%s, revision=%s",
+                verifiedToken.getRevision(),
+                revision
+            ));
+
+        return this.encode(userDetails, revision);
+    }
+
+
+    private VerifiedToken validate(
+        String token
+    ) throws JWTVerificationException {
+        VerifiedToken verifiedToken
+            = this.verifiedTokenCache.getIfPresent(token);
+
+        if (verifiedToken == null) {
+            verifiedToken = this.verifyTimer.record(() -> this.verify(token));
+
+            if (verifiedToken.getExpiresAt() != Long.MAX_VALUE)
+                this.verifiedTokenCache.put(token, verifiedToken);
+        }
+
+        Long minRequiredRevision
+            = this.getMinRequiredRevision(verifiedToken.getUser());
+
+        if (minRequiredRevision == null
+            || verifiedToken.getRevision() < minRequiredRevision)
+            throw new TokenExpiredException(String.format(
+                "rev=%s, minRequiredRevision=%s",
+                verifiedToken.getRevision(),
+                minRequiredRevision
+            ));
+
+        return verifiedToken;
+    }
+
+
+    private Long getMinRequiredRevision(String user) {
+        long minRevision = this.revocationIndex.getMinRevision(user);
+        if (minRevision != RevocationIndex.ABSENT)
+            return minRevision;
+
+        Long revision = this.userAuthService.getUserRevisionFromCache(user);
+        if (revision != null && revision > 0L)
+            this.revocationIndex.raise(user, revision);
+
+        return revision;
+    }
+
+
+    private VerifiedToken verify(String token) throws JWTVerificationException {
         DecodedJWT jwt = this.jwtVerifier.verify(token);
 
         String user = jwt.getClaim("user").asString();
         String[] role = jwt.getClaim("role").asArray(String.class);
         Long rev = jwt.getClaim("rev").asLong();
+        Date exp = jwt.getExpiresAt();
 
         if (user == null || role == null || role.length == 0 || rev == null)
             throw new InvalidClaimException(String.format(
@@ -104,22 +295,16 @@ public class JwtManager {
                 rev
             ));
 
-        Long minRequiredRevision
-            = this.userAuthService.getUserRevisionFromCache(user);
-
-        if (minRequiredRevision == null || rev < minRequiredRevision)
-            throw new TokenExpiredException(String.format(
-                "rev=%s, minRequiredRevision=%s",
-                rev,
-                minRequiredRevision
-            ));
-
-        return org.springframework.security.core.userdetails.User
-            .withUsername(user)
-            .password("")
-            .roles(role)
-            .build();
+        return new VerifiedToken(
+            user,
+            rev,
+            (exp == null) ? Long.MAX_VALUE : exp.getTime(),
+            org.springframework.security.core.userdetails.User
+                .withUsername(user)
+                .password("")
+                .roles(role)
+                .build()
+        );
     }
 
 }
-
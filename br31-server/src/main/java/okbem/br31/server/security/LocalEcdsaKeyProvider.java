@@ -0,0 +1,115 @@
+package okbem.br31.server.security;
+
+import com.auth0.jwt.interfaces.ECDSAKeyProvider;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+public class LocalEcdsaKeyProvider implements ECDSAKeyProvider {
+
+    // <keyId: String, publicKey: ECPublicKey>
+    private final Map<String, ECPublicKey> publicKeyMap;
+
+
+    private final String privateKeyId;
+
+
+    private final ECPrivateKey privateKey;
+
+
+    public LocalEcdsaKeyProvider(
+        String publicKeys,
+        String privateKeyId,
+        String privateKey
+    ) {
+        this.publicKeyMap = parsePublicKeys(publicKeys);
+
+        if (!this.publicKeyMap.containsKey(privateKeyId))
+            throw new IllegalArgumentException(
+                "No public key is given for the signing key: " + privateKeyId
+            );
+
+        this.privateKeyId = privateKeyId;
+        this.privateKey = parsePrivateKey(privateKey);
+    }
+
+
+    private static Map<String, ECPublicKey> parsePublicKeys(String keys) {
+        Map<String, ECPublicKey> publicKeyMap = new TreeMap<>();
+
+        for (String key : keys.split(",")) {
+            key = key.trim();
+            if (key.isEmpty())
+                continue;
+
+            int i = key.indexOf('=');
+            if (i <= 0 || i == key.length() - 1)
+                throw new IllegalArgumentException(
+                    "Invalid public key: " + key + ". " +
+                    "The following format is currently available: " +
+                    "keyId=base64(X.509)"
+                );
+
+            try {
+                byte[] encoded = Base64.getDecoder().decode(
+                    key.substring(i + 1).trim()
+                );
+
+                publicKeyMap.put(
+                    key.substring(0, i).trim(),
+                    (ECPublicKey)KeyFactory.getInstance("EC").generatePublic(
+                        new X509EncodedKeySpec(encoded)
+                    )
+                );
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(
+                    "Invalid public key: " + key.substring(0, i),
+                    e
+                );
+            }
+        }
+
+        return Collections.unmodifiableMap(publicKeyMap);
+    }
+
+
+    private static ECPrivateKey parsePrivateKey(String key) {
+        try {
+            byte[] encoded = Base64.getDecoder().decode(key.trim());
+
+            return (ECPrivateKey)KeyFactory.getInstance("EC").generatePrivate(
+                new PKCS8EncodedKeySpec(encoded)
+            );
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid private key", e);
+        }
+    }
+
+
+    @Override
+    public ECPublicKey getPublicKeyById(String keyId) {
+        return this.publicKeyMap.get(keyId);
+    }
+
+
+    @Override
+    public ECPrivateKey getPrivateKey() {
+        return this.privateKey;
+    }
+
+
+    @Override
+    public String getPrivateKeyId() {
+        return this.privateKeyId;
+    }
+
+}
@@ -0,0 +1,26 @@
+package okbem.br31.server.security;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+
+public class LocalRevisionTransport implements RevisionTransport {
+
+    private final List<Consumer<RevisionEvent>> subscriberList
+        = new CopyOnWriteArrayList<>();
+
+
+    @Override
+    public void publish(RevisionEvent event) {
+        for (Consumer<RevisionEvent> subscriber : this.subscriberList)
+            subscriber.accept(event);
+    }
+
+
+    @Override
+    public void subscribe(Consumer<RevisionEvent> subscriber) {
+        this.subscriberList.add(subscriber);
+    }
+
+}
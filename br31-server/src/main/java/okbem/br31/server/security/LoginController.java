@@ -1,15 +1,31 @@
 
 package okbem.br31.server.security;
 
+import com.auth0.jwt.exceptions.JWTVerificationException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
 
+import okbem.br31.server.util.ratelimit.StripedRateLimiter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -18,6 +34,14 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class LoginController {
 
+    private static final class LoginRateLimitedException
+        extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+
     @lombok.Data
     @lombok.NoArgsConstructor
     @lombok.AllArgsConstructor
@@ -51,22 +75,100 @@ public class LoginController {
     private JwtManager jwtManager;
 
 
+    @Resource(name = "loginExecutor")
+    private Executor loginExecutor;
+
+
+    @Resource
+    private StripedRateLimiter loginRateLimiter;
+
+
+    @Resource
+    private UserAuthService userAuthService;
+
+
     @PostMapping("/login")
-    public LoginResponseBody login(
-        @RequestBody @Valid LoginRequestBody reqBody
+    public CompletableFuture<LoginResponseBody> login(
+        @RequestBody @Valid LoginRequestBody reqBody,
+        HttpServletRequest request
     ) {
-        Authentication authentication = this.authenticationManager.authenticate(
-            new UsernamePasswordAuthenticationToken(
-                reqBody.username,
-                reqBody.password
-            )
-        );
+        String client = request.getRemoteAddr();
+
+        if (!this.loginRateLimiter.tryAcquire("addr:" + client)
+            || !this.loginRateLimiter.tryAcquire("user:" + reqBody.username))
+            throw new LoginRateLimitedException();
+
+        return CompletableFuture.supplyAsync(() -> {
+            Authentication authentication = this.authenticationManager
+                .authenticate(new UsernamePasswordAuthenticationToken(
+                    reqBody.username,
+                    reqBody.password
+                ));
+
+            UserDetails userDetails = (UserDetails)authentication.getPrincipal();
+
+            return new LoginResponseBody(this.jwtManager.encode(userDetails));
+        }, this.loginExecutor);
+    }
+
+
+    @PostMapping("/refresh")
+    public LoginResponseBody refresh(Authentication authentication) {
+        String token = (String)authentication.getCredentials();
 
-        SecurityContextHolder.getContext().setAuthentication(authentication);
+        return new LoginResponseBody(this.jwtManager.refresh(token));
+    }
+
+
+    @PostMapping("/revoke")
+    public ResponseEntity<Void> revoke(
+        @AuthenticationPrincipal UserDetails userDetails
+    ) {
+        this.userAuthService.revokeTokens(userDetails.getUsername());
+
+        return ResponseEntity.noContent().build();
+    }
+
+
+    @PostMapping("/revoke/{username}")
+    public ResponseEntity<Void> revokeUser(@PathVariable String username) {
+        this.userAuthService.revokeTokens(username);
+
+        return ResponseEntity.noContent().build();
+    }
+
+
+    @ExceptionHandler(JWTVerificationException.class)
+    public ResponseEntity<Void> handleJwtVerification() {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<Void> handleAuthentication() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+
+
+    @ExceptionHandler(UsernameNotFoundException.class)
+    public ResponseEntity<Void> handleUsernameNotFound() {
+        return ResponseEntity.notFound().build();
+    }
+
+
+    @ExceptionHandler(LoginRateLimitedException.class)
+    public ResponseEntity<Void> handleLoginRateLimited() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .build();
+    }
 
-        UserDetails userDetails = (UserDetails)authentication.getPrincipal();
 
-        return new LoginResponseBody(this.jwtManager.encode(userDetails));
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> handleRejectedExecution() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .build();
     }
 
 }
@@ -0,0 +1,532 @@
+package okbem.br31.server.security;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+
+@Component
+public class MappedUserStore implements Closeable {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    @lombok.Value
+    public static class UserRecord {
+
+        private final String username;
+        private final String password;
+        private final List<String> roleList;
+        private final long revision;
+
+    }
+
+
+    private static final long EMPTY = 0L;
+
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 10;
+
+
+    private final Path path;
+
+
+    private final FileChannel channel;
+
+
+    private final StampedLock lock;
+
+
+    // record layout:
+    // int length, int crc32 of the next length bytes, long revision,
+    // short + bytes username, short + bytes password, short + bytes roles
+    private volatile MappedByteBuffer buffer;
+
+
+    private int writePosition;
+
+
+    // open addressing: <hash: long, offset + 1: long>
+    private long[] hashes;
+
+    private long[] offsets;
+
+
+    private int size;
+
+
+    public MappedUserStore(
+        @Value("${userstore.path}") String path,
+        @Value("${userstore.initial-size}") DataSize initialSize
+    ) throws IOException {
+        this.path = Paths.get(path).toAbsolutePath();
+        if (this.path.getParent() != null)
+            Files.createDirectories(this.path.getParent());
+
+        this.channel = FileChannel.open(
+            this.path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+
+        long mapSize = Math.max(this.channel.size(), initialSize.toBytes());
+        if (mapSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                "userstore cannot be larger than 2GB"
+            );
+
+        this.buffer = this.channel.map(
+            FileChannel.MapMode.READ_WRITE,
+            0L,
+            mapSize
+        );
+        this.lock = new StampedLock();
+        this.hashes = new long[INITIAL_INDEX_CAPACITY];
+        this.offsets = new long[INITIAL_INDEX_CAPACITY];
+        this.size = 0;
+
+        this.writePosition = this.replay();
+
+        logger.info("path={}, users={}, bytes={}, capacity={}",
+            this.path,
+            this.size,
+            this.writePosition,
+            this.buffer.capacity()
+        );
+    }
+
+
+    private int replay() {
+        MappedByteBuffer buffer = this.buffer;
+        int position = 0;
+
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0)
+                break;
+
+            if (position + HEADER_BYTES + length > buffer.capacity()
+                || buffer.getInt(position + Integer.BYTES)
+                    != checksum(buffer, position + HEADER_BYTES, length)) {
+                logger.warn("Discarding torn record: offset={}, length={}",
+                    position,
+                    length
+                );
+                break;
+            }
+
+            this.index(usernameHash(buffer, position), position);
+            position += HEADER_BYTES + length;
+        }
+
+        return position;
+    }
+
+
+    private static int checksum(MappedByteBuffer buffer, int from, int length) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(from + length).position(from);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        return (int)crc.getValue();
+    }
+
+
+    private static long hash(byte[] bytes, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; ++i) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+        return finish(h);
+    }
+
+
+    private static long usernameHash(MappedByteBuffer buffer, int offset) {
+        int from = offset + HEADER_BYTES + Long.BYTES + Short.BYTES;
+        int to = from + buffer.getShort(from - Short.BYTES);
+
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; ++i) {
+            h ^= buffer.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+        return finish(h);
+    }
+
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (h == EMPTY) ? 1L : h;
+    }
+
+
+    private static boolean usernameEquals(
+        MappedByteBuffer buffer,
+        int offset,
+        byte[] username
+    ) {
+        int from = offset + HEADER_BYTES + Long.BYTES;
+        if (buffer.getShort(from) != username.length)
+            return false;
+
+        from += Short.BYTES;
+        for (int i = 0; i < username.length; ++i)
+            if (buffer.get(from + i) != username[i])
+                return false;
+
+        return true;
+    }
+
+
+    private static int slotOf(long[] hashes, long hash) {
+        int mask = hashes.length - 1;
+        int i = (int)hash & mask;
+
+        while (hashes[i] != EMPTY && hashes[i] != hash)
+            i = (i + 1) & mask;
+
+        return i;
+    }
+
+
+    private static int offsetOf(
+        long[] hashes,
+        long[] offsets,
+        MappedByteBuffer buffer,
+        long hash,
+        byte[] username
+    ) {
+        int mask = hashes.length - 1;
+
+        for (int i = (int)hash & mask; hashes[i] != EMPTY; i = (i + 1) & mask)
+            if (hashes[i] == hash) {
+                int offset = (int)(offsets[i] - 1L);
+                if (usernameEquals(buffer, offset, username))
+                    return offset;
+            }
+
+        return -1;
+    }
+
+
+    private void index(long hash, int offset) {
+        if ((this.size + 1) * 2 > this.hashes.length)
+            this.resize(this.hashes.length * 2);
+
+        MappedByteBuffer buffer = this.buffer;
+        int mask = this.hashes.length - 1;
+        int i = (int)hash & mask;
+
+        while (this.hashes[i] != EMPTY) {
+            if (this.hashes[i] == hash) {
+                int old = (int)(this.offsets[i] - 1L);
+                if (sameUsername(buffer, old, offset)) {
+                    this.offsets[i] = offset + 1L;
+                    return;
+                }
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        this.hashes[i] = hash;
+        this.offsets[i] = offset + 1L;
+        ++this.size;
+    }
+
+
+    private static boolean sameUsername(
+        MappedByteBuffer buffer,
+        int offset1,
+        int offset2
+    ) {
+        int from1 = offset1 + HEADER_BYTES + Long.BYTES;
+        int from2 = offset2 + HEADER_BYTES + Long.BYTES;
+        int length = buffer.getShort(from1);
+        if (buffer.getShort(from2) != length)
+            return false;
+
+        from1 += Short.BYTES;
+        from2 += Short.BYTES;
+        for (int i = 0; i < length; ++i)
+            if (buffer.get(from1 + i) != buffer.get(from2 + i))
+                return false;
+
+        return true;
+    }
+
+
+    private void resize(int capacity) {
+        long[] hashes = new long[capacity];
+        long[] offsets = new long[capacity];
+
+        for (int i = 0; i < this.hashes.length; ++i)
+            if (this.hashes[i] != EMPTY) {
+                int j = slotOf(hashes, this.hashes[i]);
+                while (hashes[j] != EMPTY)
+                    j = (j + 1) & (capacity - 1);
+
+                hashes[j] = this.hashes[i];
+                offsets[j] = this.offsets[i];
+            }
+
+        this.hashes = hashes;
+        this.offsets = offsets;
+    }
+
+
+    private int find(byte[] username) {
+        long hash = hash(username, 0, username.length);
+
+        long stamp = this.lock.tryOptimisticRead();
+        long[] hashes = this.hashes;
+        long[] offsets = this.offsets;
+        MappedByteBuffer buffer = this.buffer;
+        int offset;
+        try {
+            offset = offsetOf(hashes, offsets, buffer, hash, username);
+        } catch (IndexOutOfBoundsException e) {
+            offset = -1;
+        }
+
+        if (this.lock.validate(stamp))
+            return offset;
+
+        stamp = this.lock.readLock();
+        try {
+            return offsetOf(
+                this.hashes,
+                this.offsets,
+                this.buffer,
+                hash,
+                username
+            );
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+
+    public Long findRevision(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+
+        int offset = this.find(bytes);
+        if (offset < 0)
+            return null;
+
+        return this.buffer.getLong(offset + HEADER_BYTES);
+    }
+
+
+    public UserRecord find(String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+
+        int offset = this.find(bytes);
+        if (offset < 0)
+            return null;
+
+        return this.read(this.buffer, offset);
+    }
+
+
+    private UserRecord read(MappedByteBuffer buffer, int offset) {
+        int position = offset + HEADER_BYTES;
+        long revision = buffer.getLong(position);
+        position += Long.BYTES;
+
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; ++i) {
+            byte[] bytes = new byte[buffer.getShort(position)];
+            position += Short.BYTES;
+
+            for (int j = 0; j < bytes.length; ++j)
+                bytes[j] = buffer.get(position + j);
+            position += bytes.length;
+
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<String> roleList = fields[2].isEmpty()
+            ? Collections.emptyList()
+            : Collections.unmodifiableList(
+                Arrays.asList(fields[2].split(","))
+            );
+
+        return new UserRecord(fields[0], fields[1], roleList, revision);
+    }
+
+
+    public void forEach(Consumer<UserRecord> action) {
+        long[] offsets;
+        MappedByteBuffer buffer;
+
+        long stamp = this.lock.readLock();
+        try {
+            offsets = this.offsets.clone();
+            buffer = this.buffer;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+
+        for (long offset : offsets)
+            if (offset != EMPTY)
+                action.accept(this.read(buffer, (int)(offset - 1L)));
+    }
+
+
+    public synchronized UserRecord update(
+        String username,
+        UnaryOperator<UserRecord> updater
+    ) {
+        UserRecord user = updater.apply(this.find(username));
+
+        if (user == null)
+            return null;
+
+        if (!user.getUsername().equals(username))
+            throw new IllegalArgumentException("username cannot be changed");
+
+        this.append(user);
+
+        return user;
+    }
+
+
+    private void append(UserRecord user) {
+        byte[][] fields = {
+            user.getUsername().getBytes(StandardCharsets.UTF_8),
+            user.getPassword().getBytes(StandardCharsets.UTF_8),
+            String.join(",", user.getRoleList())
+                .getBytes(StandardCharsets.UTF_8)
+        };
+
+        int length = Long.BYTES;
+        for (byte[] field : fields) {
+            if (field.length > Short.MAX_VALUE)
+                throw new IllegalArgumentException("field is too long");
+
+            length += Short.BYTES + field.length;
+        }
+
+        int offset = this.writePosition;
+        MappedByteBuffer buffer = this.ensureCapacity(
+            offset + HEADER_BYTES + length
+        );
+
+        // pages of a mapped file can reach the disk in any order, so replay()
+        // trusts a record only if its checksum matches
+        int position = offset + HEADER_BYTES;
+        buffer.putLong(position, user.getRevision());
+        position += Long.BYTES;
+
+        for (byte[] field : fields) {
+            buffer.putShort(position, (short)field.length);
+            position += Short.BYTES;
+
+            for (int i = 0; i < field.length; ++i)
+                buffer.put(position + i, field[i]);
+            position += field.length;
+        }
+
+        buffer.putInt(position, 0);
+        buffer.putInt(offset + Integer.BYTES, checksum(
+            buffer,
+            offset + HEADER_BYTES,
+            length
+        ));
+        buffer.putInt(offset, length);
+        buffer.force();
+
+        long stamp = this.lock.writeLock();
+        try {
+            this.index(hash(fields[0], 0, fields[0].length), offset);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        this.writePosition = position;
+    }
+
+
+    private MappedByteBuffer ensureCapacity(long required) {
+        MappedByteBuffer buffer = this.buffer;
+
+        // keep room for the zero length that terminates the log
+        if (required + Integer.BYTES <= buffer.capacity())
+            return buffer;
+
+        long capacity = buffer.capacity();
+        while (capacity < required + Integer.BYTES)
+            capacity *= 2;
+
+        if (capacity > Integer.MAX_VALUE)
+            throw new IllegalStateException("userstore is full");
+
+        try {
+            buffer = this.channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                0L,
+                capacity
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            this.buffer = buffer;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        logger.info("ensureCapacity(): capacity={}", capacity);
+
+        return buffer;
+    }
+
+
+    public int size() {
+        return this.size;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+}
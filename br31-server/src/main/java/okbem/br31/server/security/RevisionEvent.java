@@ -0,0 +1,11 @@
+package okbem.br31.server.security;
+
+
+@lombok.Value
+public class RevisionEvent {
+
+    private final String username;
+
+    private final long revision;
+
+}
@@ -0,0 +1,54 @@
+package okbem.br31.server.security;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class RevisionEventBus {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    private final RevisionTransport transport;
+
+
+    private final List<Consumer<RevisionEvent>> listenerList;
+
+
+    public RevisionEventBus(RevisionTransport transport) {
+        this.transport = transport;
+        this.listenerList = new CopyOnWriteArrayList<>();
+
+        this.transport.subscribe(this::dispatch);
+
+        logger.info("transport={}", transport.getClass().getSimpleName());
+    }
+
+
+    public void publish(RevisionEvent event) {
+        this.transport.publish(event);
+    }
+
+
+    public void addListener(Consumer<RevisionEvent> listener) {
+        this.listenerList.add(listener);
+    }
+
+
+    private void dispatch(RevisionEvent event) {
+        logger.debug("dispatch(): {}", event);
+
+        for (Consumer<RevisionEvent> listener : this.listenerList) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.error("Failed to handle " + event, e);
+            }
+        }
+    }
+
+}
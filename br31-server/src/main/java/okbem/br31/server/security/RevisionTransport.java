@@ -0,0 +1,13 @@
+package okbem.br31.server.security;
+
+import java.util.function.Consumer;
+
+
+public interface RevisionTransport {
+
+    void publish(RevisionEvent event);
+
+
+    void subscribe(Consumer<RevisionEvent> subscriber);
+
+}
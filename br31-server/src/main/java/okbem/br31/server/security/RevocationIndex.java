@@ -0,0 +1,156 @@
+package okbem.br31.server.security;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class RevocationIndex {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+
+    public static final long ABSENT = -1L;
+
+
+    private static final long EMPTY = 0L;
+
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+
+    private final StampedLock lock;
+
+
+    // open addressing, interleaved: [key, minRevision, key, minRevision, ...]
+    private volatile long[] table;
+
+
+    private int size;
+
+
+    public RevocationIndex(
+        RevisionEventBus revisionEventBus,
+        MappedUserStore userStore
+    ) {
+        this.lock = new StampedLock();
+        this.table = new long[INITIAL_CAPACITY * 2];
+        this.size = 0;
+
+        revisionEventBus.addListener(event ->
+            this.raise(event.getUsername(), event.getRevision())
+        );
+
+        userStore.forEach(user -> {
+            if (user.getRevision() > 0L)
+                this.raise(user.getUsername(), user.getRevision());
+        });
+
+        logger.info("revokedUsers={}", this.size);
+    }
+
+
+    private static long hash(String username) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < username.length(); ++i) {
+            h ^= username.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (h == EMPTY) ? 1L : h;
+    }
+
+
+    private static int indexOf(long[] table, long key) {
+        int mask = table.length - 2;
+        int i = ((int)key << 1) & mask;
+
+        while (table[i] != EMPTY && table[i] != key)
+            i = (i + 2) & mask;
+
+        return i;
+    }
+
+
+    public long getMinRevision(String username) {
+        long key = hash(username);
+
+        long stamp = this.lock.tryOptimisticRead();
+        long[] table = this.table;
+        int i = indexOf(table, key);
+        long minRevision = (table[i] == key) ? table[i + 1] : ABSENT;
+
+        if (this.lock.validate(stamp))
+            return minRevision;
+
+        stamp = this.lock.readLock();
+        try {
+            table = this.table;
+            i = indexOf(table, key);
+
+            return (table[i] == key) ? table[i + 1] : ABSENT;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+
+    public void raise(String username, long revision) {
+        long key = hash(username);
+
+        long stamp = this.lock.writeLock();
+        try {
+            long[] table = this.table;
+            int i = indexOf(table, key);
+
+            if (table[i] == key) {
+                table[i + 1] = Math.max(table[i + 1], revision);
+                return;
+            }
+
+            if ((this.size + 1) * 4 > table.length) {
+                table = this.resize(table.length);
+                i = indexOf(table, key);
+            }
+
+            table[i + 1] = revision;
+            table[i] = key;
+            ++this.size;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        logger.debug("raise(): username={}, revision={}", username, revision);
+    }
+
+
+    private long[] resize(int capacity) {
+        long[] table = new long[capacity * 2];
+
+        for (int i = 0; i < this.table.length; i += 2)
+            if (this.table[i] != EMPTY) {
+                int j = indexOf(table, this.table[i]);
+                table[j] = this.table[i];
+                table[j + 1] = this.table[i + 1];
+            }
+
+        this.table = table;
+
+        logger.info("resize(): size={}, capacity={}", this.size, capacity);
+
+        return table;
+    }
+
+
+    public int size() {
+        return this.size;
+    }
+
+}
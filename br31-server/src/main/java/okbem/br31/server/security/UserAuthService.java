@@ -4,10 +4,16 @@ package okbem.br31.server.security;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 
+import java.util.Collections;
+
+import okbem.br31.server.security.MappedUserStore.UserRecord;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 
@@ -17,47 +23,70 @@ public class UserAuthService implements UserDetailsService {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
 
-    @lombok.Data
-    private static final class User {
+    private static final PasswordEncoder passwordEncoder
+        = new BCryptPasswordEncoder();
 
-        private final String username;
-        private final String password;
-        private final java.util.List<String> roleList;
-        private final Long revision;
 
-        public static User create(String username) {
-            return new User(
-                username,
-                new org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder()
-                    .encode(username),
-                java.util.Arrays.asList("USER"),
-                0L
-            );
-        }
+    private final MappedUserStore userStore;
 
-    }
+
+    private final boolean autoProvision;
 
 
     private final LoadingCache<String, Long> userRevisionCache;
 
 
+    private final RevisionEventBus revisionEventBus;
+
+
     public UserAuthService(
-        @Value("${caffeine.spec.user-revision}") String spec
+        @Value("${caffeine.spec.user-revision}") String spec,
+        @Value("${userstore.auto-provision}") boolean autoProvision,
+        MappedUserStore userStore,
+        RevisionEventBus revisionEventBus
     ) {
+        this.userStore = userStore;
+        this.autoProvision = autoProvision;
+
         this.userRevisionCache = Caffeine.from(spec)
             .build(this::getUserRevision);
 
+        this.revisionEventBus = revisionEventBus;
+        this.revisionEventBus.addListener(this::onRevisionEvent);
+
         logger.info("userRevisionCache initialized: spec={}", spec);
     }
 
 
+    private static UserRecord createUser(String username) {
+        return new UserRecord(
+            username,
+            passwordEncoder.encode(username),
+            Collections.singletonList("USER"),
+            0L
+        );
+    }
+
+
+    private UserRecord findUser(String username) {
+        UserRecord user = this.userStore.find(username);
+
+        if (user != null || !this.autoProvision)
+            return user;
+
+        return this.userStore.update(username, v ->
+            (v == null) ? createUser(username) : v
+        );
+    }
+
+
     private Long getUserRevision(String username) {
-        User user = User.create(username);
+        Long revision = this.userStore.findRevision(username);
 
-        if (user == null)
-            return null;
+        if (revision != null || !this.autoProvision)
+            return revision;
 
-        return user.getRevision();
+        return this.findUser(username).getRevision();
     }
 
 
@@ -66,11 +95,45 @@ public class UserAuthService implements UserDetailsService {
     }
 
 
+    public long revokeTokens(String username) {
+        UserRecord user = this.userStore.update(username, v -> {
+            if (v == null) {
+                if (!this.autoProvision)
+                    throw new UsernameNotFoundException(username);
+
+                v = createUser(username);
+            }
+
+            return new UserRecord(
+                v.getUsername(),
+                v.getPassword(),
+                v.getRoleList(),
+                v.getRevision() + 1L
+            );
+        });
+
+        this.revisionEventBus.publish(
+            new RevisionEvent(username, user.getRevision())
+        );
+
+        return user.getRevision();
+    }
+
+
+    private void onRevisionEvent(RevisionEvent event) {
+        this.userRevisionCache.asMap().merge(
+            event.getUsername(),
+            event.getRevision(),
+            Math::max
+        );
+    }
+
+
     @Override
     public UserDetails loadUserByUsername(
         String username
     ) throws UsernameNotFoundException {
-        User user = User.create(username);
+        UserRecord user = this.findUser(username);
 
         if (user == null)
             throw new UsernameNotFoundException(username);
@@ -1,8 +1,7 @@
-
 package okbem.br31.server.util.httplog;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -10,8 +9,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
 
 
 public class HttpLoggingFilter extends OncePerRequestFilter {
@@ -19,14 +17,37 @@ public class HttpLoggingFilter extends OncePerRequestFilter {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
 
+    private static final String START_TIME_ATTRIBUTE
+        = HttpLoggingFilter.class.getName() + ".START_TIME";
+
+
+    private final int maxBodySize;
+
+
+    private final int sampleRate;
+
+
+    public HttpLoggingFilter(int maxBodySize, int sampleRate) {
+        if (maxBodySize < 0)
+            throw new IllegalArgumentException(
+                "maxBodySize cannot be negative"
+            );
+
+        if (sampleRate < 1)
+            throw new IllegalArgumentException(
+                "sampleRate must be greater than 0"
+            );
+
+        this.maxBodySize = maxBodySize;
+        this.sampleRate = sampleRate;
+    }
+
+
     protected void dumpHttp(
-        ContentCachingRequestWrapper request,
-        ContentCachingResponseWrapper response,
+        TeeRequestWrapper request,
+        TeeResponseWrapper response,
         long startTime
     ) {
-        if (!logger.isDebugEnabled())
-            return;
-
         long elapsed = (System.nanoTime() - startTime) / 1_000_000;
 
         String reqLine = String.format("%s %s",
@@ -36,57 +57,67 @@ public class HttpLoggingFilter extends OncePerRequestFilter {
         if (request.getQueryString() != null)
             reqLine = String.format("%s?%s", reqLine, request.getQueryString());
 
-        byte[] rawReqBody = request.getContentAsByteArray();
-        String reqBody;
-        try {
-            reqBody = new String(rawReqBody, request.getCharacterEncoding());
-        } catch (UnsupportedEncodingException e) {
-            reqBody = String.format("length=%d", rawReqBody.length);
-        }
+        String reqBody = request.getBodyHead();
 
         int resCode = response.getStatus();
-
-        byte[] rawResBody = response.getContentAsByteArray();
-        String resBody;
-        try {
-            resBody = new String(rawResBody, response.getCharacterEncoding());
-        } catch (UnsupportedEncodingException e) {
-            resBody = String.format("length=%d", rawResBody.length);
-        }
+        String resBody = response.getBodyHead();
 
         logger.debug("In  ({} ms) - {} {}", elapsed, reqLine, reqBody);
         logger.debug("Out ({} ms) - {} {}", elapsed, resCode, resBody);
     }
 
 
+    private boolean isSampled() {
+        return (this.sampleRate == 1)
+            || ThreadLocalRandom.current().nextInt(this.sampleRate) == 0;
+    }
+
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+
     @Override
     protected void doFilterInternal(
         HttpServletRequest request,
         HttpServletResponse response,
         FilterChain filterChain
     ) throws ServletException, IOException {
-        ContentCachingRequestWrapper requestWrapper;
-        if (request instanceof ContentCachingRequestWrapper)
-            requestWrapper = (ContentCachingRequestWrapper)request;
-        else
-            requestWrapper = new ContentCachingRequestWrapper(request);
+        if (!logger.isDebugEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        TeeRequestWrapper requestWrapper
+            = WebUtils.getNativeRequest(request, TeeRequestWrapper.class);
+        TeeResponseWrapper responseWrapper
+            = WebUtils.getNativeResponse(response, TeeResponseWrapper.class);
 
-        ContentCachingResponseWrapper responseWrapper;
-        if (response instanceof ContentCachingResponseWrapper)
-            responseWrapper = (ContentCachingResponseWrapper)response;
-        else
-            responseWrapper = new ContentCachingResponseWrapper(response);
+        if (requestWrapper == null || responseWrapper == null) {
+            if (this.isAsyncDispatch(request) || !this.isSampled()) {
+                filterChain.doFilter(request, response);
+                return;
+            }
 
-        long startTime = System.nanoTime();
+            requestWrapper = new TeeRequestWrapper(request, this.maxBodySize);
+            responseWrapper
+                = new TeeResponseWrapper(response, this.maxBodySize);
+
+            request.setAttribute(START_TIME_ATTRIBUTE, System.nanoTime());
+        }
 
         try {
             filterChain.doFilter(requestWrapper, responseWrapper);
         } finally {
-            this.dumpHttp(requestWrapper, responseWrapper, startTime);
-
-            responseWrapper.copyBodyToResponse();
+            if (!this.isAsyncStarted(requestWrapper))
+                this.dumpHttp(
+                    requestWrapper,
+                    responseWrapper,
+                    (Long)requestWrapper.getAttribute(START_TIME_ATTRIBUTE)
+                );
         }
     }
 
 }
-
@@ -0,0 +1,175 @@
+package okbem.br31.server.util.httplog;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+
+public class TeeResponseWrapper extends HttpServletResponseWrapper {
+
+    private final HeadBuffer headBuffer;
+
+
+    private ServletOutputStream outputStream;
+
+
+    private PrintWriter writer;
+
+
+    public TeeResponseWrapper(HttpServletResponse response, int maxBodySize) {
+        super(response);
+
+        this.headBuffer = new HeadBuffer(maxBodySize);
+    }
+
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.outputStream == null)
+            this.outputStream = new TeeOutputStream(super.getOutputStream());
+
+        return this.outputStream;
+    }
+
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            PrintWriter delegate = super.getWriter();
+            String encoding = this.getCharacterEncoding();
+
+            this.writer = new PrintWriter(new TeeWriter(
+                delegate,
+                (encoding == null)
+                    ? StandardCharsets.ISO_8859_1
+                    : Charset.forName(encoding)
+            ));
+        }
+
+        return this.writer;
+    }
+
+
+    @Override
+    public void reset() {
+        super.reset();
+
+        this.headBuffer.clear();
+        this.outputStream = null;
+        this.writer = null;
+    }
+
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+
+        this.headBuffer.clear();
+    }
+
+
+    public String getBodyHead() {
+        return this.headBuffer.toString(this.getCharacterEncoding());
+    }
+
+
+    private final class TeeOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+
+        private TeeOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+
+        @Override
+        public void write(int b) throws IOException {
+            this.delegate.write(b);
+
+            TeeResponseWrapper.this.headBuffer.write(b);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.delegate.write(b, off, len);
+
+            TeeResponseWrapper.this.headBuffer.write(b, off, len);
+        }
+
+
+        @Override
+        public void flush() throws IOException {
+            this.delegate.flush();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.delegate.setWriteListener(writeListener);
+        }
+
+    }
+
+
+    private final class TeeWriter extends Writer {
+
+        private final PrintWriter delegate;
+
+
+        private final Charset charset;
+
+
+        private TeeWriter(PrintWriter delegate, Charset charset) {
+            this.delegate = delegate;
+            this.charset = charset;
+        }
+
+
+        @Override
+        public void write(char[] c, int off, int len) throws IOException {
+            this.delegate.write(c, off, len);
+
+            TeeResponseWrapper.this.headBuffer.write(
+                c,
+                off,
+                len,
+                this.charset
+            );
+        }
+
+
+        @Override
+        public void flush() {
+            this.delegate.flush();
+        }
+
+
+        @Override
+        public void close() {
+            this.delegate.close();
+        }
+
+    }
+
+}
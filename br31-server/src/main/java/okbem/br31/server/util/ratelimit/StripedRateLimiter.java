@@ -0,0 +1,157 @@
+package okbem.br31.server.util.ratelimit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+
+
+public class StripedRateLimiter {
+
+    private static final int MIN_PURGE_SIZE = 64;
+
+
+    @lombok.AllArgsConstructor
+    private static final class Bucket {
+
+        private double tokens;
+        private long time;
+
+    }
+
+
+    private static final class Stripe {
+
+        // <key: String, bucket: Bucket>
+        private final HashMap<String, Bucket> bucketMap = new HashMap<>();
+
+        private int purgeSize = MIN_PURGE_SIZE;
+
+    }
+
+
+    private final double tokensPerNano;
+
+
+    private final double burst;
+
+
+    private final Stripe[] stripes;
+
+
+    private final LongSupplier nanoClock;
+
+
+    public StripedRateLimiter(double rate, int burst, int stripeCount) {
+        this(rate, burst, stripeCount, System::nanoTime);
+    }
+
+
+    StripedRateLimiter(
+        double rate,
+        int burst,
+        int stripeCount,
+        LongSupplier nanoClock
+    ) {
+        if (rate <= 0.0)
+            throw new IllegalArgumentException("rate must be positive");
+
+        if (burst < 1)
+            throw new IllegalArgumentException(
+                "burst cannot be less than one"
+            );
+
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1)
+            throw new IllegalArgumentException(
+                "stripeCount must be a power of two"
+            );
+
+        this.tokensPerNano = rate / 1e9;
+        this.burst = burst;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i)
+            this.stripes[i] = new Stripe();
+        this.nanoClock = nanoClock;
+    }
+
+
+    public boolean tryAcquire(String key) {
+        return this.acquire(key, true);
+    }
+
+
+    public boolean canAcquire(String key) {
+        return this.acquire(key, false);
+    }
+
+
+    private boolean acquire(String key, boolean consume) {
+        long now = this.nanoClock.getAsLong();
+        int h = key.hashCode();
+        int i = (h ^ (h >>> 16)) & (this.stripes.length - 1);
+        Stripe stripe = this.stripes[i];
+
+        synchronized (stripe) {
+            Bucket bucket = stripe.bucketMap.get(key);
+
+            if (bucket == null) {
+                if (!consume)
+                    return true;
+
+                if (stripe.bucketMap.size() >= stripe.purgeSize)
+                    this.purge(stripe, now);
+
+                bucket = new Bucket(this.burst, now);
+                stripe.bucketMap.put(key, bucket);
+            }
+
+            this.refill(bucket, now);
+
+            if (bucket.tokens < 1.0)
+                return false;
+
+            if (consume)
+                bucket.tokens -= 1.0;
+
+            return true;
+        }
+    }
+
+
+    private void refill(Bucket bucket, long now) {
+        bucket.tokens = Math.min(
+            this.burst,
+            bucket.tokens + (now - bucket.time) * this.tokensPerNano
+        );
+        bucket.time = now;
+    }
+
+
+    private void purge(Stripe stripe, long now) {
+        Iterator<Bucket> it = stripe.bucketMap.values().iterator();
+        while (it.hasNext()) {
+            Bucket bucket = it.next();
+
+            this.refill(bucket, now);
+            if (bucket.tokens >= this.burst)
+                it.remove();
+        }
+
+        stripe.purgeSize = Math.max(
+            MIN_PURGE_SIZE,
+            stripe.bucketMap.size() * 2
+        );
+    }
+
+
+    public int size() {
+        int size = 0;
+
+        for (Stripe stripe : this.stripes)
+            synchronized (stripe) {
+                size += stripe.bucketMap.size();
+            }
+
+        return size;
+    }
+
+}
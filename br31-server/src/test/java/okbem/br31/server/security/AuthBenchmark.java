@@ -0,0 +1,276 @@
+package okbem.br31.server.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+import okbem.br31.server.Application;
+import okbem.br31.server.security.MappedUserStore.UserRecord;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.context.AbstractSecurityWebApplicationInitializer;
+import org.springframework.web.context.WebApplicationContext;
+
+
+/**
+ * 인증이 필요한 요청 하나를 처리할 때 각 단계에서 걸리는 시간과 할당되는
+ * 메모리를 측정하는 benchmark.
+ *
+ * 실제 애플리케이션 컨텍스트를 띄운 다음 다음 단계를 각각 측정한다:
+ * {@link UserAuthService#getUserRevisionFromCache},
+ * {@link JwtManager#decode}, {@link JwtManager#encode},
+ * mock 요청으로 실행하는 Spring Security filter chain 전체,
+ * 그리고 {@code /login}이 하는 일인 비밀번호 확인과 토큰 발급.
+ *
+ * {@code cache}가 {@code hit}이면 캐시를 기본 설정으로 두고 사용자 16명을
+ * 돌아가며 사용한다. {@code miss}이면 캐시의 크기를 1024로 줄이고 그보다 훨씬
+ * 많은 사용자 65536명을 돌아가며 사용하므로, 거의 매번 서명을 검증하고 사용자
+ * 저장소를 읽게 된다. 사용자들은 revision이 0이라 {@link RevocationIndex}에
+ * 들어가지 않으므로 revision도 캐시에서 찾는다.
+ * 할당되는 메모리는 {@link GCProfiler}가 출력하는 {@code gc.alloc.rate.norm}
+ * 값으로 확인할 수 있고, {@link #main}은 스레드의 수를 늘려 가며 측정한다.
+ *
+ * <pre>
+ * mvn -pl br31-server test-compile exec:java \
+ *     -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=okbem.br31.server.security.AuthBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthBenchmark {
+
+    /**
+     * 스레드마다 돌아가며 사용할 사용자를 고른다.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        private int mask;
+
+        @Setup
+        public void setUp(AuthBenchmark benchmark) {
+            this.mask = benchmark.userCount - 1;
+        }
+
+        private int next() {
+            this.index = (this.index + 1) & this.mask;
+
+            return this.index;
+        }
+
+    }
+
+
+    private static final String PASSWORD = "password";
+
+
+    @Param({"hit", "miss"})
+    private String cache;
+
+
+    private Path userStorePath;
+
+
+    private ConfigurableApplicationContext context;
+
+
+    private UserAuthService userAuthService;
+
+
+    private JwtManager jwtManager;
+
+
+    private AuthenticationManager authenticationManager;
+
+
+    private ServletContext servletContext;
+
+
+    private Filter securityFilterChain;
+
+
+    private int userCount;
+
+
+    private String[] usernames;
+
+
+    private UserDetails[] userDetails;
+
+
+    private String[] tokens;
+
+
+    private String[] authorizations;
+
+
+    @Setup
+    public void setUp() throws IOException, ServletException {
+        this.userStorePath = Files.createTempFile("br31-users", ".db");
+
+        boolean miss = this.cache.equals("miss");
+        String spec = miss ? "maximumSize=1024" : "maximumSize=65536";
+
+        this.context = new SpringApplicationBuilder(Application.class).run(
+            "--server.port=0",
+            "--management.server.port=0",
+            "--logging.level.root=WARN",
+            "--logging.level.okbem.br31.server=WARN",
+            "--userstore.path=" + this.userStorePath,
+            "--userstore.initial-size=16MB",
+            "--userstore.auto-provision=false",
+            "--caffeine.spec.user-revision=" + spec,
+            "--caffeine.spec.verified-token=" + spec
+        );
+
+        this.userAuthService = this.context.getBean(UserAuthService.class);
+        this.jwtManager = this.context.getBean(JwtManager.class);
+        this.authenticationManager
+            = this.context.getBean(AuthenticationManager.class);
+        this.servletContext
+            = ((WebApplicationContext)this.context).getServletContext();
+        this.securityFilterChain = this.context.getBean(
+            AbstractSecurityWebApplicationInitializer.DEFAULT_FILTER_NAME,
+            Filter.class
+        );
+
+        MappedUserStore userStore = this.context.getBean(MappedUserStore.class);
+        String password = this.context.getBean(PasswordEncoder.class)
+            .encode(PASSWORD);
+
+        this.userCount = miss ? 1 << 16 : 1 << 4;
+        this.usernames = new String[this.userCount];
+        this.userDetails = new UserDetails[this.userCount];
+        this.tokens = new String[this.userCount];
+        this.authorizations = new String[this.userCount];
+
+        for (int i = 0; i < this.userCount; ++i) {
+            String username = "user" + i;
+            userStore.update(username, v -> new UserRecord(
+                username,
+                password,
+                Collections.singletonList("USER"),
+                0L
+            ));
+
+            this.usernames[i] = username;
+            this.userDetails[i]
+                = this.userAuthService.loadUserByUsername(this.usernames[i]);
+            this.tokens[i] = this.jwtManager.encode(this.userDetails[i]);
+            this.authorizations[i] = "Bearer " + this.tokens[i];
+        }
+
+        int status = this.filterChain(0);
+        if (status != 200)
+            throw new IllegalStateException("filter chain returned " + status);
+    }
+
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.context.close();
+
+        Files.deleteIfExists(this.userStorePath);
+    }
+
+
+    @Benchmark
+    public Long userRevision(Cursor cursor) {
+        return this.userAuthService
+            .getUserRevisionFromCache(this.usernames[cursor.next()]);
+    }
+
+
+    @Benchmark
+    public UserDetails decode(Cursor cursor) {
+        return this.jwtManager.decode(this.tokens[cursor.next()]);
+    }
+
+
+    @Benchmark
+    public String encode(Cursor cursor) {
+        return this.jwtManager.encode(this.userDetails[cursor.next()]);
+    }
+
+
+    @Benchmark
+    public int filterChain(Cursor cursor) throws IOException, ServletException {
+        return this.filterChain(cursor.next());
+    }
+
+
+    private int filterChain(int index) throws IOException, ServletException {
+        MockHttpServletRequest request = new MockHttpServletRequest(
+            this.servletContext,
+            "POST",
+            "/refresh"
+        );
+        request.setServletPath("/refresh");
+        request.addHeader("authorization", this.authorizations[index]);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        this.securityFilterChain.doFilter(
+            request,
+            response,
+            new MockFilterChain()
+        );
+
+        return response.getStatus();
+    }
+
+
+    @Benchmark
+    public String login(Cursor cursor) {
+        String username = this.usernames[cursor.next()];
+
+        Authentication authentication = this.authenticationManager
+            .authenticate(new UsernamePasswordAuthenticationToken(
+                username,
+                PASSWORD
+            ));
+
+        return this.jwtManager.encode(
+            (UserDetails)authentication.getPrincipal()
+        );
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threadCount = 1; threadCount <= 16; threadCount *= 4)
+            new Runner(new OptionsBuilder()
+                .include(AuthBenchmark.class.getSimpleName())
+                .threads(threadCount)
+                .addProfiler(GCProfiler.class)
+                .build()
+            ).run();
+    }
+
+}
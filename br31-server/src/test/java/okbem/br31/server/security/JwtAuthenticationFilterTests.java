@@ -0,0 +1,143 @@
+package okbem.br31.server.security;
+
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+
+import okbem.br31.server.util.ratelimit.StripedRateLimiter;
+
+import org.junit.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * {@link JwtAuthenticationFilter}가 잘못된 토큰을 보내는 클라이언트를
+ * 차단하는 과정을 확인하는 테스트.
+ */
+public class JwtAuthenticationFilterTests {
+
+    private JwtManager jwtManager;
+
+
+    private StripedRateLimiter tokenFailureRateLimiter;
+
+
+    private SimpleMeterRegistry meterRegistry;
+
+
+    private JwtAuthenticationFilter filter;
+
+
+    @Before
+    public void setUp() {
+        this.jwtManager = mock(JwtManager.class);
+        when(this.jwtManager.decode("good"))
+            .thenReturn(User.withUsername("alice")
+                .password("")
+                .roles("USER")
+                .build()
+            );
+        when(this.jwtManager.decode("bad"))
+            .thenThrow(new SignatureVerificationException(null));
+
+        this.tokenFailureRateLimiter = new StripedRateLimiter(0.001, 2, 4);
+        this.meterRegistry = new SimpleMeterRegistry();
+
+        this.filter = new JwtAuthenticationFilter();
+
+        ReflectionTestUtils.setField(this.filter,
+            "jwtManager", this.jwtManager);
+        ReflectionTestUtils.setField(this.filter,
+            "tokenFailureRateLimiter", this.tokenFailureRateLimiter);
+        ReflectionTestUtils.setField(this.filter,
+            "meterRegistry", this.meterRegistry);
+        ReflectionTestUtils.setField(this.filter,
+            "logInterval", Duration.ofMinutes(1));
+    }
+
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+
+    private MockHttpServletResponse send(String client, String token)
+        throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(
+            "POST",
+            "/refresh"
+        );
+        request.setRemoteAddr(client);
+        request.addHeader("authorization", "Bearer " + token);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        SecurityContextHolder.clearContext();
+        this.filter.doFilter(request, response, new MockFilterChain());
+
+        return response;
+    }
+
+
+    private double rejected(String reason) {
+        return this.meterRegistry.counter("jwt.rejected", "reason", reason)
+            .count();
+    }
+
+
+    @Test
+    public void doFilter_Authenticates_IfTokenIsValid() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            assertThat(this.send("10.0.0.1", "good").getStatus())
+                .isEqualTo(200);
+            assertThat(SecurityContextHolder.getContext().getAuthentication())
+                .extracting("name", "credentials")
+                .containsExactly("alice", "good");
+        }
+
+        assertThat(this.tokenFailureRateLimiter.size())
+            .isEqualTo(0);
+    }
+
+
+    @Test
+    public void doFilter_Returns429_IfClientSentTooManyBadTokens()
+        throws Exception {
+        assertThat(this.send("10.0.0.1", "bad").getStatus())
+            .isEqualTo(403);
+        assertThat(this.send("10.0.0.1", "bad").getStatus())
+            .isEqualTo(403);
+
+        MockHttpServletResponse response = this.send("10.0.0.1", "good");
+
+        assertThat(response.getStatus())
+            .isEqualTo(429);
+        assertThat(response.getHeader("Retry-After"))
+            .isEqualTo("1");
+        assertThat(this.send("10.0.0.1", "bad").getStatus())
+            .isEqualTo(429);
+
+        verify(this.jwtManager, times(2)).decode("bad");
+        verify(this.jwtManager, never()).decode("good");
+
+        assertThat(this.rejected("SignatureVerificationException"))
+            .isEqualTo(2.0);
+        assertThat(this.rejected("RateLimited"))
+            .isEqualTo(2.0);
+
+        assertThat(this.send("10.0.0.2", "good").getStatus())
+            .isEqualTo(200);
+    }
+
+}
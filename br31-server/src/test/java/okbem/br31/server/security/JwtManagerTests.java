@@ -0,0 +1,410 @@
+package okbem.br31.server.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+
+import okbem.br31.server.security.MappedUserStore.UserRecord;
+
+import org.junit.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link JwtManager}가 토큰을 발급하고 검증하는 과정을 확인하는 테스트.
+ */
+public class JwtManagerTests {
+
+    private Path userStorePath;
+
+
+    private MappedUserStore userStore;
+
+
+    private UserAuthService userAuthService;
+
+
+    private RevocationIndex revocationIndex;
+
+
+    private MeterRegistry meterRegistry;
+
+
+    private JwtManager jwtManager;
+
+
+    @Before
+    public void setUp() throws IOException {
+        this.userStorePath = Files.createTempFile("br31-users", ".db");
+
+        this.start(true);
+    }
+
+
+    private void start(boolean autoProvision) throws IOException {
+        this.userStore = new MappedUserStore(
+            this.userStorePath.toString(),
+            DataSize.ofKilobytes(64)
+        );
+
+        RevisionEventBus revisionEventBus
+            = new RevisionEventBus(new LocalRevisionTransport());
+
+        this.userAuthService = new UserAuthService(
+            "maximumSize=1024",
+            autoProvision,
+            this.userStore,
+            revisionEventBus
+        );
+        this.revocationIndex = new RevocationIndex(
+            revisionEventBus,
+            this.userStore
+        );
+        this.meterRegistry = new SimpleMeterRegistry();
+
+        this.jwtManager = new JwtManager(
+            "br31",
+            "HS512",
+            "secret",
+            "",
+            "",
+            "",
+            Duration.ofHours(1),
+            "maximumSize=1024",
+            this.userAuthService,
+            this.revocationIndex,
+            this.meterRegistry
+        );
+    }
+
+
+    private void restart(boolean autoProvision) throws IOException {
+        this.userStore.close();
+
+        this.start(autoProvision);
+    }
+
+
+    @After
+    public void tearDown() throws IOException {
+        this.userStore.close();
+
+        Files.deleteIfExists(this.userStorePath);
+    }
+
+
+    private static KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        return generator.generateKeyPair();
+    }
+
+
+    static String encodePublicKey(String keyId, KeyPair keyPair) {
+        return keyId + "=" + Base64.getEncoder()
+            .encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+
+    static String encodePrivateKey(KeyPair keyPair) {
+        return Base64.getEncoder()
+            .encodeToString(keyPair.getPrivate().getEncoded());
+    }
+
+
+    private JwtManager createEs256(
+        String keyId,
+        KeyPair keyPair,
+        String publicKeys
+    ) {
+        return new JwtManager(
+            "br31",
+            "ES256",
+            "",
+            keyId,
+            encodePrivateKey(keyPair),
+            publicKeys,
+            Duration.ofHours(1),
+            "maximumSize=1024",
+            this.userAuthService,
+            this.revocationIndex,
+            new SimpleMeterRegistry()
+        );
+    }
+
+
+    private double cacheGets(String result) {
+        return this.meterRegistry.get("cache.gets")
+            .tag("cache", "verifiedTokenCache")
+            .tag("result", result)
+            .functionCounter()
+            .count();
+    }
+
+
+    @Test
+    public void decode_ReturnsUserDetails_IfTokenIsValid() {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        UserDetails userDetails = this.jwtManager.decode(token);
+
+        assertThat(userDetails.getUsername())
+            .isEqualTo("alice");
+        assertThat(userDetails.getAuthorities())
+            .extracting("authority")
+            .containsExactly("ROLE_USER");
+    }
+
+
+    @Test
+    public void decode_ChecksRevocation_IfTokenIsCached() {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        this.jwtManager.decode(token);
+        this.jwtManager.decode(token);
+
+        assertThat(this.cacheGets("hit"))
+            .isEqualTo(1.0);
+
+        this.revocationIndex.raise("alice", 1L);
+
+        assertThatThrownBy(() -> this.jwtManager.decode(token))
+            .isInstanceOf(TokenExpiredException.class);
+        assertThat(this.cacheGets("hit"))
+            .isEqualTo(2.0);
+    }
+
+
+    @Test
+    public void decode_Rejects_IfPayloadIsSwapped_EvenIfSignatureIsCached() {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+        String other = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("mallory")
+        );
+
+        this.jwtManager.decode(token);
+
+        String[] parts = token.split("\\.");
+        String forged = String.join(".",
+            parts[0],
+            other.split("\\.")[1],
+            parts[2]
+        );
+        String unsigned = "eyJhbGciOiJub25lIn0." + parts[1] + "." + parts[2];
+
+        assertThatThrownBy(() -> this.jwtManager.decode(forged))
+            .isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> this.jwtManager.refresh(forged))
+            .isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> this.jwtManager.decode(unsigned))
+            .isInstanceOf(JWTVerificationException.class);
+    }
+
+
+    @Test
+    public void decode_Rejects_IfRevokedBeforeRestart() throws IOException {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+        this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("bob")
+        );
+
+        this.userAuthService.revokeTokens("alice");
+
+        this.restart(false);
+
+        assertThat(this.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(1L);
+        assertThat(this.revocationIndex.getMinRevision("bob"))
+            .isEqualTo(RevocationIndex.ABSENT);
+
+        assertThatThrownBy(() -> this.jwtManager.decode(token))
+            .isInstanceOf(TokenExpiredException.class);
+    }
+
+
+    @Test
+    public void decode_KeepsUserOutOfIndex_IfNeverRevoked() throws IOException {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        this.restart(false);
+
+        assertThat(this.jwtManager.decode(token).getUsername())
+            .isEqualTo("alice");
+        assertThat(this.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(RevocationIndex.ABSENT);
+        assertThat(this.revocationIndex.size())
+            .isEqualTo(0);
+    }
+
+
+    @Test
+    public void decode_IndexesRevision_IfStoreIsAheadOfIndex()
+        throws IOException {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        this.restart(false);
+
+        this.userStore.update("alice", v -> new UserRecord(
+            v.getUsername(),
+            v.getPassword(),
+            v.getRoleList(),
+            v.getRevision() + 1L
+        ));
+
+        assertThatThrownBy(() -> this.jwtManager.decode(token))
+            .isInstanceOf(TokenExpiredException.class);
+        assertThat(this.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(1L);
+    }
+
+
+    @Test
+    public void decode_Rejects_IfUserIsNotInStore() throws IOException {
+        this.restart(false);
+
+        String token = this.jwtManager.encode(User.withUsername("mallory")
+            .password("")
+            .roles("USER")
+            .build()
+        );
+
+        assertThatThrownBy(() -> this.jwtManager.decode(token))
+            .isInstanceOf(JWTVerificationException.class);
+        assertThat(this.revocationIndex.getMinRevision("mallory"))
+            .isEqualTo(RevocationIndex.ABSENT);
+    }
+
+
+    @Test
+    public void refresh_TakesRolesFromStore() {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        this.userStore.update("alice", v -> new UserRecord(
+            v.getUsername(),
+            v.getPassword(),
+            Arrays.asList("USER", "ADMIN"),
+            v.getRevision()
+        ));
+
+        String refreshed = this.jwtManager.refresh(token);
+
+        assertThat(this.jwtManager.decode(refreshed).getAuthorities())
+            .extracting("authority")
+            .containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+    }
+
+
+    @Test
+    public void refresh_Rejects_IfStoredRevisionIsNewer() {
+        String token = this.jwtManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+
+        this.userStore.update("alice", v -> new UserRecord(
+            v.getUsername(),
+            v.getPassword(),
+            v.getRoleList(),
+            v.getRevision() + 1L
+        ));
+
+        assertThat(this.jwtManager.decode(token).getUsername())
+            .isEqualTo("alice");
+        assertThatThrownBy(() -> this.jwtManager.refresh(token))
+            .isInstanceOf(TokenExpiredException.class);
+    }
+
+
+    @Test
+    public void refresh_Rejects_IfUserIsNotInStore() throws IOException {
+        this.restart(false);
+
+        this.revocationIndex.raise("mallory", -1L);
+
+        String token = this.jwtManager.encode(User.withUsername("mallory")
+            .password("")
+            .roles("USER")
+            .build()
+        );
+
+        assertThatThrownBy(() -> this.jwtManager.refresh(token))
+            .isInstanceOf(JWTVerificationException.class);
+    }
+
+
+
+    @Test
+    public void decode_VerifiesEs256Token_ByKeyId()
+        throws GeneralSecurityException {
+        KeyPair keyPair1 = generateKeyPair();
+        KeyPair keyPair2 = generateKeyPair();
+        String publicKeys = encodePublicKey("k1", keyPair1)
+            + "," + encodePublicKey("k2", keyPair2);
+
+        JwtManager oldManager = this.createEs256(
+            "k1",
+            keyPair1,
+            encodePublicKey("k1", keyPair1)
+        );
+        JwtManager newManager = this.createEs256("k2", keyPair2, publicKeys);
+
+        String oldToken = oldManager.encode(
+            this.userAuthService.loadUserByUsername("alice")
+        );
+        String newToken = newManager.encode(
+            this.userAuthService.loadUserByUsername("bob")
+        );
+
+        DecodedJWT jwt = JWT.decode(oldToken);
+
+        assertThat(jwt.getAlgorithm())
+            .isEqualTo("ES256");
+        assertThat(jwt.getKeyId())
+            .isEqualTo("k1");
+        assertThat(JWT.decode(newToken).getKeyId())
+            .isEqualTo("k2");
+
+        // 새 키로 서명하는 쪽은 이전 키로 서명된 토큰도 받아들인다.
+        assertThat(newManager.decode(oldToken).getUsername())
+            .isEqualTo("alice");
+        assertThat(newManager.decode(newToken).getUsername())
+            .isEqualTo("bob");
+
+        assertThatThrownBy(() -> oldManager.decode(newToken))
+            .isInstanceOf(JWTVerificationException.class);
+    }
+
+}
@@ -0,0 +1,68 @@
+package okbem.br31.server.security;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link LocalEcdsaKeyProvider}가 키 ID별 공개 키와 서명 키를 올바르게 읽어
+ * 오는지 확인하는 테스트.
+ */
+public class LocalEcdsaKeyProviderTests {
+
+    private KeyPair keyPair1;
+
+
+    private KeyPair keyPair2;
+
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        this.keyPair1 = generator.generateKeyPair();
+        this.keyPair2 = generator.generateKeyPair();
+    }
+
+
+    @Test
+    public void getPublicKeyById_ReturnsKey_IfKeyIdIsKnown() {
+        LocalEcdsaKeyProvider keyProvider = new LocalEcdsaKeyProvider(
+            JwtManagerTests.encodePublicKey("k1", this.keyPair1) + ", "
+                + JwtManagerTests.encodePublicKey("k2", this.keyPair2),
+            "k2",
+            JwtManagerTests.encodePrivateKey(this.keyPair2)
+        );
+
+        assertThat(keyProvider.getPublicKeyById("k1"))
+            .isEqualTo(this.keyPair1.getPublic());
+        assertThat(keyProvider.getPublicKeyById("k2"))
+            .isEqualTo(this.keyPair2.getPublic());
+        assertThat(keyProvider.getPublicKeyById("k3"))
+            .isNull();
+        assertThat(keyProvider.getPrivateKeyId())
+            .isEqualTo("k2");
+        assertThat(keyProvider.getPrivateKey())
+            .isEqualTo(this.keyPair2.getPrivate());
+    }
+
+
+    @Test
+    public void constructor_ThrowsException_IfSigningKeyHasNoPublicKey() {
+        assertThatIllegalArgumentException()
+            .isThrownBy(() -> new LocalEcdsaKeyProvider(
+                JwtManagerTests.encodePublicKey("k1", this.keyPair1),
+                "k2",
+                JwtManagerTests.encodePrivateKey(this.keyPair2)
+            ))
+            .withMessage("No public key is given for the signing key: k2");
+    }
+
+}
@@ -0,0 +1,238 @@
+package okbem.br31.server.security;
+
+import com.auth0.jwt.exceptions.TokenExpiredException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import okbem.br31.server.util.ratelimit.StripedRateLimiter;
+
+import org.junit.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+
+/**
+ * {@link LoginController}가 로그인 요청을 받아들이거나 거절하는 과정을
+ * 확인하는 테스트.
+ */
+public class LoginControllerTests {
+
+    private UserDetails userDetails;
+
+
+    private AuthenticationManager authenticationManager;
+
+
+    private JwtManager jwtManager;
+
+
+    private UserAuthService userAuthService;
+
+
+    private LoginController loginController;
+
+
+    private MockMvc mockMvc;
+
+
+    @Before
+    public void setUp() {
+        this.userDetails = User.withUsername("alice")
+            .password("")
+            .roles("USER")
+            .build();
+
+        this.authenticationManager = mock(AuthenticationManager.class);
+        when(this.authenticationManager.authenticate(any()))
+            .thenReturn(new UsernamePasswordAuthenticationToken(
+                this.userDetails,
+                null,
+                this.userDetails.getAuthorities()
+            ));
+
+        this.jwtManager = mock(JwtManager.class);
+        when(this.jwtManager.encode(any()))
+            .thenReturn("token");
+
+        this.userAuthService = mock(UserAuthService.class);
+
+        this.loginController = new LoginController();
+
+        ReflectionTestUtils.setField(this.loginController,
+            "authenticationManager", this.authenticationManager);
+        ReflectionTestUtils.setField(this.loginController,
+            "jwtManager", this.jwtManager);
+        ReflectionTestUtils.setField(this.loginController,
+            "loginExecutor", (Executor)Runnable::run);
+        ReflectionTestUtils.setField(this.loginController,
+            "loginRateLimiter", new StripedRateLimiter(0.001, 3, 4));
+        ReflectionTestUtils.setField(this.loginController,
+            "userAuthService", this.userAuthService);
+
+        this.mockMvc = MockMvcBuilders.standaloneSetup(this.loginController)
+            .setCustomArgumentResolvers(
+                new AuthenticationPrincipalArgumentResolver()
+            )
+            .build();
+    }
+
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+
+    private UsernamePasswordAuthenticationToken authenticate() {
+        UsernamePasswordAuthenticationToken authentication
+            = new UsernamePasswordAuthenticationToken(
+                this.userDetails,
+                "token",
+                this.userDetails.getAuthorities()
+            );
+
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        return authentication;
+    }
+
+
+    private static MockHttpServletRequestBuilder login(String username) {
+        return post("/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(String.format(
+                "{\"username\":\"%s\",\"password\":\"%s\"}",
+                username,
+                username
+            ));
+    }
+
+
+    @Test
+    public void login_ReturnsToken_IfCredentialsAreValid() throws Exception {
+        MvcResult result = this.mockMvc.perform(login("alice"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.token").value("token"));
+    }
+
+
+    @Test
+    public void login_Returns401_IfCredentialsAreInvalid() throws Exception {
+        when(this.authenticationManager.authenticate(any()))
+            .thenThrow(new BadCredentialsException("Bad credentials"));
+
+        MvcResult result = this.mockMvc.perform(login("alice"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        // supplyAsync()가 감싼 CompletionException은 풀리지 않은 채로
+        // 전달되며, 그 원인 예외로 @ExceptionHandler를 찾는다.
+        this.mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isUnauthorized());
+
+        verify(this.jwtManager, never()).encode(any());
+    }
+
+
+    @Test
+    public void login_Returns503_IfExecutorIsSaturated() throws Exception {
+        ReflectionTestUtils.setField(this.loginController,
+            "loginExecutor", (Executor)command -> {
+                throw new RejectedExecutionException();
+            });
+
+        this.mockMvc.perform(login("alice"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+
+    @Test
+    public void login_Returns429_IfUserIsRateLimited() throws Exception {
+        for (int i = 0; i < 3; ++i)
+            this.mockMvc.perform(login("alice"))
+                .andExpect(request().asyncStarted());
+
+        this.mockMvc.perform(login("alice"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+        this.mockMvc.perform(login("alice").with(request -> {
+            request.setRemoteAddr("10.0.0.2");
+            return request;
+        }))
+            .andExpect(status().isTooManyRequests());
+
+        this.mockMvc.perform(login("bob").with(request -> {
+            request.setRemoteAddr("10.0.0.2");
+            return request;
+        }))
+            .andExpect(request().asyncStarted());
+    }
+
+
+    @Test
+    public void refresh_ReturnsNewToken_IfTokenIsCurrent() throws Exception {
+        when(this.jwtManager.refresh("token"))
+            .thenReturn("refreshed");
+
+        this.mockMvc.perform(post("/refresh").principal(this.authenticate()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.token").value("refreshed"));
+    }
+
+
+    @Test
+    public void refresh_Returns403_IfTokenIsRevoked() throws Exception {
+        when(this.jwtManager.refresh("token"))
+            .thenThrow(new TokenExpiredException("rev=0, revision=1"));
+
+        this.mockMvc.perform(post("/refresh").principal(this.authenticate()))
+            .andExpect(status().isForbidden());
+    }
+
+
+    @Test
+    public void revoke_RevokesTokensOfCaller() throws Exception {
+        this.authenticate();
+
+        this.mockMvc.perform(post("/revoke"))
+            .andExpect(status().isNoContent());
+
+        verify(this.userAuthService).revokeTokens("alice");
+    }
+
+
+    @Test
+    public void revoke_Returns404_IfUserIsUnknown() throws Exception {
+        when(this.userAuthService.revokeTokens("bob"))
+            .thenThrow(new UsernameNotFoundException("bob"));
+
+        this.mockMvc.perform(post("/revoke/bob"))
+            .andExpect(status().isNotFound());
+    }
+
+}
@@ -0,0 +1,221 @@
+package okbem.br31.server.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import okbem.br31.server.security.MappedUserStore.UserRecord;
+
+import org.junit.*;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link MappedUserStore}가 기록한 사용자를 다시 열었을 때 그대로 읽어 오고,
+ * 중간에 잘리거나 깨진 기록은 버리는지 확인하는 테스트.
+ */
+public class MappedUserStoreTests {
+
+    private Path path;
+
+
+    private MappedUserStore store;
+
+
+    @Before
+    public void setUp() throws IOException {
+        this.path = Files.createTempFile("br31-users", ".db");
+        this.store = this.open(DataSize.ofKilobytes(4));
+    }
+
+
+    @After
+    public void tearDown() throws IOException {
+        this.store.close();
+
+        Files.deleteIfExists(this.path);
+    }
+
+
+    private MappedUserStore open(DataSize initialSize) throws IOException {
+        return new MappedUserStore(this.path.toString(), initialSize);
+    }
+
+
+    private void reopen() throws IOException {
+        this.store.close();
+        this.store = this.open(DataSize.ofKilobytes(4));
+    }
+
+
+    private static UserRecord user(String username, long revision) {
+        return new UserRecord(
+            username,
+            "{noop}" + username,
+            Collections.singletonList("USER"),
+            revision
+        );
+    }
+
+
+    private void put(String username, long revision) {
+        this.store.update(username, v -> user(username, revision));
+    }
+
+
+    private int offsetOf(String text) throws IOException {
+        byte[] bytes = Files.readAllBytes(this.path);
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i + pattern.length <= bytes.length; ++i) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j])
+                ++j;
+
+            if (j == pattern.length)
+                return i;
+        }
+
+        throw new IllegalArgumentException(text);
+    }
+
+
+    @Test
+    public void open_ReplaysRecords_IfStoreIsReopened() throws IOException {
+        this.put("alice", 0L);
+        this.put("bob", 3L);
+
+        this.reopen();
+
+        assertThat(this.store.size())
+            .isEqualTo(2);
+        assertThat(this.store.find("alice"))
+            .isEqualTo(user("alice", 0L));
+        assertThat(this.store.find("bob"))
+            .isEqualTo(user("bob", 3L));
+        assertThat(this.store.find("carol"))
+            .isNull();
+    }
+
+
+    @Test
+    public void update_OverwritesRevision() throws IOException {
+        this.put("alice", 0L);
+        this.put("bob", 0L);
+        this.store.update("alice", v -> user("alice", v.getRevision() + 1L));
+        this.store.update("alice", v -> user("alice", v.getRevision() + 1L));
+
+        assertThat(this.store.findRevision("alice"))
+            .isEqualTo(2L);
+        assertThat(this.store.size())
+            .isEqualTo(2);
+
+        this.reopen();
+
+        assertThat(this.store.findRevision("alice"))
+            .isEqualTo(2L);
+        assertThat(this.store.findRevision("bob"))
+            .isEqualTo(0L);
+        assertThat(this.store.size())
+            .isEqualTo(2);
+    }
+
+
+    @Test
+    public void open_DiscardsTornRecord() throws IOException {
+        this.put("alice", 0L);
+        this.put("bob", 0L);
+        this.put("carol", 0L);
+        this.store.close();
+
+        try (FileChannel channel = FileChannel.open(
+            this.path,
+            StandardOpenOption.WRITE
+        )) {
+            channel.write(
+                ByteBuffer.wrap("B".getBytes(StandardCharsets.UTF_8)),
+                this.offsetOf("bob")
+            );
+        }
+
+        this.store = this.open(DataSize.ofKilobytes(4));
+
+        assertThat(this.store.find("alice"))
+            .isEqualTo(user("alice", 0L));
+        assertThat(this.store.find("bob"))
+            .isNull();
+        assertThat(this.store.find("Bob"))
+            .isNull();
+        assertThat(this.store.find("carol"))
+            .isNull();
+
+        this.put("dave", 0L);
+        this.reopen();
+
+        assertThat(this.store.find("dave"))
+            .isEqualTo(user("dave", 0L));
+        assertThat(this.store.find("carol"))
+            .isNull();
+        assertThat(this.store.size())
+            .isEqualTo(2);
+    }
+
+
+    @Test
+    public void open_DiscardsTruncatedTail() throws IOException {
+        this.put("alice", 0L);
+        this.put("bob", 0L);
+        this.store.close();
+
+        try (FileChannel channel = FileChannel.open(
+            this.path,
+            StandardOpenOption.WRITE
+        )) {
+            channel.truncate(this.offsetOf("{noop}bob"));
+        }
+
+        this.store = this.open(DataSize.ofKilobytes(4));
+
+        assertThat(this.store.find("alice"))
+            .isEqualTo(user("alice", 0L));
+        assertThat(this.store.find("bob"))
+            .isNull();
+        assertThat(this.store.size())
+            .isEqualTo(1);
+    }
+
+
+    @Test
+    public void update_RemapsBuffer_IfStoreIsFull() throws IOException {
+        this.store.close();
+        Files.delete(this.path);
+        this.store = this.open(DataSize.ofBytes(64));
+
+        for (int i = 0; i < 100; ++i)
+            this.put("user" + i, i);
+
+        assertThat(Files.size(this.path))
+            .isGreaterThan(64L);
+
+        for (int i = 0; i < 100; ++i)
+            assertThat(this.store.findRevision("user" + i))
+                .isEqualTo(i);
+
+        this.store.close();
+        this.store = this.open(DataSize.ofBytes(64));
+
+        assertThat(this.store.size())
+            .isEqualTo(100);
+        for (int i = 0; i < 100; ++i)
+            assertThat(this.store.find("user" + i))
+                .isEqualTo(user("user" + i, i));
+    }
+
+}
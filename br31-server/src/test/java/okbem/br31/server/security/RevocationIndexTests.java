@@ -0,0 +1,115 @@
+package okbem.br31.server.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.*;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link RevocationIndex}가 크기를 늘리는 동안에도 읽는 쪽이 올바른 값을
+ * 받는지 확인하는 테스트.
+ */
+public class RevocationIndexTests {
+
+    private Path userStorePath;
+
+
+    private MappedUserStore userStore;
+
+
+    private RevocationIndex revocationIndex;
+
+
+    @Before
+    public void setUp() throws IOException {
+        this.userStorePath = Files.createTempFile("br31-users", ".db");
+        this.userStore = new MappedUserStore(
+            this.userStorePath.toString(),
+            DataSize.ofKilobytes(4)
+        );
+
+        this.revocationIndex = new RevocationIndex(
+            new RevisionEventBus(new LocalRevisionTransport()),
+            this.userStore
+        );
+    }
+
+
+    @After
+    public void tearDown() throws IOException {
+        this.userStore.close();
+
+        Files.deleteIfExists(this.userStorePath);
+    }
+
+
+    @Test
+    public void raise_KeepsHighestRevision() {
+        assertThat(this.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(RevocationIndex.ABSENT);
+
+        this.revocationIndex.raise("alice", 3L);
+        this.revocationIndex.raise("alice", 2L);
+
+        assertThat(this.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(3L);
+        assertThat(this.revocationIndex.size())
+            .isEqualTo(1);
+    }
+
+
+    @Test
+    public void getMinRevision_ReturnsRevision_WhileResizing()
+        throws Exception {
+        this.revocationIndex.raise("alice", 7L);
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futureList = new ArrayList<>();
+            for (int t = 0; t < 3; ++t)
+                futureList.add(executor.submit(() -> {
+                    long reads = 0L;
+                    while (!done.get()) {
+                        assertThat(this.revocationIndex.getMinRevision("alice"))
+                            .isEqualTo(7L);
+                        ++reads;
+                    }
+
+                    return reads;
+                }));
+
+            executor.submit(() -> {
+                for (int i = 0; i < 1 << 16; ++i)
+                    this.revocationIndex.raise("user" + i, i);
+
+                done.set(true);
+            }).get(30L, TimeUnit.SECONDS);
+
+            for (Future<Long> future : futureList)
+                assertThat(future.get(30L, TimeUnit.SECONDS))
+                    .isPositive();
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+
+        assertThat(this.revocationIndex.size())
+            .isEqualTo((1 << 16) + 1);
+        assertThat(this.revocationIndex.getMinRevision("user12345"))
+            .isEqualTo(12345L);
+    }
+
+}
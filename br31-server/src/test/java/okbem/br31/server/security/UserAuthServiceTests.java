@@ -0,0 +1,118 @@
+package okbem.br31.server.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.*;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * 같은 {@link RevisionTransport}를 공유하는 두 노드에서 {@link UserAuthService}가
+ * 토큰을 무효화한 결과가 다른 노드에 전달되는지 확인하는 테스트.
+ */
+public class UserAuthServiceTests {
+
+    private static final class Node {
+
+        private final Path userStorePath;
+
+        private final MappedUserStore userStore;
+
+        private final UserAuthService userAuthService;
+
+        private final RevocationIndex revocationIndex;
+
+        private Node(RevisionTransport transport) throws IOException {
+            this.userStorePath = Files.createTempFile("br31-users", ".db");
+            this.userStore = new MappedUserStore(
+                this.userStorePath.toString(),
+                DataSize.ofKilobytes(64)
+            );
+
+            RevisionEventBus revisionEventBus = new RevisionEventBus(transport);
+
+            this.userAuthService = new UserAuthService(
+                "maximumSize=1024",
+                true,
+                this.userStore,
+                revisionEventBus
+            );
+            this.revocationIndex = new RevocationIndex(
+                revisionEventBus,
+                this.userStore
+            );
+        }
+
+        private void close() throws IOException {
+            this.userStore.close();
+
+            Files.deleteIfExists(this.userStorePath);
+        }
+
+    }
+
+
+    private Node nodeA;
+
+
+    private Node nodeB;
+
+
+    @Before
+    public void setUp() throws IOException {
+        RevisionTransport transport = new LocalRevisionTransport();
+
+        this.nodeA = new Node(transport);
+        this.nodeB = new Node(transport);
+    }
+
+
+    @After
+    public void tearDown() throws IOException {
+        this.nodeA.close();
+        this.nodeB.close();
+    }
+
+
+    @Test
+    public void revokeTokens_RaisesRevision_OnEveryNode() {
+        this.nodeA.userAuthService.loadUserByUsername("alice");
+        this.nodeB.userAuthService.loadUserByUsername("alice");
+
+        assertThat(this.nodeB.userAuthService.getUserRevisionFromCache("alice"))
+            .isEqualTo(0L);
+
+        long revision = this.nodeA.userAuthService.revokeTokens("alice");
+
+        assertThat(revision)
+            .isEqualTo(1L);
+        assertThat(this.nodeA.userStore.findRevision("alice"))
+            .isEqualTo(1L);
+
+        assertThat(this.nodeB.userAuthService.getUserRevisionFromCache("alice"))
+            .isEqualTo(1L);
+        assertThat(this.nodeB.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(1L);
+        assertThat(this.nodeA.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(1L);
+    }
+
+
+    @Test
+    public void revokeTokens_KeepsHigherRevision_IfEventIsStale() {
+        this.nodeA.userAuthService.revokeTokens("alice");
+        this.nodeA.userAuthService.revokeTokens("alice");
+
+        this.nodeB.userAuthService.revokeTokens("alice");
+
+        assertThat(this.nodeA.userAuthService.getUserRevisionFromCache("alice"))
+            .isEqualTo(2L);
+        assertThat(this.nodeA.revocationIndex.getMinRevision("alice"))
+            .isEqualTo(2L);
+    }
+
+}
@@ -0,0 +1,132 @@
+package okbem.br31.server.util.httplog;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.*;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link TeeResponseWrapper}가 응답을 그대로 내보내면서 앞부분만 복사해 두는지
+ * 확인하는 테스트.
+ */
+public class TeeResponseWrapperTests {
+
+    private MockHttpServletResponse response;
+
+
+    @Before
+    public void setUp() {
+        this.response = new MockHttpServletResponse();
+        this.response.setCharacterEncoding("UTF-8");
+    }
+
+
+    @Test
+    public void getWriter_WritesThrough_WithoutBuffering() throws IOException {
+        TeeResponseWrapper wrapper
+            = new TeeResponseWrapper(this.response, 1024);
+
+        PrintWriter writer = wrapper.getWriter();
+        writer.print("hello, ");
+        writer.print("세계");
+
+        assertThat(this.response.getContentAsString())
+            .isEqualTo("hello, 세계");
+        assertThat(wrapper.getBodyHead())
+            .isEqualTo("hello, 세계");
+
+        writer.flush();
+
+        assertThat(this.response.isCommitted())
+            .isTrue();
+    }
+
+
+    @Test
+    public void getBodyHead_Truncates_IfBodyIsLarge() throws IOException {
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(this.response, 5);
+
+        wrapper.getWriter().print("0123456789");
+
+        assertThat(this.response.getContentAsString())
+            .isEqualTo("0123456789");
+        assertThat(wrapper.getBodyHead())
+            .isEqualTo("01234... (length=10)");
+    }
+
+
+    @Test
+    public void getOutputStream_CopiesHead() throws IOException {
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(this.response, 5);
+
+        wrapper.getOutputStream()
+            .write("0123456789".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(this.response.getContentAsString())
+            .isEqualTo("0123456789");
+        assertThat(wrapper.getBodyHead())
+            .isEqualTo("01234... (length=10)");
+    }
+
+
+    @Test
+    public void reset_ClearsHeadAndWriter() throws IOException {
+        TeeResponseWrapper wrapper
+            = new TeeResponseWrapper(this.response, 1024);
+
+        wrapper.getWriter().print("error");
+        wrapper.reset();
+
+        assertThat(wrapper.getBodyHead())
+            .isEmpty();
+
+        wrapper.getOutputStream()
+            .write("ok".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(this.response.getContentAsString())
+            .isEqualTo("ok");
+        assertThat(wrapper.getBodyHead())
+            .isEqualTo("ok");
+    }
+
+
+    @Test
+    public void resetBuffer_ClearsHead() throws IOException {
+        TeeResponseWrapper wrapper
+            = new TeeResponseWrapper(this.response, 1024);
+
+        PrintWriter writer = wrapper.getWriter();
+        writer.print("partial");
+        wrapper.resetBuffer();
+        writer.print("done");
+
+        assertThat(this.response.getContentAsString())
+            .isEqualTo("done");
+        assertThat(wrapper.getBodyHead())
+            .isEqualTo("done");
+    }
+
+
+    @Test
+    public void headBuffer_GrowsLazily() {
+        HeadBuffer headBuffer = new HeadBuffer(1 << 20);
+
+        assertThat((byte[])ReflectionTestUtils.getField(headBuffer, "head"))
+            .isEmpty();
+
+        headBuffer.write(new byte[10], 0, 10);
+
+        assertThat(((byte[])ReflectionTestUtils.getField(headBuffer, "head"))
+            .length)
+            .isLessThan(1024);
+        assertThat(headBuffer.toString("UTF-8"))
+            .hasSize(10);
+    }
+
+}
@@ -0,0 +1,143 @@
+package okbem.br31.server.util.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+
+/**
+ * {@link StripedRateLimiter}가 키마다 토큰을 채우고 쓰는 과정과, 다 채워진
+ * bucket을 stripe 단위로 정리하는 과정을 확인하는 테스트.
+ */
+public class StripedRateLimiterTests {
+
+    private long now;
+
+
+    private StripedRateLimiter newLimiter(int burst, int stripeCount) {
+        return new StripedRateLimiter(1.0, burst, stripeCount, () -> this.now);
+    }
+
+
+    private void advance(long millis) {
+        this.now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    @Test
+    public void tryAcquire_Fails_IfBurstIsExhausted() {
+        StripedRateLimiter limiter = this.newLimiter(3, 4);
+
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isFalse();
+
+        assertThat(limiter.tryAcquire("b")).isTrue();
+
+        this.advance(1000L);
+
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isFalse();
+    }
+
+
+    @Test
+    public void canAcquire_DoesNotConsumeTokens() {
+        StripedRateLimiter limiter = this.newLimiter(1, 4);
+
+        assertThat(limiter.canAcquire("a")).isTrue();
+        assertThat(limiter.canAcquire("a")).isTrue();
+        assertThat(limiter.size()).isEqualTo(0);
+
+        assertThat(limiter.tryAcquire("a")).isTrue();
+
+        assertThat(limiter.canAcquire("a")).isFalse();
+        assertThat(limiter.canAcquire("b")).isTrue();
+
+        this.advance(1000L);
+
+        assertThat(limiter.canAcquire("a")).isTrue();
+    }
+
+
+    @Test
+    public void tryAcquire_PurgesRefilledBuckets_IfStripeIsFull() {
+        StripedRateLimiter limiter = this.newLimiter(1, 1);
+
+        for (int i = 0; i < 63; ++i)
+            limiter.tryAcquire("key" + i);
+
+        this.advance(2000L);
+
+        limiter.tryAcquire("limited");
+        assertThat(limiter.size()).isEqualTo(64);
+
+        limiter.tryAcquire("new");
+
+        assertThat(limiter.size()).isEqualTo(2);
+        assertThat(limiter.tryAcquire("limited")).isFalse();
+    }
+
+
+    @Test
+    public void tryAcquire_KeepsBuckets_IfNoneIsRefilled() {
+        StripedRateLimiter limiter = this.newLimiter(1, 1);
+
+        for (int i = 0; i < 65; ++i)
+            limiter.tryAcquire("key" + i);
+
+        assertThat(limiter.size()).isEqualTo(65);
+
+        for (int i = 0; i < 65; ++i)
+            assertThat(limiter.canAcquire("key" + i)).isFalse();
+    }
+
+
+    @Test
+    public void tryAcquire_PurgesOnlyItsOwnStripe() {
+        StripedRateLimiter limiter = this.newLimiter(1, 2);
+
+        int[] counts = new int[2];
+        for (int i = 0; counts[0] < 64 || counts[1] < 63; ++i) {
+            String key = "key" + i;
+            int stripe = stripeOf(key, 2);
+            if (counts[stripe] < ((stripe == 0) ? 64 : 63)) {
+                limiter.tryAcquire(key);
+                ++counts[stripe];
+            }
+        }
+
+        this.advance(2000L);
+
+        for (int i = 0; ; ++i) {
+            String key = "new" + i;
+            if (stripeOf(key, 2) == 1) {
+                limiter.tryAcquire(key);
+                break;
+            }
+        }
+
+        assertThat(limiter.size()).isEqualTo(64 + 63 + 1);
+
+        for (int i = 0; ; ++i) {
+            String key = "new" + i;
+            if (stripeOf(key, 2) == 0) {
+                limiter.tryAcquire(key);
+                break;
+            }
+        }
+
+        assertThat(limiter.size()).isEqualTo(1 + 63 + 1);
+    }
+
+
+    private static int stripeOf(String key, int stripeCount) {
+        int h = key.hashCode();
+
+        return (h ^ (h >>> 16)) & (stripeCount - 1);
+    }
+
+}